@@ -0,0 +1,138 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.api.ApiServer;
+import edu.ccrm.config.DataStore;
+import edu.ccrm.service.CourseServiceImpl;
+import edu.ccrm.service.EnrollmentService;
+import edu.ccrm.service.StudentServiceImpl;
+import edu.ccrm.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load test for the HTTP API: each client is a virtual thread
+ * that sends one request, waits for the response and immediately sends the
+ * next. The mix is 60% student lookups, 20% course searches by department,
+ * 15% transcripts and 5% enrollments, all using SyntheticDataset keys.
+ *
+ * Usage: java edu.ccrm.bench.ApiLoadTest [baseUrl|-] [clients] [seconds]
+ * With "-" (the default) an embedded server is started on a free port over a
+ * 10,000-student synthetic dataset in a temporary data directory. A remote
+ * server should be loaded with the same synthetic data for lookups to hit.
+ */
+public class ApiLoadTest {
+
+    private static final int STUDENTS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "-";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        SyntheticDataset dataset = new SyntheticDataset(STUDENTS);
+
+        // 1. Start an embedded server unless a URL was given
+        ApiServer server = null;
+        if (baseUrl.equals("-")) {
+            // Must be set before any persistence class is loaded
+            System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-bench").toString());
+            dataset.populate(DataStore.getInstance(), true);
+            server = new ApiServer(new StudentServiceImpl(), new CourseServiceImpl(), new EnrollmentService());
+            server.start(0);
+            baseUrl = "http://127.0.0.1:" + server.getPort();
+        }
+        System.out.printf("Target %s, %d clients, %d s\n", baseUrl, clients, seconds);
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+
+        // 2. Warm up for a third of the run (at most 3 s), then measure
+        long warmupSeconds = Math.min(3, Math.max(1, seconds / 3));
+        run(client, baseUrl, dataset, clients, warmupSeconds, new LatencyHistogram(), new LongAdder(),
+                new ConcurrentHashMap<>());
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder failures = new LongAdder();
+        ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+        run(client, baseUrl, dataset, clients, seconds, latency, failures, statuses);
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        // 3. Report throughput, latency percentiles and the status code mix
+        System.out.printf("Requests: %d in %.1f s = %.0f req/s\n", latency.getCount(), elapsed,
+                latency.getCount() / elapsed);
+        System.out.printf("Latency (ms): mean %.2f | p50 %.2f | p90 %.2f | p99 %.2f | max %.2f\n",
+                latency.getMeanNanos() / 1e6, latency.getValueAtPercentile(50) / 1e6,
+                latency.getValueAtPercentile(90) / 1e6, latency.getValueAtPercentile(99) / 1e6,
+                latency.getMaxNanos() / 1e6);
+        System.out.println("Status codes: " + statuses + (failures.sum() > 0 ? ", I/O failures: " + failures : ""));
+
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private static void run(HttpClient client, String baseUrl, SyntheticDataset dataset, int clients,
+            long seconds, LatencyHistogram latency, LongAdder failures, ConcurrentMap<Integer, LongAdder> statuses)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                while (System.nanoTime() < deadline) {
+                    HttpRequest request = nextRequest(baseUrl, dataset);
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        latency.record(System.nanoTime() - sent);
+                        statuses.computeIfAbsent(response.statusCode(), s -> new LongAdder()).increment();
+                    } catch (IOException e) {
+                        failures.increment();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static HttpRequest nextRequest(String baseUrl, SyntheticDataset dataset) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String regNo = SyntheticDataset.regNo(random.nextInt(dataset.getStudentCount()));
+        int pick = random.nextInt(100);
+        if (pick < 60) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/students/" + regNo)).GET().build();
+        }
+        if (pick < 80) {
+            String department = SyntheticDataset.department(random.nextInt(SyntheticDataset.DEPARTMENTS));
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/courses?department=" + department))
+                    .GET().build();
+        }
+        if (pick < 95) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/students/" + regNo + "/transcript"))
+                    .GET().build();
+        }
+        String courseCode = SyntheticDataset.courseCode(random.nextInt(dataset.getCourseCount()));
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/enrollments"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("regNo=" + regNo + "&courseCode=" + courseCode))
+                .build();
+    }
+}
@@ -0,0 +1,82 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.io.WriteAheadLog;
+import edu.ccrm.service.DuplicateEnrollmentException;
+import edu.ccrm.service.EnrollmentRequest;
+import edu.ccrm.service.EnrollmentResult;
+import edu.ccrm.service.EnrollmentService;
+import edu.ccrm.service.MaxCreditLimitExceededException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares registration-day throughput of single enrollStudent calls with
+ * one enrollBatch call over the same requests.
+ *
+ * Usage: java edu.ccrm.bench.BatchEnrollmentBenchmark [requestCount]
+ * All files are written to a temporary data directory.
+ */
+public class BatchEnrollmentBenchmark {
+
+    private static final int STUDENTS = 10_000;
+
+    public static void main(String[] args) throws IOException {
+        int requestCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        // Must be set before any persistence class is loaded
+        System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-bench").toString());
+
+        SyntheticDataset dataset = new SyntheticDataset(STUDENTS);
+        List<EnrollmentRequest> requests = new ArrayList<>(requestCount);
+        Random random = new Random(42);
+        for (int i = 0; i < requestCount; i++) {
+            requests.add(new EnrollmentRequest(SyntheticDataset.regNo(random.nextInt(STUDENTS)),
+                    SyntheticDataset.courseCode(random.nextInt(dataset.getCourseCount()))));
+        }
+
+        EnrollmentService enrollmentService = new EnrollmentService();
+        PrintStream console = System.out;
+
+        // 1. Single-call path; its per-call console output goes to a discarded stream
+        resetData(dataset);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        int enrolled = 0;
+        long start = System.nanoTime();
+        for (EnrollmentRequest request : requests) {
+            try {
+                enrollmentService.enrollStudent(request.getRegNo(), request.getCourseCode());
+                enrolled++;
+            } catch (MaxCreditLimitExceededException | DuplicateEnrollmentException e) {
+                // Rejections are part of the workload
+            }
+        }
+        long singleNanos = System.nanoTime() - start;
+        System.setOut(console);
+        report("enrollStudent", requestCount, enrolled, singleNanos);
+
+        // 2. Batch path over the same requests and starting state
+        resetData(dataset);
+        start = System.nanoTime();
+        List<EnrollmentResult> results = enrollmentService.enrollBatch(requests);
+        long batchNanos = System.nanoTime() - start;
+        report("enrollBatch", requestCount, (int) results.stream().filter(EnrollmentResult::isSuccess).count(),
+                batchNanos);
+        System.out.printf("Speedup: %.1fx\n", (double) singleNanos / batchNanos);
+    }
+
+    private static void resetData(SyntheticDataset dataset) throws IOException {
+        dataset.populate(DataStore.getInstance(), false);
+        WriteAheadLog.getInstance().truncate();
+    }
+
+    private static void report(String label, int requests, int enrolled, long nanos) {
+        System.out.printf("%-14s %d requests, %d enrolled in %.1f ms (%.0f requests/sec)\n", label, requests,
+                enrolled, nanos / 1_000_000.0, requests / (nanos / 1_000_000_000.0));
+    }
+}
@@ -0,0 +1,130 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.Student;
+import edu.ccrm.service.DuplicateEnrollmentException;
+import edu.ccrm.service.EnrollmentService;
+import edu.ccrm.service.MaxCreditLimitExceededException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fires concurrent enrollments and grade assignments at a deliberately small
+ * set of students (one virtual thread each) and then checks that no student
+ * has a duplicate enrollment or exceeds the per-semester credit limit, and
+ * that every successful enrollment is stored exactly once.
+ *
+ * Usage: java edu.ccrm.bench.ConcurrentEnrollmentStressTest [operationCount]
+ * Exits with status 1 if an invariant is violated.
+ */
+public class ConcurrentEnrollmentStressTest {
+
+    private static final int STUDENTS = 200;
+    private static final int COURSES = 60;
+    private static final int MAX_CREDITS_PER_SEMESTER = 18; // Mirrors EnrollmentService
+
+    public static void main(String[] args) throws IOException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        // Must be set before any persistence class is loaded
+        System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-stress").toString());
+
+        DataStore dataStore = DataStore.getInstance();
+        Semester[] semesters = Semester.values();
+        for (int i = 0; i < STUDENTS; i++) {
+            String regNo = String.format("STU%04d", i);
+            dataStore.putStudent(new Student("Student " + i, "student" + i + "@campus.edu", regNo));
+        }
+        for (int i = 0; i < COURSES; i++) {
+            String code = String.format("C%03d", i);
+            dataStore.putCourse(new Course.Builder(code, "Course " + i, 1 + i % 4)
+                    .semester(semesters[i % semesters.length])
+                    .build());
+        }
+
+        EnrollmentService enrollmentService = new EnrollmentService();
+        AtomicInteger enrolled = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Grade[] grades = Grade.values();
+
+        // 1. One virtual thread per operation; 1 in 5 operations assigns a grade instead
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Silence per-call messages
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < operations; i++) {
+                executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    String regNo = String.format("STU%04d", random.nextInt(STUDENTS));
+                    String courseCode = String.format("C%03d", random.nextInt(COURSES));
+                    if (random.nextInt(5) == 0) {
+                        enrollmentService.assignGrade(regNo, courseCode, grades[random.nextInt(grades.length)]);
+                        return;
+                    }
+                    try {
+                        enrollmentService.enrollStudent(regNo, courseCode);
+                        enrolled.incrementAndGet();
+                    } catch (MaxCreditLimitExceededException | DuplicateEnrollmentException e) {
+                        rejected.incrementAndGet();
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.setOut(console);
+        System.out.printf("%d operations in %.1f ms (%.0f ops/sec): %d enrolled, %d rejected\n", operations,
+                elapsed / 1_000_000.0, operations / (elapsed / 1_000_000_000.0), enrolled.get(), rejected.get());
+
+        // 2. Check the invariants
+        int violations = 0;
+        int storedEnrollments = 0;
+        for (Student student : dataStore.students.values()) {
+            List<Enrollment> enrollments = student.getEnrolledCourses();
+            Set<String> codes = new HashSet<>();
+            int[] credits = new int[semesters.length];
+            for (Enrollment e : enrollments) {
+                if (!codes.add(e.getCourseCode())) {
+                    System.out.println("Duplicate enrollment: " + student.getRegNo() + " in " + e.getCourseCode());
+                    violations++;
+                }
+                Course course = dataStore.courses.get(e.getCourseCode());
+                credits[course.getSemester().ordinal()] += course.getCredits();
+            }
+            for (Semester semester : semesters) {
+                int total = credits[semester.ordinal()];
+                if (total > MAX_CREDITS_PER_SEMESTER) {
+                    System.out.println("Credit limit exceeded: " + student.getRegNo() + " has " + total + " in "
+                            + semester);
+                    violations++;
+                }
+                if (total != student.getSemesterCredits(semester)) {
+                    System.out.println("Running credit total out of sync for " + student.getRegNo() + " in "
+                            + semester);
+                    violations++;
+                }
+            }
+            storedEnrollments += enrollments.size();
+        }
+        if (storedEnrollments != enrolled.get() || dataStore.enrollmentTable.size() != enrolled.get()) {
+            System.out.println("Lost or extra enrollments: " + enrolled.get() + " succeeded, " + storedEnrollments
+                    + " on students, " + dataStore.enrollmentTable.size() + " in the DataStore");
+            violations++;
+        }
+
+        System.out.println(violations == 0 ? "All invariants hold." : violations + " invariant violation(s).");
+        System.exit(violations == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,61 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.StringDictionary;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Measures how much heap the in-memory DataStore needs: first with the
+ * synthetic students and courses only, then with three enrollments per
+ * student, and reports the difference per enrollment. Heap use is read
+ * after repeated System.gc() calls, so run it with a heap large enough for
+ * the chosen size and nothing else going on.
+ *
+ * Usage: java edu.ccrm.bench.HeapFootprintBenchmark [studentCount]
+ */
+public class HeapFootprintBenchmark {
+
+    private static final int ENROLLMENTS_PER_STUDENT = 3; // Matches SyntheticDataset
+
+    public static void main(String[] args) throws IOException {
+        int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        // Must be set before any persistence class is loaded
+        System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-bench").toString());
+        DataStore dataStore = DataStore.getInstance();
+        SyntheticDataset dataset = new SyntheticDataset(studentCount);
+
+        long empty = usedHeap();
+        long start = System.nanoTime();
+        dataset.populate(dataStore, false);
+        long populateNanos = System.nanoTime() - start;
+        long withoutEnrollments = usedHeap();
+        dataset.populate(dataStore, true);
+        long withEnrollments = usedHeap();
+
+        long enrollments = (long) studentCount * ENROLLMENTS_PER_STUDENT;
+        System.out.printf("Students and courses:  %,8d KB (%.1f bytes per student)\n",
+                (withoutEnrollments - empty) / 1024, (withoutEnrollments - empty) / (double) studentCount);
+        System.out.printf("Created in:            %,8d ms (%d distinct departments)\n",
+                populateNanos / 1_000_000, StringDictionary.departments().size());
+        System.out.printf("Enrollments:           %,8d KB (%.1f bytes per enrollment, %,d enrollments)\n",
+                (withEnrollments - withoutEnrollments) / 1024,
+                (withEnrollments - withoutEnrollments) / (double) enrollments, enrollments);
+        System.out.printf("Enrollment table size: %,8d KB (estimated)\n",
+                dataStore.enrollmentTable.estimatedBytes() / 1024);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
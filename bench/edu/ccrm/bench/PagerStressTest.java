@@ -0,0 +1,181 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Student;
+import edu.ccrm.domain.StudentSnapshot;
+import edu.ccrm.io.WriteAheadLog;
+import edu.ccrm.service.EnrollmentService;
+import edu.ccrm.service.StudentPager;
+import edu.ccrm.service.WriteBehindPersister;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Assigns grades to paged-out students while a tiny cold cache keeps paging
+ * them in and out, readers keep reading through enrollment views they hold
+ * on to, and full page-out sweeps run in between. Each writer owns its own
+ * students, so the last grade it assigned is the one expected. Afterwards
+ * checks that every grade survived, in memory and in the write-ahead log,
+ * that the live grade counters match the rows, and that no reader failed.
+ *
+ * Usage: java edu.ccrm.bench.PagerStressTest [seconds] [students] [writers]
+ * Exits with status 1 if an invariant is violated.
+ */
+public class PagerStressTest {
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int studentCount = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int writers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        // Must be set before any persistence class is loaded
+        System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-pager-stress").toString());
+        System.setProperty("ccrm.cold.cache", "16");
+        System.setProperty("ccrm.persist.mode", "async");
+        DataStore dataStore = DataStore.getInstance();
+        new SyntheticDataset(studentCount).populate(dataStore, true);
+        Map<String, List<String>> coursesOf = new HashMap<>();
+        for (Student student : dataStore.students.values()) {
+            student.setStatus(Student.Status.GRADUATED);
+            List<String> codes = new ArrayList<>();
+            student.getEnrolledCourses().forEach(e -> codes.add(e.getCourseCode()));
+            coursesOf.put(student.getRegNo(), codes);
+        }
+        StudentPager pager = StudentPager.getInstance();
+        System.out.println(pager.pageOutInactive());
+
+        EnrollmentService enrollmentService = new EnrollmentService();
+        Map<String, Grade> expected = new ConcurrentHashMap<>(); // regNo,courseCode -> last grade assigned
+        LongAdder assigned = new LongAdder();
+        LongAdder reads = new LongAdder();
+        AtomicInteger failures = new AtomicInteger();
+        Grade[] grades = Grade.values();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Silence per-call messages
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads.add(Thread.ofVirtual().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    // Students are split between the writers by index
+                    int index = random.nextInt(studentCount / writers) * writers + writer;
+                    String regNo = SyntheticDataset.regNo(index);
+                    List<String> codes = coursesOf.get(regNo);
+                    if (codes.isEmpty()) {
+                        continue;
+                    }
+                    String courseCode = codes.get(random.nextInt(codes.size()));
+                    Grade grade = grades[random.nextInt(grades.length)];
+                    try {
+                        enrollmentService.assignGrade(regNo, courseCode, grade);
+                        expected.put(regNo + "," + courseCode, grade);
+                        assigned.increment();
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                        console.println("Writer failed: " + e);
+                    }
+                }
+            }));
+        }
+        for (int r = 0; r < writers; r++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Enrollment> held = new ArrayList<>();
+                while (System.nanoTime() < deadline) {
+                    try {
+                        Student student = pager.find(SyntheticDataset.regNo(random.nextInt(studentCount)));
+                        held.addAll(student.getEnrolledCourses());
+                        // Views kept across page-outs must still read a grade and a date
+                        for (Enrollment enrollment : held) {
+                            if (enrollment.getGrade() == null || enrollment.getEnrollmentDate() == null) {
+                                throw new IllegalStateException("View read nothing: " + enrollment.getCourseCode());
+                            }
+                        }
+                        reads.add(held.size());
+                        if (held.size() > 64) {
+                            held.subList(0, 32).clear();
+                        }
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                        console.println("Reader failed: " + e);
+                    }
+                }
+            }));
+        }
+        threads.add(Thread.ofVirtual().start(() -> {
+            while (System.nanoTime() < deadline) {
+                try {
+                    pager.pageOutInactive();
+                    Thread.sleep(50);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    console.println("Sweep failed: " + e);
+                }
+            }
+        }));
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.setOut(console);
+        WriteBehindPersister.getInstance().drain();
+        System.out.printf("%,d grades assigned, %,d view reads, %d failure(s)%n", assigned.sum(), reads.sum(),
+                failures.get());
+        System.out.println(pager.getStats());
+
+        int violations = failures.get();
+        Map<String, String> logged = new HashMap<>();
+        WriteAheadLog.getInstance().replay(fields -> {
+            if (fields[0].equals("G")) {
+                logged.put(fields[1] + "," + fields[2], fields[3]);
+            }
+        });
+        for (Map.Entry<String, Grade> entry : expected.entrySet()) {
+            String[] key = entry.getKey().split(",");
+            StudentSnapshot student = pager.find(key[0]).snapshot();
+            Grade stored = null;
+            for (StudentSnapshot.EnrolledCourse enrolled : student.getEnrollments()) {
+                if (enrolled.getCourseCode().equals(key[1])) {
+                    stored = enrolled.getGrade();
+                }
+            }
+            if (stored != entry.getValue()) {
+                System.out.println("Lost grade: " + entry.getKey() + " is " + stored + ", expected "
+                        + entry.getValue());
+                violations++;
+            }
+            if (!entry.getValue().name().equals(logged.get(entry.getKey()))) {
+                System.out.println("Logged grade: " + entry.getKey() + " is " + logged.get(entry.getKey())
+                        + ", expected " + entry.getValue());
+                violations++;
+            }
+        }
+        // Checked while holding the pager, so a cache trim still running cannot page anybody out meanwhile
+        String counters = pager.allStudents(students -> {
+            long counted = dataStore.enrollmentTable.gradeCounts().values().stream().mapToLong(Long::longValue).sum();
+            long rows = dataStore.students.values().stream().mapToLong(Student::getEnrollmentCount).sum();
+            return counted == rows && dataStore.enrollmentTable.size() == rows ? null
+                    : counted + " counted, " + rows + " rows on students, " + dataStore.enrollmentTable.size()
+                            + " in the table";
+        });
+        if (counters != null) {
+            System.out.println("Grade counters out of step: " + counters);
+            violations++;
+        }
+        System.out.println(violations == 0 ? "All invariants hold." : violations + " invariant violation(s).");
+        System.exit(violations == 0 ? 0 : 1);
+    }
+}
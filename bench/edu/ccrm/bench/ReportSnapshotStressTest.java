@@ -0,0 +1,175 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.config.StoreSnapshot;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.VersionClock;
+import edu.ccrm.service.DuplicateEnrollmentException;
+import edu.ccrm.service.EnrollmentService;
+import edu.ccrm.service.MaxCreditLimitExceededException;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Runs long reports on a store snapshot while writer threads keep enrolling
+ * students and assigning grades, and checks that every pass over the
+ * snapshot sees exactly the same data: the same grade distribution, the same
+ * top students and the same number of enrollments, even though the live
+ * store changes underneath. Also reports writer throughput with and without
+ * an open snapshot, and checks that the kept copies are dropped once the
+ * snapshot is closed.
+ *
+ * Usage: java edu.ccrm.bench.ReportSnapshotStressTest [studentCount] [passes]
+ * Exits with status 1 if a pass differs from the first.
+ */
+public class ReportSnapshotStressTest {
+
+    private static final int WRITERS = 2;
+    private static final long BASELINE_MILLIS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        // Must be set before any persistence class is loaded
+        System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-stress").toString());
+        DataStore dataStore = DataStore.getInstance();
+        SyntheticDataset dataset = new SyntheticDataset(studentCount);
+        dataset.populate(dataStore, true);
+        EnrollmentService enrollmentService = new EnrollmentService();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Silence per-call messages
+
+        // 1. Writer throughput with no snapshot open
+        double baseline = runWriters(enrollmentService, dataset, () -> sleep(BASELINE_MILLIS));
+        console.printf("%,d students, %,d enrollments\n", studentCount, dataStore.enrollmentTable.size());
+        console.printf("Writers, no snapshot open:   %,10.0f ops/s\n", baseline);
+
+        // 2. The same writers while reports run over one snapshot, pass after pass; the writers are
+        // stopped when it is taken, so the live counters show what the snapshot must see
+        int[] violations = { 0 };
+        long liveBefore = dataStore.enrollmentTable.size();
+        Map<Grade, Long> expected = dataStore.enrollmentTable.gradeCounts();
+        try (StoreSnapshot snapshot = dataStore.snapshot()) {
+            double during = runWriters(enrollmentService, dataset, () -> {
+                Report first = Report.of(snapshot);
+                if (!first.distribution.equals(expected) || first.enrollments != liveBefore) {
+                    console.println("Snapshot differs from the store when it was taken: " + first);
+                    violations[0]++;
+                }
+                for (int pass = 1; pass < passes; pass++) {
+                    Report again = Report.of(snapshot);
+                    if (!again.equals(first)) {
+                        console.println("Pass " + pass + " differs from the first:\n  " + first + "\n  " + again);
+                        violations[0]++;
+                    }
+                }
+                console.printf("%d report passes over snapshot %d: %,d enrollments each\n", passes,
+                        snapshot.getVersion(), first.enrollments);
+            });
+            console.printf("Writers, snapshot open:      %,10.0f ops/s\n", during);
+            console.printf("Live enrollments went from %,d to %,d; %,d student copies kept\n", liveBefore,
+                    dataStore.enrollmentTable.size(), VersionClock.global().retainedHistories());
+        }
+        System.setOut(console);
+
+        // 3. Closing the only snapshot drops every copy
+        if (VersionClock.global().retainedHistories() != 0) {
+            System.out.println("Copies kept after close: " + VersionClock.global().retainedHistories());
+            violations[0]++;
+        }
+        System.out.println(violations[0] == 0 ? "Every pass saw the same data." : violations[0] + " violation(s).");
+        System.exit(violations[0] == 0 ? 0 : 1);
+    }
+
+    // Runs the writers until the foreground work is done; returns their operations per second
+    private static double runWriters(EnrollmentService service, SyntheticDataset dataset, Runnable foreground)
+            throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder operations = new LongAdder();
+        Grade[] grades = Grade.values();
+        Thread[] writers = new Thread[WRITERS];
+        for (int i = 0; i < WRITERS; i++) {
+            writers[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (!stop.get()) {
+                    String regNo = SyntheticDataset.regNo(random.nextInt(dataset.getStudentCount()));
+                    String courseCode = SyntheticDataset.courseCode(random.nextInt(dataset.getCourseCount()));
+                    if (random.nextBoolean()) {
+                        service.assignGrade(regNo, courseCode, grades[random.nextInt(grades.length)]);
+                    } else {
+                        try {
+                            service.enrollStudent(regNo, courseCode);
+                        } catch (MaxCreditLimitExceededException | DuplicateEnrollmentException e) {
+                            // Rejected enrollments still count as operations
+                        }
+                    }
+                    operations.increment();
+                }
+            });
+            writers[i].start();
+        }
+        long start = System.nanoTime();
+        foreground.run();
+        stop.set(true);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        return operations.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // What one report pass read from the snapshot
+    private static final class Report {
+        private final Map<Grade, Long> distribution;
+        private final List<String> topStudents;
+        private final long enrollments;
+
+        private Report(Map<Grade, Long> distribution, List<String> topStudents, long enrollments) {
+            this.distribution = distribution;
+            this.topStudents = topStudents;
+            this.enrollments = enrollments;
+        }
+
+        static Report of(StoreSnapshot snapshot) {
+            return new Report(snapshot.gradeDistribution(),
+                    snapshot.topStudents(10).stream().map(s -> s.getRegNo() + "=" + s.getGpa())
+                            .collect(Collectors.toList()),
+                    snapshot.students().mapToLong(s -> s.getEnrollments().size()).sum());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Report)) {
+                return false;
+            }
+            Report report = (Report) other;
+            return distribution.equals(report.distribution) && topStudents.equals(report.topStudents)
+                    && enrollments == report.enrollments;
+        }
+
+        @Override
+        public int hashCode() {
+            return distribution.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return enrollments + " enrollments, " + distribution + ", top " + topStudents;
+        }
+    }
+}
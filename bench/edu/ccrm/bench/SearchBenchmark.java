@@ -0,0 +1,104 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Student;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures search-as-you-type latency of the student search index. The
+ * synthetic students are renamed to generated first and last names (so
+ * prefixes match realistic numbers of students), the index is rebuilt, and
+ * then every prefix of sample names is searched as if typed one letter at a
+ * time. Reports build time, index size and latency percentiles, next to a
+ * scan of all names for comparison.
+ *
+ * Usage: java edu.ccrm.bench.SearchBenchmark [studentCount]
+ */
+public class SearchBenchmark {
+
+    private static final String[] SYLLABLES = { "an", "ba", "cor", "da", "el", "fin", "ga", "hel", "is", "jo",
+        "ka", "lin", "ma", "nor", "o", "pa", "qui", "ra", "sa", "ta", "u", "vi", "wen", "xa", "ya", "zor", "be",
+        "de", "mi", "ro" };
+    private static final int SAMPLE_NAMES = 2_000;
+    private static final int RESULTS = 10;
+
+    private static long sink; // Keeps benchmark results observable
+
+    public static void main(String[] args) throws IOException {
+        int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        // Must be set before any persistence class is loaded
+        System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-bench").toString());
+        DataStore dataStore = DataStore.getInstance();
+        long start = System.nanoTime();
+        new SyntheticDataset(studentCount).populate(dataStore, false); // Indexed one student at a time
+        System.out.printf("Students added:   %,8d ms (indexed as they were added)\n",
+                (System.nanoTime() - start) / 1_000_000);
+
+        Random random = new Random(SyntheticDataset.DEFAULT_SEED);
+        List<String> names = new ArrayList<>();
+        for (Student student : dataStore.students.values()) {
+            String name = capitalize(word(random, 2)) + " " + capitalize(word(random, 3));
+            student.setFullName(name);
+            student.setEmail(name.toLowerCase(Locale.ROOT).replace(' ', '.') + "@campus.edu");
+            if (names.size() < SAMPLE_NAMES) {
+                names.add(name);
+            }
+        }
+        start = System.nanoTime();
+        dataStore.studentSearch.rebuild(dataStore.students.values());
+        System.out.printf("Index built in:   %,8d ms (%,d word positions for %,d students)\n",
+                (System.nanoTime() - start) / 1_000_000, dataStore.studentSearch.size(), studentCount);
+
+        // Every prefix of each sample name, as typed; twice, the first round being warm-up
+        List<String> typed = new ArrayList<>();
+        for (String name : names) {
+            for (int i = 1; i <= name.length(); i++) {
+                typed.add(name.substring(0, i));
+            }
+        }
+        long[] nanos = new long[typed.size()];
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < typed.size(); i++) {
+                long t = System.nanoTime();
+                sink += dataStore.studentSearch.search(typed.get(i), RESULTS).size();
+                nanos[i] = System.nanoTime() - t;
+            }
+        }
+        Arrays.sort(nanos);
+        System.out.printf("Search (%,d queries of %d results): p50 %.3f ms | p99 %.3f ms | max %.3f ms\n",
+                nanos.length, RESULTS, nanos[nanos.length / 2] / 1e6, nanos[(int) (nanos.length * 0.99)] / 1e6,
+                nanos[nanos.length - 1] / 1e6);
+
+        // The same kind of lookup without the index: a scan of every name
+        String needle = names.get(0).substring(0, 3).toLowerCase(Locale.ROOT);
+        start = System.nanoTime();
+        sink += dataStore.students.values().stream()
+                .filter(s -> s.getFullName().toLowerCase(Locale.ROOT).contains(needle))
+                .limit(RESULTS).count();
+        sink += dataStore.students.values().stream()
+                .filter(s -> s.getFullName().toLowerCase(Locale.ROOT).contains(needle + "zz"))
+                .count();
+        System.out.printf("Full scan for comparison: %.1f ms (one hit-limited and one exhaustive scan)\n",
+                (System.nanoTime() - start) / 1e6);
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private static String word(Random random, int syllables) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return word.toString();
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -0,0 +1,170 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.Student;
+import edu.ccrm.service.BulkTranscriptService;
+import edu.ccrm.service.CourseServiceImpl;
+import edu.ccrm.service.DuplicateEnrollmentException;
+import edu.ccrm.service.EnrollmentService;
+import edu.ccrm.service.MaxCreditLimitExceededException;
+import edu.ccrm.service.StudentServiceImpl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Micro-benchmarks for the service layer over synthetic datasets of several
+ * sizes, so a change to EnrollmentService, StudentServiceImpl, CourseServiceImpl
+ * or FileService can be compared before and after.
+ *
+ * Each operation is warmed up and then measured over a fixed number of
+ * iterations; results are reported as average time per operation. Results
+ * are fed into a sink so the JIT cannot drop the work.
+ *
+ * Usage: java edu.ccrm.bench.ServiceBenchmarks [size,size,...]
+ * (default 1000,10000,100000,1000000). All files are written to a temporary
+ * data directory; service console output is discarded while measuring.
+ */
+public class ServiceBenchmarks {
+
+    private static final int WARMUP_ITERATIONS = 2_000;
+    private static final int MEASURED_ITERATIONS = 10_000;
+    private static final int IO_ROUNDS = 3;
+
+    private static long sink; // Keeps benchmark results observable
+    private static PrintStream console;
+
+    @FunctionalInterface
+    private interface Operation {
+        long run(int iteration) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String sizes = args.length > 0 ? args[0] : "1000,10000,100000,1000000";
+        // Must be set before any persistence class is loaded
+        System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-bench").toString());
+
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (String size : sizes.split(",")) {
+                runSuite(Integer.parseInt(size.trim()));
+            }
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private static void runSuite(int size) throws Exception {
+        DataStore dataStore = DataStore.getInstance();
+        SyntheticDataset dataset = new SyntheticDataset(size);
+        dataset.populate(dataStore, true);
+        StudentServiceImpl studentService = new StudentServiceImpl();
+        CourseServiceImpl courseService = new CourseServiceImpl();
+        EnrollmentService enrollmentService = new EnrollmentService();
+        Random random = new Random(SyntheticDataset.DEFAULT_SEED);
+        Semester[] semesters = Semester.values();
+        // Keys are formatted up front so String.format is not part of the measured work
+        String[] regNos = new String[size];
+        for (int i = 0; i < size; i++) {
+            regNos[i] = SyntheticDataset.regNo(i);
+        }
+        String[] courseCodes = new String[dataset.getCourseCount()];
+        for (int i = 0; i < courseCodes.length; i++) {
+            courseCodes[i] = SyntheticDataset.courseCode(i);
+        }
+        String[] departments = new String[SyntheticDataset.DEPARTMENTS];
+        for (int i = 0; i < departments.length; i++) {
+            departments[i] = SyntheticDataset.department(i);
+        }
+
+        console.printf("\n=== %,d students, %,d courses ===\n", size, dataset.getCourseCount());
+        measure("calculateGpa (Student)", i -> {
+            Student student = dataStore.students.get(regNos[i % size]);
+            return Double.doubleToLongBits(student.calculateGpa());
+        });
+        measure("calculateGpa (EnrollmentService)", i ->
+                Double.doubleToLongBits(enrollmentService.calculateGpa(regNos[i % size])));
+        measure("getTopStudents(10)", i -> studentService.getTopStudents(10).size());
+        measure("generateTranscript", i ->
+                enrollmentService.generateTranscript(regNos[i % size]).length());
+        measure("findCoursesByDepartment", i ->
+                courseService.findCoursesByDepartment(departments[i % departments.length]).size());
+        measure("findCoursesByInstructor", i -> courseService.findCoursesByInstructor(
+                dataset.getInstructors().get(i % dataset.getInstructors().size())).size());
+        measure("findCoursesBySemester", i ->
+                courseService.findCoursesBySemester(semesters[i % semesters.length]).size());
+        measure("enrollStudent", i -> {
+            try {
+                enrollmentService.enrollStudent(regNos[random.nextInt(size)],
+                        courseCodes[random.nextInt(courseCodes.length)]);
+                return 1;
+            } catch (MaxCreditLimitExceededException | DuplicateEnrollmentException e) {
+                return 0;
+            }
+        });
+
+        // File I/O is measured per whole call rather than per iteration. Fresh service
+        // instances have no record of a previous save, so saveData always writes.
+        BulkTranscriptService bulkTranscripts = new BulkTranscriptService();
+        Path transcriptFile = Files.createTempFile("ccrm-transcripts", ".txt");
+        measureRounds("exportTranscripts (combined file)", () -> {
+            long start = System.nanoTime();
+            sink += bulkTranscripts.exportTranscripts(s -> true, transcriptFile,
+                    BulkTranscriptService.Output.COMBINED).getTranscripts();
+            return System.nanoTime() - start;
+        });
+        Files.deleteIfExists(transcriptFile);
+
+        dataset.populate(dataStore, false);
+        measureRounds("saveData (students + courses)", () -> {
+            StudentServiceImpl freshStudents = new StudentServiceImpl();
+            CourseServiceImpl freshCourses = new CourseServiceImpl();
+            long start = System.nanoTime();
+            freshStudents.saveData();
+            freshCourses.saveData();
+            return System.nanoTime() - start;
+        });
+        measureRounds("loadData (students + courses)", () -> {
+            dataStore.clearAll();
+            long start = System.nanoTime();
+            studentService.loadData();
+            courseService.loadData();
+            return System.nanoTime() - start;
+        });
+    }
+
+    private static void measure(String name, Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += operation.run(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            sink += operation.run(i);
+        }
+        double nanosPerOp = (System.nanoTime() - start) / (double) MEASURED_ITERATIONS;
+        console.printf("%-36s %12.0f ns/op %14.0f ops/s\n", name, nanosPerOp, 1_000_000_000.0 / nanosPerOp);
+    }
+
+    private interface TimedRound {
+        long run() throws IOException;
+    }
+
+    private static void measureRounds(String name, TimedRound round) throws IOException {
+        round.run(); // Warm-up
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < IO_ROUNDS; i++) {
+            long nanos = round.run();
+            best = Math.min(best, nanos);
+            total += nanos;
+        }
+        console.printf("%-36s %12.1f ms avg %10.1f ms best\n", name, total / (IO_ROUNDS * 1_000_000.0),
+                best / 1_000_000.0);
+    }
+}
@@ -0,0 +1,81 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.CourseShard;
+import edu.ccrm.config.DataStore;
+import edu.ccrm.io.ShardStorage;
+import edu.ccrm.service.ShardReportService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Compares single-department work on the department-sharded store with the
+ * same work over the whole campus, and campus-wide reports fanned out over
+ * the shards in parallel with the same reports run one shard at a time.
+ * Also times saving every shard against saving and loading one.
+ *
+ * Usage: java edu.ccrm.bench.ShardBenchmark [studentCount]
+ */
+public class ShardBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    private static long sink; // Keeps benchmark results observable
+
+    public static void main(String[] args) throws IOException {
+        int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        // Must be set before the DataStore and any persistence class is loaded
+        System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-bench").toString());
+        System.setProperty("ccrm.shard.by", "department");
+        DataStore dataStore = DataStore.getInstance();
+        new SyntheticDataset(studentCount).populate(dataStore, true);
+        String department = SyntheticDataset.department(3);
+        CourseShard shard = dataStore.shardFor(department);
+        System.out.printf("%,d students, %,d enrollments in %d shards by department\n", studentCount,
+                dataStore.enrollmentTable.size(), dataStore.shards().size());
+
+        System.out.println("\n--- One department (" + department + ") ---");
+        time("Enrollments, whole-table scan", () -> dataStore.enrollmentTable.stream()
+                .filter(e -> dataStore.courses.get(e.getCourseCode()).getDepartment().equals(department))
+                .count());
+        time("Enrollments, its shard only", () -> shard.enrollments().count());
+
+        System.out.println("\n--- Campus-wide shard summary ---");
+        ShardReportService reports = new ShardReportService();
+        time("One shard at a time", () -> {
+            long total = 0;
+            for (CourseShard s : dataStore.shards()) {
+                total += reports.summarizeShard(s.getName()).get().getStudents();
+            }
+            return total;
+        });
+        time("All shards in parallel", () -> reports.summarizeShards().stream()
+                .mapToLong(ShardReportService.ShardSummary::getStudents).sum());
+
+        System.out.println("\n--- Shard files ---");
+        ShardStorage storage = new ShardStorage();
+        time("Save all shards (parallel)", () -> {
+            List<ShardStorage.Result> results = storage.saveAll(dataStore);
+            return results.stream().mapToLong(ShardStorage.Result::getEnrollments).sum();
+        });
+        time("Save one shard", () -> storage.save(shard).getEnrollments());
+        time("Load one shard (merge)", () -> storage.load(dataStore, shard.getName()).getEnrollments());
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private interface Work {
+        long run() throws IOException;
+    }
+
+    // Runs the work ROUNDS times and prints the best time, the first rounds warming up the JIT
+    private static void time(String label, Work work) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            sink += work.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-32s %9.2f ms\n", label, best / 1_000_000.0);
+    }
+}
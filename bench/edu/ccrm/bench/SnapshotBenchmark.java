@@ -0,0 +1,60 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.io.SnapshotService;
+import edu.ccrm.service.CourseServiceImpl;
+import edu.ccrm.service.StudentServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares startup from the CSV files with startup from the binary snapshot.
+ *
+ * Usage: java edu.ccrm.bench.SnapshotBenchmark [studentCount]
+ * All files are written to a temporary data directory.
+ */
+public class SnapshotBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Path dataDir = Files.createTempDirectory("ccrm-bench");
+        // Must be set before any persistence class is loaded
+        System.setProperty("ccrm.data.dir", dataDir.toString());
+
+        DataStore dataStore = DataStore.getInstance();
+        StudentServiceImpl studentService = new StudentServiceImpl();
+        CourseServiceImpl courseService = new CourseServiceImpl();
+        SnapshotService snapshotService = new SnapshotService();
+
+        // 1. Build a synthetic dataset and persist it in both formats
+        // The CSV files carry no enrollments, so leave them out to compare like with like
+        new SyntheticDataset(studentCount).populate(dataStore, false);
+        studentService.saveData();
+        courseService.saveData();
+        snapshotService.saveSnapshot(dataStore);
+        System.out.printf("Dataset: %d students, CSV %d KB, snapshot %d KB\n", studentCount,
+                (Files.size(dataDir.resolve("students.csv")) + Files.size(dataDir.resolve("courses.csv"))) / 1024,
+                Files.size(snapshotService.getSnapshotPath()) / 1024);
+
+        // 2. Time each startup path; the first round doubles as JIT warm-up
+        for (int round = 1; round <= ROUNDS; round++) {
+            dataStore.clearAll();
+            long start = System.nanoTime();
+            studentService.loadData();
+            courseService.loadData();
+            long csvNanos = System.nanoTime() - start;
+
+            dataStore.clearAll();
+            start = System.nanoTime();
+            snapshotService.loadSnapshot(dataStore);
+            long snapshotNanos = System.nanoTime() - start;
+
+            System.out.printf("Round %d: CSV %.1f ms | snapshot %.1f ms | speedup %.1fx\n", round,
+                    csvNanos / 1_000_000.0, snapshotNanos / 1_000_000.0, (double) csvNanos / snapshotNanos);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Instructor;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.Student;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic test data for the benchmarks: the same size and seed always
+ * produce the same registration numbers, courses, enrollments and grades.
+ * Data is put straight into the DataStore, bypassing the write-ahead log.
+ */
+public class SyntheticDataset {
+
+    public static final long DEFAULT_SEED = 42L;
+    public static final int DEPARTMENTS = 20;
+    private static final int ENROLLMENTS_PER_STUDENT = 3;
+
+    private final int studentCount;
+    private final int courseCount;
+    private final long seed;
+    private final List<Instructor> instructors = new ArrayList<>();
+
+    public SyntheticDataset(int studentCount) {
+        this(studentCount, DEFAULT_SEED);
+    }
+
+    public SyntheticDataset(int studentCount, long seed) {
+        this.studentCount = studentCount;
+        this.courseCount = Math.max(50, studentCount / 50);
+        this.seed = seed;
+    }
+
+    public static String regNo(int index) {
+        return String.format("STU%07d", index);
+    }
+
+    public static String courseCode(int index) {
+        return String.format("C%05d", index);
+    }
+
+    public static String department(int index) {
+        return "DEPT_" + (index % DEPARTMENTS);
+    }
+
+    public int getStudentCount() {
+        return studentCount;
+    }
+
+    public int getCourseCount() {
+        return courseCount;
+    }
+
+    public List<Instructor> getInstructors() {
+        return instructors;
+    }
+
+    // Clears the DataStore and fills it with this dataset
+    public void populate(DataStore dataStore, boolean withEnrollments) {
+        dataStore.clearAll();
+        instructors.clear();
+        Random random = new Random(seed);
+        Semester[] semesters = Semester.values();
+        Grade[] grades = Grade.values();
+
+        for (int i = 0; i < Math.max(1, courseCount / 3); i++) {
+            Instructor instructor = new Instructor("Instructor " + i, "instructor" + i + "@campus.edu",
+                    department(i));
+            instructors.add(instructor);
+            dataStore.instructors.put(instructor.getId(), instructor);
+        }
+        for (int i = 0; i < courseCount; i++) {
+            Course course = new Course.Builder(courseCode(i), "Course Title " + i, 1 + i % 4)
+                    .department(department(i))
+                    .semester(semesters[i % semesters.length])
+                    .instructor(instructors.get(i % instructors.size()))
+                    .build();
+            dataStore.putCourse(course);
+        }
+        for (int i = 0; i < studentCount; i++) {
+            Student student = new Student("Student " + i, "student" + i + "@campus.edu", regNo(i));
+            dataStore.putStudent(student);
+            if (!withEnrollments) {
+                continue;
+            }
+            for (int e = 0; e < ENROLLMENTS_PER_STUDENT; e++) {
+                Course course = dataStore.courses.get(courseCode(random.nextInt(courseCount)));
+                if (student.isEnrolledIn(course.getCode())) {
+                    continue;
+                }
+                Enrollment enrollment = new Enrollment(student.getId(), course.getCode());
+                enrollment.setGrade(grades[random.nextInt(grades.length)]);
+                student.addEnrollment(enrollment, course);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Student;
+import edu.ccrm.domain.StudentSnapshot;
+import edu.ccrm.service.StudentPager;
+import edu.ccrm.util.LatencyHistogram;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Measures the tiered student store: heap in use before and after the
+ * inactive students are paged out to the archive, the time the sweep takes,
+ * and the latency of finding a student who is in memory, one who must be
+ * read back from the archive, and one read back before and still cached.
+ * Also checks that every student read back has exactly the enrollments and
+ * grades they were paged out with.
+ *
+ * Usage: java edu.ccrm.bench.TieredStoreBenchmark [studentCount] [activePercent] [lookups]
+ * Exits with status 1 if a student read back differs.
+ */
+public class TieredStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int activePercent = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int lookups = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        // Must be set before any persistence class is loaded
+        System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-tiers").toString());
+        DataStore dataStore = DataStore.getInstance();
+        SyntheticDataset dataset = new SyntheticDataset(studentCount);
+        dataset.populate(dataStore, true);
+
+        // Every student past the first activePercent is an alumnus or has left
+        int activeCount = (int) ((long) studentCount * activePercent / 100);
+        for (int i = activeCount; i < studentCount; i++) {
+            dataStore.students.get(SyntheticDataset.regNo(i))
+                    .setStatus(i % 2 == 0 ? Student.Status.GRADUATED : Student.Status.INACTIVE);
+        }
+        Random random = new Random(SyntheticDataset.DEFAULT_SEED);
+        List<StudentSnapshot> expected = new ArrayList<>(lookups);
+        for (int i = 0; i < lookups; i++) {
+            int index = activeCount + random.nextInt(studentCount - activeCount);
+            expected.add(dataStore.students.get(SyntheticDataset.regNo(index)).snapshot());
+        }
+
+        StudentPager pager = StudentPager.getInstance();
+        long before = usedHeap();
+        StudentPager.PageOutResult result = pager.pageOutInactive();
+        long after = usedHeap();
+        System.out.printf("%,d students, %d%% active%n", studentCount, activePercent);
+        System.out.println(result);
+        System.out.printf("Heap in use: %,d KB before, %,d KB after (%,d students in memory)%n", before / 1024,
+                after / 1024, dataStore.students.size());
+
+        LatencyHistogram hot = measure(lookups,
+                i -> SyntheticDataset.regNo(random.nextInt(Math.max(1, activeCount))), pager);
+        LatencyHistogram cold = measure(lookups, i -> expected.get(i).getRegNo(), pager);
+        // The students read back last, fewer than the default cache holds
+        int recent = Math.min(500, lookups);
+        LatencyHistogram cached = measure(lookups, i -> expected.get(lookups - 1 - i % recent).getRegNo(), pager);
+        print("In memory", hot);
+        print("From archive", cold);
+        print("Cached", cached);
+        System.out.println(pager.getStats());
+
+        int mismatches = 0;
+        for (StudentSnapshot student : expected) {
+            if (!sameState(student, pager.find(student.getRegNo()).snapshot())) {
+                mismatches++;
+            }
+        }
+        System.out.println(mismatches == 0 ? "Every student read back matches." : mismatches + " mismatch(es).");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    private static LatencyHistogram measure(int lookups, IntFunction<String> regNos, StudentPager pager) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < lookups; i++) {
+            String regNo = regNos.apply(i);
+            long start = System.nanoTime();
+            pager.find(regNo);
+            histogram.record(System.nanoTime() - start);
+        }
+        return histogram;
+    }
+
+    private static void print(String label, LatencyHistogram histogram) {
+        System.out.printf("%-13s mean %,8.1f us | p50 %,8.1f us | p99 %,8.1f us%n", label + ":",
+                histogram.getMeanNanos() / 1e3, histogram.getValueAtPercentile(50) / 1e3,
+                histogram.getValueAtPercentile(99) / 1e3);
+    }
+
+    private static boolean sameState(StudentSnapshot a, StudentSnapshot b) {
+        if (a.getId() != b.getId() || !a.getFullName().equals(b.getFullName()) || a.getStatus() != b.getStatus()
+                || !a.getRegistrationDate().equals(b.getRegistrationDate())
+                || a.getEnrollments().size() != b.getEnrollments().size()) {
+            return false;
+        }
+        for (int i = 0; i < a.getEnrollments().size(); i++) {
+            StudentSnapshot.EnrolledCourse x = a.getEnrollments().get(i);
+            StudentSnapshot.EnrolledCourse y = b.getEnrollments().get(i);
+            if (!x.getCourseCode().equals(y.getCourseCode()) || x.getGrade() != y.getGrade()
+                    || !x.getEnrollmentDate().equals(y.getEnrollmentDate())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,95 @@
+package edu.ccrm.bench;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Student;
+import edu.ccrm.io.WriteAheadLog;
+import edu.ccrm.service.EnrollmentService;
+import edu.ccrm.service.WriteBehindPersister;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures grade assignment throughput under the durability mode given with
+ * -Dccrm.persist.mode, with writer threads that keep regrading a small set
+ * of hot enrollments, so repeated changes can coalesce. Prints the
+ * persister's queue and flush statistics, drains it, and checks that the
+ * last grade logged for every enrollment is the grade it has in memory.
+ *
+ * Usage: java -Dccrm.persist.mode=sync|periodic|async edu.ccrm.bench.WriteBehindBenchmark
+ *        [seconds] [threads] [hotStudents]
+ * Exits with status 1 if the log does not match memory.
+ */
+public class WriteBehindBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int hotStudents = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        // Must be set before any persistence class is loaded
+        System.setProperty("ccrm.data.dir", Files.createTempDirectory("ccrm-bench").toString());
+        DataStore dataStore = DataStore.getInstance();
+        new SyntheticDataset(hotStudents).populate(dataStore, true);
+        EnrollmentService enrollmentService = new EnrollmentService();
+        WriteBehindPersister persister = WriteBehindPersister.getInstance();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Silence per-call messages
+
+        Grade[] grades = Grade.values();
+        LongAdder operations = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            writers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    Student student = dataStore.students.get(SyntheticDataset.regNo(random.nextInt(hotStudents)));
+                    for (Enrollment enrollment : student.getEnrolledCourses()) {
+                        enrollmentService.assignGrade(student.getRegNo(), enrollment.getCourseCode(),
+                                grades[random.nextInt(grades.length)]);
+                        operations.increment();
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        System.setOut(console);
+        System.out.printf("%s, %d threads: %,.0f grade changes/s%n", persister.getDurability(), threads,
+                operations.sum() / (double) seconds);
+        System.out.println(persister.getStats());
+
+        long drainStart = System.nanoTime();
+        int waiting = persister.drain();
+        System.out.printf("Drained %,d waiting changes in %.1f ms%n", waiting,
+                (System.nanoTime() - drainStart) / 1e6);
+
+        Map<String, String> logged = new HashMap<>();
+        WriteAheadLog.getInstance().replay(fields -> {
+            if (fields[0].equals("G")) {
+                logged.put(fields[1] + "," + fields[2], fields[3]);
+            }
+        });
+        int mismatches = 0;
+        for (Student student : dataStore.students.values()) {
+            for (Enrollment enrollment : student.getEnrolledCourses()) {
+                String last = logged.get(student.getRegNo() + "," + enrollment.getCourseCode());
+                if (last != null && !last.equals(enrollment.getGrade().name())) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println(mismatches == 0 ? "The log ends with every grade in memory."
+                : mismatches + " enrollment(s) logged with an outdated grade.");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+}
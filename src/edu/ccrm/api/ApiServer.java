@@ -0,0 +1,403 @@
+package edu.ccrm.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Instructor;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.Student;
+import edu.ccrm.service.CourseService;
+import edu.ccrm.service.EnrollmentRequest;
+import edu.ccrm.service.EnrollmentResult;
+import edu.ccrm.service.EnrollmentService;
+import edu.ccrm.service.ShardReportService;
+import edu.ccrm.service.ShardReportService.ShardSummary;
+import edu.ccrm.service.StudentService;
+import edu.ccrm.util.OperationMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A small HTTP/JSON API over the existing services, built on the JDK's
+ * built-in HTTP server. Every request is handled on its own virtual thread,
+ * so many advisors can work at once and a request that waits (for example on
+ * the write-ahead log fsync) does not hold up the others.
+ * <pre>
+ * GET  /api/students/{regNo}
+ * GET  /api/students/{regNo}/transcript[?format=text]
+ * GET  /api/courses[?department=..|instructor={instructorId}|semester=..]
+ * GET  /api/courses/{code}
+ * POST /api/enrollments   regNo, courseCode
+ * POST /api/grades        regNo, courseCode, grade
+ * GET  /api/search?q=..[&type=students|courses][&limit=n]
+ * GET  /api/grade-distribution[?course={code}|semester=..]
+ * GET  /api/shards[/{shard}]   per-shard summaries of the sharded store
+ * GET  /api/stats
+ * </pre>
+ * POST parameters may be sent in the query string or as a form-encoded body.
+ * The server only binds to the loopback interface.
+ */
+public class ApiServer {
+
+    private static final int DEFAULT_SEARCH_RESULTS = 10;
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    private final StudentService studentService;
+    private final CourseService courseService;
+    private final EnrollmentService enrollmentService;
+    private final ShardReportService shardReportService = new ShardReportService();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public ApiServer(StudentService studentService, CourseService courseService,
+            EnrollmentService enrollmentService) {
+        this.studentService = studentService;
+        this.courseService = courseService;
+        this.enrollmentService = enrollmentService;
+    }
+
+    /**
+     * Starts listening on 127.0.0.1.
+     *
+     * @param port The port to bind, or 0 to pick a free one.
+     */
+    public void start(int port) throws IOException {
+        // Small responses otherwise sit in Nagle's buffer waiting for a delayed ACK (~40 ms per request).
+        // The JDK server reads this once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/students/", handler(this::handleStudent));
+        server.createContext("/api/courses", handler(this::handleCourses));
+        server.createContext("/api/enrollments", handler(this::handleEnrollment));
+        server.createContext("/api/grades", handler(this::handleGrade));
+        server.createContext("/api/search", handler(this::handleSearch));
+        server.createContext("/api/grade-distribution", handler(this::handleGradeDistribution));
+        server.createContext("/api/shards", handler(this::handleShards));
+        server.createContext("/api/stats", handler(exchange -> {
+            requireMethod(exchange, "GET");
+            send(exchange, 200, OperationMetrics.getInstance().toJson());
+        }));
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Stops accepting requests and waits up to a second for running ones to finish
+    public void stop() {
+        server.stop(1);
+        executor.close();
+    }
+
+    // GET /api/students/{regNo} and /api/students/{regNo}/transcript
+    private void handleStudent(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        String[] path = pathAfter(exchange, "/api/students/");
+        if (path.length == 0 || path.length > 2 || (path.length == 2 && !path[1].equals("transcript"))) {
+            throw new ApiException(404, "Unknown resource.");
+        }
+        Student student = studentService.findStudentByRegNo(path[0])
+                .orElseThrow(() -> new ApiException(404, "Student " + path[0] + " not found."));
+        if (path.length == 1) {
+            send(exchange, 200, Json.student(student));
+            return;
+        }
+        if ("text".equals(parameters(exchange).get("format"))) {
+            sendText(exchange, 200, enrollmentService.generateTranscript(student.getRegNo()));
+            return;
+        }
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"regNo\":").append(Json.quote(student.getRegNo()))
+                .append(",\"fullName\":").append(Json.quote(student.getFullName()))
+                .append(",\"gpa\":").append(Json.number(enrollmentService.calculateGpa(student.getRegNo())))
+                .append(",\"courses\":[");
+        String separator = "";
+        for (Enrollment enrollment : student.getEnrolledCourses()) {
+            Course course = courseService.findCourseByCode(enrollment.getCourseCode()).orElse(null);
+            json.append(separator).append("{\"code\":").append(Json.quote(enrollment.getCourseCode()))
+                    .append(",\"title\":").append(Json.quote(course == null ? null : course.getTitle()))
+                    .append(",\"credits\":").append(course == null ? 0 : course.getCredits())
+                    .append(",\"grade\":").append(Json.quote(enrollment.getGrade().name()))
+                    .append('}');
+            separator = ",";
+        }
+        send(exchange, 200, json.append("]}").toString());
+    }
+
+    // GET /api/courses with an optional filter, or /api/courses/{code}
+    private void handleCourses(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        String[] path = pathAfter(exchange, "/api/courses");
+        if (path.length == 1) {
+            Course course = courseService.findCourseByCode(path[0])
+                    .orElseThrow(() -> new ApiException(404, "Course " + path[0] + " not found."));
+            send(exchange, 200, Json.course(course));
+            return;
+        }
+        if (path.length > 1) {
+            throw new ApiException(404, "Unknown resource.");
+        }
+
+        Map<String, String> params = parameters(exchange);
+        List<Course> courses;
+        if (params.containsKey("department")) {
+            courses = courseService.findCoursesByDepartment(params.get("department"));
+        } else if (params.containsKey("instructor")) {
+            Instructor instructor = DataStore.getInstance().instructors.get(parseId(params.get("instructor")));
+            if (instructor == null) {
+                throw new ApiException(404, "Instructor " + params.get("instructor") + " not found.");
+            }
+            courses = courseService.findCoursesByInstructor(instructor);
+        } else if (params.containsKey("semester")) {
+            courses = courseService.findCoursesBySemester(parseEnum(Semester.class, params.get("semester")));
+        } else {
+            courses = courseService.getAllCourses();
+        }
+        send(exchange, 200, Json.courses(courses));
+    }
+
+    // POST /api/enrollments
+    private void handleEnrollment(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        Map<String, String> params = parameters(exchange);
+        EnrollmentRequest request = new EnrollmentRequest(required(params, "regNo"), required(params, "courseCode"));
+        // The batch API reports the outcome instead of printing it or throwing
+        EnrollmentResult result = enrollmentService.enrollBatch(List.of(request)).get(0);
+        int status;
+        switch (result.getOutcome()) {
+            case ENROLLED:
+                status = 201;
+                break;
+            case DUPLICATE:
+                status = 409;
+                break;
+            case CREDIT_LIMIT_EXCEEDED:
+                status = 422;
+                break;
+            default:
+                status = 404;
+        }
+        send(exchange, status, "{\"regNo\":" + Json.quote(request.getRegNo())
+                + ",\"courseCode\":" + Json.quote(request.getCourseCode())
+                + ",\"outcome\":" + Json.quote(result.getOutcome().name()) + "}");
+    }
+
+    // POST /api/grades
+    private void handleGrade(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        Map<String, String> params = parameters(exchange);
+        String regNo = required(params, "regNo");
+        String courseCode = required(params, "courseCode");
+        Grade grade = parseEnum(Grade.class, required(params, "grade"));
+        Student student = studentService.findStudentByRegNo(regNo)
+                .orElseThrow(() -> new ApiException(404, "Student " + regNo + " not found."));
+        if (student.findEnrollment(courseCode).isEmpty()) {
+            throw new ApiException(404, "Student " + regNo + " is not enrolled in " + courseCode + ".");
+        }
+        enrollmentService.assignGrade(regNo, courseCode, grade);
+        send(exchange, 200, "{\"regNo\":" + Json.quote(regNo) + ",\"courseCode\":" + Json.quote(courseCode)
+                + ",\"grade\":" + Json.quote(grade.name()) + "}");
+    }
+
+    // GET /api/search; ranked prefix matches, cheap enough to call on every keystroke
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        Map<String, String> params = parameters(exchange);
+        String text = required(params, "q");
+        int limit = DEFAULT_SEARCH_RESULTS;
+        if (params.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(params.get("limit").trim());
+            } catch (NumberFormatException e) {
+                throw new ApiException(400, "Invalid limit: " + params.get("limit"));
+            }
+            if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+                throw new ApiException(400, "limit must be between 1 and " + MAX_SEARCH_RESULTS + ".");
+            }
+        }
+        String type = params.getOrDefault("type", "students");
+        if (type.equals("students")) {
+            send(exchange, 200, Json.studentMatches(studentService.searchStudents(text, limit)));
+        } else if (type.equals("courses")) {
+            send(exchange, 200, Json.courses(courseService.searchCourses(text, limit)));
+        } else {
+            throw new ApiException(400, "type must be students or courses.");
+        }
+    }
+
+    // GET /api/grade-distribution; answered from live counters, so it is cheap to poll
+    private void handleGradeDistribution(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        Map<String, String> params = parameters(exchange);
+        Map<Grade, Long> counts;
+        if (params.containsKey("course")) {
+            String courseCode = params.get("course");
+            if (courseService.findCourseByCode(courseCode).isEmpty()) {
+                throw new ApiException(404, "Course " + courseCode + " not found.");
+            }
+            counts = enrollmentService.getCourseGradeDistribution(courseCode);
+        } else if (params.containsKey("semester")) {
+            counts = enrollmentService.getGradeDistribution(parseEnum(Semester.class, params.get("semester")));
+        } else {
+            counts = enrollmentService.getGradeDistribution();
+        }
+        send(exchange, 200, Json.gradeCounts(counts));
+    }
+
+    // GET /api/shards, computed on all shards in parallel, or /api/shards/{shard}, which reads only that shard
+    private void handleShards(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        if (!DataStore.getInstance().isSharded()) {
+            throw new ApiException(404, "The store is not sharded.");
+        }
+        String[] path = pathAfter(exchange, "/api/shards");
+        if (path.length == 0) {
+            StringBuilder json = new StringBuilder(1024).append('[');
+            for (ShardSummary summary : shardReportService.summarizeShards()) {
+                json.append(json.length() == 1 ? "" : ",").append(Json.shardSummary(summary));
+            }
+            send(exchange, 200, json.append(']').toString());
+        } else if (path.length == 1) {
+            ShardSummary summary = shardReportService.summarizeShard(path[0])
+                    .orElseThrow(() -> new ApiException(404, "Shard " + path[0] + " not found."));
+            send(exchange, 200, Json.shardSummary(summary));
+        } else {
+            throw new ApiException(404, "No such resource.");
+        }
+    }
+
+    // Turns ApiExceptions and unexpected failures into JSON error responses
+    private HttpHandler handler(HttpHandler route) {
+        return exchange -> {
+            try (exchange) {
+                try {
+                    route.handle(exchange);
+                } catch (ApiException e) {
+                    send(exchange, e.status, Json.error(e.getMessage()));
+                } catch (RuntimeException e) {
+                    send(exchange, 500, Json.error(e.getClass().getSimpleName() + ": " + e.getMessage()));
+                }
+            }
+        };
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+            throw new ApiException(405, "Use " + method + " for this resource.");
+        }
+    }
+
+    // Decoded path segments after the context prefix, e.g. ["STU001", "transcript"]
+    private static String[] pathAfter(HttpExchange exchange, String prefix) {
+        String rest = exchange.getRequestURI().getRawPath().substring(prefix.length());
+        if (rest.startsWith("/")) {
+            rest = rest.substring(1);
+        }
+        if (rest.isEmpty()) {
+            return new String[0];
+        }
+        String[] segments = rest.split("/");
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = URLDecoder.decode(segments[i], StandardCharsets.UTF_8);
+        }
+        return segments;
+    }
+
+    // Query-string parameters, plus form-encoded body parameters for POST requests
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        if (exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+            try (InputStream body = exchange.getRequestBody()) {
+                parseForm(new String(body.readAllBytes(), StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> params) {
+        if (form == null || form.isBlank()) {
+            return;
+        }
+        for (String pair : form.trim().split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) {
+            throw new ApiException(400, "Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static long parseId(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Invalid id: " + value);
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Invalid " + type.getSimpleName().toLowerCase() + ": " + value);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        write(exchange, status, "application/json; charset=utf-8", json);
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        write(exchange, status, "text/plain; charset=utf-8", text);
+    }
+
+    private static void write(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // An error that maps directly to an HTTP status code
+    private static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package edu.ccrm.api;
+
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Student;
+import edu.ccrm.service.ShardReportService.ShardSummary;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Minimal JSON encoding for the API responses; the project has no JSON library.
+final class Json {
+
+    private Json() {
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    static String number(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    static String student(Student s) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"regNo\":").append(quote(s.getRegNo()))
+                .append(",\"id\":").append(s.getId())
+                .append(",\"fullName\":").append(quote(s.getFullName()))
+                .append(",\"email\":").append(quote(s.getEmail()))
+                .append(",\"status\":").append(quote(s.getStatus().name()))
+                .append(",\"registrationDate\":").append(quote(s.getRegistrationDate().toString()))
+                .append(",\"gpa\":").append(number(s.calculateGpa()))
+                .append(",\"courses\":[");
+        List<Enrollment> enrollments = s.getEnrolledCourses();
+        for (int i = 0; i < enrollments.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(quote(enrollments.get(i).getCourseCode()));
+        }
+        return json.append("]}").toString();
+    }
+
+    static String course(Course c) {
+        return "{\"code\":" + quote(c.getCode())
+                + ",\"title\":" + quote(c.getTitle())
+                + ",\"credits\":" + c.getCredits()
+                + ",\"department\":" + quote(c.getDepartment())
+                + ",\"semester\":" + quote(c.getSemester() == null ? null : c.getSemester().name())
+                + ",\"instructor\":" + quote(c.getInstructor() == null ? null : c.getInstructor().getFullName())
+                + "}";
+    }
+
+    // {"S":3,"A":5,...}; grades with no enrollments are left out
+    static String gradeCounts(Map<Grade, Long> counts) {
+        StringBuilder json = new StringBuilder(128).append('{');
+        counts.forEach((grade, count) -> json.append(json.length() == 1 ? "" : ",")
+                .append(quote(grade.name())).append(':').append(count));
+        return json.append('}').toString();
+    }
+
+    static String shardSummary(ShardSummary s) {
+        return "{\"shard\":" + quote(s.getShard())
+                + ",\"courses\":" + s.getCourses()
+                + ",\"students\":" + s.getStudents()
+                + ",\"enrollments\":" + s.getEnrollments()
+                + ",\"averageGradePoints\":" + (Double.isNaN(s.getAverageGradePoints()) ? "null"
+                        : number(s.getAverageGradePoints()))
+                + ",\"busiestCourse\":" + quote(s.getBusiestCourse())
+                + ",\"grades\":" + gradeCounts(s.getGradeCounts())
+                + "}";
+    }
+
+    // Search results: just enough of each student to show in a suggestion list
+    static String studentMatches(List<Student> students) {
+        StringBuilder json = new StringBuilder(students.size() * 96 + 2).append('[');
+        for (int i = 0; i < students.size(); i++) {
+            Student s = students.get(i);
+            json.append(i == 0 ? "" : ",").append("{\"regNo\":").append(quote(s.getRegNo()))
+                    .append(",\"id\":").append(s.getId())
+                    .append(",\"fullName\":").append(quote(s.getFullName()))
+                    .append(",\"email\":").append(quote(s.getEmail()))
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    static String courses(List<Course> courses) {
+        StringBuilder json = new StringBuilder(courses.size() * 128 + 2).append('[');
+        for (int i = 0; i < courses.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(course(courses.get(i)));
+        }
+        return json.append(']').toString();
+    }
+}
@@ -1,28 +1,64 @@
 package edu.ccrm.cli;
 
+import edu.ccrm.api.ApiServer;
+import edu.ccrm.config.CourseShard;
+import edu.ccrm.config.DataStore;
 import edu.ccrm.domain.Course;
 import edu.ccrm.domain.Grade;
 import edu.ccrm.domain.Semester;
 import edu.ccrm.domain.Student;
+import edu.ccrm.domain.StudentSnapshot;
+import edu.ccrm.io.ShardStorage;
+import edu.ccrm.io.SnapshotService;
+import edu.ccrm.io.WriteAheadLog;
+import edu.ccrm.query.QueryException;
 import edu.ccrm.service.*;
 import edu.ccrm.util.BackupService;
+import edu.ccrm.util.OperationMetrics;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class CliManager {
 
+    // Metrics file, rewritten every METRICS_DUMP_SECONDS while the application runs
+    private static final Path METRICS_FILE = Paths.get(System.getProperty("ccrm.data.dir", "data"), "metrics.json");
+    private static final long METRICS_DUMP_SECONDS = Long.getLong("ccrm.metrics.interval", 60);
+    private static final int SEARCH_RESULTS = 10;
+
     private final Scanner scanner = new Scanner(System.in);
-    private final StudentService studentService = new StudentServiceImpl();
-    private final CourseService courseService = new CourseServiceImpl();
-    private final EnrollmentService enrollmentService = new EnrollmentService();
+    private final StudentService studentService = new InstrumentedStudentService(new StudentServiceImpl());
+    private final CourseService courseService = new InstrumentedCourseService(new CourseServiceImpl());
+    private final EnrollmentService enrollmentService = new InstrumentedEnrollmentService();
     private final BackupService backupService = new BackupService();
+    private final SnapshotService snapshotService = new SnapshotService();
+    private final BulkTranscriptService bulkTranscriptService = new BulkTranscriptService();
+    private final QueryConsole queryConsole = new QueryConsole();
+    private final ShardStorage shardStorage = new ShardStorage();
+    private final ShardReportService shardReportService = new ShardReportService();
+    private final ReportService reportService = new ReportService();
 
     public void start() {
+        loadInitialData();
+        OperationMetrics.getInstance().startPeriodicDump(METRICS_FILE, METRICS_DUMP_SECONDS);
         while (true) {
             showMainMenu();
             int choice = getUserChoice();
@@ -43,8 +79,14 @@ public class CliManager {
                 case 5:
                     handleReports();
                     break;
+                case 6:
+                    handleStatistics();
+                    break;
+                case 7:
+                    handleQueries();
+                    break;
                 case 0:
-
+                    shutdown();
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -52,11 +94,195 @@ public class CliManager {
         }
     }
 
+    /**
+     * Headless mode: runs the commands in the given file (or standard input
+     * when the source is "-") without showing any menus. Everything printed,
+     * including service messages, goes through one buffered stream that is
+     * flushed at the end, so large scripts are not slowed down by the terminal.
+     *
+     * @return The number of commands that failed.
+     */
+    public int runScript(String source) {
+        PrintStream console = System.out;
+        PrintStream buffered = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), 64 * 1024), false);
+        System.setOut(buffered);
+        try (BufferedReader input = source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Paths.get(source))) {
+            loadInitialData();
+            ScriptRunner runner = new ScriptRunner(studentService, courseService, enrollmentService,
+                    backupService, snapshotService);
+            int failed = runner.run(input);
+            shutdown();
+            runner.printSummary();
+            return failed;
+        } catch (IOException e) {
+            System.out.println("Error running script: " + e.getMessage());
+            return 1;
+        } finally {
+            buffered.flush();
+            System.setOut(console);
+        }
+    }
+
+    /**
+     * Server mode: loads the data and serves the HTTP API on the given port
+     * until Enter is pressed, then saves like a normal exit.
+     */
+    public void serve(int port) {
+        loadInitialData();
+        OperationMetrics.getInstance().startPeriodicDump(METRICS_FILE, METRICS_DUMP_SECONDS);
+        ApiServer apiServer = new ApiServer(studentService, courseService, enrollmentService);
+        try {
+            apiServer.start(port);
+        } catch (IOException e) {
+            System.out.println("Could not start the API server: " + e.getMessage());
+            return;
+        }
+        System.out.println("API listening on http://127.0.0.1:" + apiServer.getPort() + "/api/");
+        System.out.println("Press Enter to stop the server.");
+        if (scanner.hasNextLine()) {
+            scanner.nextLine();
+        }
+        apiServer.stop();
+        shutdown();
+    }
+
+    // Loads the binary snapshot (or the CSV files if there is none yet) and then
+    // replays logged enrollments and grades on top of it
+    private void loadInitialData() {
+        try {
+            if (snapshotService.snapshotExists()) {
+                snapshotService.loadSnapshot(DataStore.getInstance());
+            } else {
+                studentService.loadData();
+                courseService.loadData();
+            }
+            enrollmentService.replayLog();
+        } catch (IOException e) {
+            System.out.println("Error loading data: " + e.getMessage());
+        }
+    }
+
+    // Writes a snapshot of everything in memory; the log entries it covers are then dropped
+    private void saveSnapshot() throws IOException {
+        WriteBehindPersister.getInstance().checkpoint(() -> {
+            snapshotService.saveSnapshot(DataStore.getInstance());
+            WriteAheadLog.getInstance().truncate();
+        });
+    }
+
+    private void shutdown() {
+        try {
+            // Drained first, so the waiting changes are on disk even if the snapshot cannot be written
+            int waiting = WriteBehindPersister.getInstance().drain();
+            if (waiting > 0) {
+                System.out.println("Flushed " + waiting + " pending change(s).");
+            }
+            saveSnapshot();
+            WriteAheadLog.getInstance().close();
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Error saving data on exit: " + e.getMessage());
+        }
+        OperationMetrics metrics = OperationMetrics.getInstance();
+        metrics.stopPeriodicDump();
+        try {
+            metrics.writeJson(METRICS_FILE);
+        } catch (IOException e) {
+            System.out.println("Error writing metrics on exit: " + e.getMessage());
+        }
+    }
+
+    // Reads ad-hoc queries until a blank line
+    private void handleQueries() {
+        System.out.println("\n--- Query Records ---");
+        QueryConsole.printHelp();
+        while (true) {
+            System.out.print("\nQuery (blank line to return): ");
+            String text = scanner.nextLine().trim();
+            if (text.isEmpty()) {
+                break;
+            }
+            try {
+                queryConsole.run(text);
+            } catch (QueryException e) {
+                System.out.println("Invalid query: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Search-as-you-type, one line at a time: each line shows the best matches
+     * for what has been typed so far, so a name can be narrowed down by
+     * typing a little more. Ends at a blank line.
+     */
+    private <T> void runSearch(String what, Function<String, List<T>> search, Function<T, String> format) {
+        System.out.println("\nType the beginning of any word of the " + what
+                + " and press Enter; add more letters or words to narrow it down.");
+        while (true) {
+            System.out.print("Search (blank line to return): ");
+            String text = scanner.nextLine().trim();
+            if (text.isEmpty()) {
+                break;
+            }
+            long start = System.nanoTime();
+            List<T> matches = search.apply(text);
+            double millis = (System.nanoTime() - start) / 1_000_000.0;
+            matches.forEach(match -> System.out.println("  " + format.apply(match)));
+            System.out.printf("%s in %.3f ms\n", matches.isEmpty() ? "No matches" : matches.size() + " best match(es)",
+                    millis);
+        }
+    }
+
+    private void handleStatistics() {
+        OperationMetrics metrics = OperationMetrics.getInstance();
+        while (true) {
+            System.out.println("\n--- Statistics ---");
+            System.out.println("1. View Operation Latencies");
+            System.out.println("2. Write Metrics File Now");
+            System.out.println("3. Reset Statistics");
+            System.out.println("4. View Write-Behind Persistence");
+            System.out.println("0. Return to Main Menu");
+            System.out.print("Enter your choice: ");
+
+            int choice = getUserChoice();
+            if (choice == 0)
+                break;
+
+            switch (choice) {
+                case 1:
+                    System.out.println("\n--- Operation Latencies ---");
+                    metrics.printTable(System.out);
+                    break;
+                case 2:
+                    try {
+                        metrics.writeJson(METRICS_FILE);
+                        System.out.println("Metrics written to: " + METRICS_FILE);
+                    } catch (IOException e) {
+                        System.out.println("Error writing metrics: " + e.getMessage());
+                    }
+                    break;
+                case 3:
+                    metrics.reset();
+                    System.out.println("Statistics reset.");
+                    break;
+                case 4:
+                    System.out.println(WriteBehindPersister.getInstance().getStats());
+                    break;
+                default:
+                    System.out.println("Invalid choice.");
+            }
+        }
+    }
+
     private void handleReports() {
         while (true) {
             System.out.println("\n--- View Reports ---");
             System.out.println("1. View Top 3 Students by GPA");
             System.out.println("2. View GPA Distribution");
+            System.out.println("3. Export Transcripts (all or filtered students)");
+            System.out.println("4. Shard Summary (sharded store)");
             System.out.println("0. Return to Main Menu");
             System.out.print("Enter your choice: ");
 
@@ -67,23 +293,20 @@ public class CliManager {
             switch (choice) {
                 case 1:
                     System.out.println("\n--- Top 3 Students ---");
-                    List<Student> topStudents = studentService.getTopStudents(3);
+                    // Read from one snapshot, so the GPAs and their order are from the same moment
+                    List<StudentSnapshot> topStudents = reportService.getTopStudents(3);
                     if (topStudents.isEmpty()) {
                         System.out.println("No student data available to generate a report.");
                     } else {
                         topStudents.forEach(s -> System.out.printf("Reg No: %-10s | Name: %-20s | GPA: %.2f\n",
-                                s.getRegNo(), s.getFullName(), s.calculateGpa()));
+                                s.getRegNo(), s.getFullName(), s.getGpa()));
                     }
                     break;
                 case 2:
                     System.out.println("\n--- Grade Distribution ---");
-                    // This stream pipeline calculates how many students received each grade
-                    Map<Grade, Long> gradeDistribution = studentService.getAllStudents().stream()
-                            .flatMap(student -> student.getEnrolledCourses().stream()) // Use getEnrolledCourses
-                            .filter(enrollment -> enrollment.getGrade() != null)
-                            .collect(Collectors.groupingBy(
-                                    enrollment -> enrollment.getGrade(),
-                                    Collectors.counting()));
+                    // Counted from one snapshot, so the totals and the semesters add up even while grades change
+                    ReportService.GradeReport gradeReport = reportService.getGradeReport();
+                    Map<Grade, Long> gradeDistribution = gradeReport.getOverall();
 
                     if (gradeDistribution.isEmpty()) {
                         System.out.println("No grade data available to generate a report.");
@@ -91,14 +314,78 @@ public class CliManager {
                         System.out.println("Number of enrollments per grade:");
                         gradeDistribution.forEach(
                                 (grade, count) -> System.out.printf("Grade %s: %d enrollment(s)\n", grade, count));
+                        for (Semester semester : Semester.values()) {
+                            Map<Grade, Long> semesterDistribution = gradeReport.getSemester(semester);
+                            if (!semesterDistribution.isEmpty()) {
+                                System.out.println(semester + ": " + semesterDistribution.entrySet().stream()
+                                        .map(e -> e.getKey() + "=" + e.getValue())
+                                        .collect(Collectors.joining(", ")));
+                            }
+                        }
                     }
                     break;
+                case 3:
+                    exportTranscripts();
+                    break;
+                case 4:
+                    showShardSummary();
+                    break;
                 default:
                     System.out.println("Invalid choice.");
             }
         }
     }
 
+    // Summarizes every shard in parallel, or only the shard of the key value entered
+    private void showShardSummary() {
+        DataStore dataStore = DataStore.getInstance();
+        if (!isSharded()) {
+            return;
+        }
+        System.out.print("Shard " + dataStore.shardKey.getAttribute() + " (leave blank for all shards): ");
+        String keyValue = scanner.nextLine().trim();
+        long start = System.nanoTime();
+        if (keyValue.isEmpty()) {
+            shardReportService.summarizeShards().forEach(System.out::println);
+        } else {
+            shardReportService.summarizeShard(keyValue).ifPresentOrElse(System.out::println,
+                    () -> System.out.println("No shard for " + keyValue));
+        }
+        System.out.printf("Report took %.1f ms\n", (System.nanoTime() - start) / 1_000_000.0);
+    }
+
+    private boolean isSharded() {
+        if (!DataStore.getInstance().isSharded()) {
+            System.out.println("The store is not sharded; start with -Dccrm.shard.by=department (or semester).");
+            return false;
+        }
+        return true;
+    }
+
+    private void exportTranscripts() {
+        System.out.print("Registration number prefix (leave blank for all students): ");
+        String prefix = scanner.nextLine().trim();
+        System.out.print("Active students only? (y/n): ");
+        boolean activeOnly = scanner.nextLine().trim().equalsIgnoreCase("y");
+        System.out.print("One file per student? (y/n): ");
+        boolean perStudent = scanner.nextLine().trim().equalsIgnoreCase("y");
+
+        Predicate<StudentSnapshot> filter = s -> s.getRegNo().startsWith(prefix)
+                && (!activeOnly || s.getStatus() == Student.Status.ACTIVE);
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
+        try {
+            BulkTranscriptService.Report report = perStudent
+                    ? bulkTranscriptService.exportTranscripts(filter, Paths.get("transcripts", timestamp),
+                            BulkTranscriptService.Output.PER_STUDENT)
+                    : bulkTranscriptService.exportTranscripts(filter,
+                            Paths.get("transcripts", "transcripts_" + timestamp + ".txt"),
+                            BulkTranscriptService.Output.COMBINED);
+            report.print();
+        } catch (IOException e) {
+            System.out.println("Error exporting transcripts: " + e.getMessage());
+        }
+    }
+
     private void showMainMenu() {
         System.out.println("\n* Welcome to Campus Course & Records Manager (CCRM) *");
         System.out.println("******************************************************");
@@ -108,6 +395,8 @@ public class CliManager {
         System.out.println("3. Manage Enrollments & Grades");
         System.out.println("4. File Operations");
         System.out.println("5. View Reports");
+        System.out.println("6. Statistics");
+        System.out.println("7. Query Records");
         System.out.println("0. Exit");
         System.out.print("Enter your choice: ");
     }
@@ -164,6 +453,7 @@ public class CliManager {
             System.out.println("2. List All Students");
             System.out.println("3. Find Student by Registration Number");
             System.out.println("4. View Student Transcript");
+            System.out.println("5. Search Students by Name or Email");
             System.out.println("0. Return to Main Menu");
             System.out.print("Enter your choice: ");
 
@@ -211,6 +501,10 @@ public class CliManager {
                             },
                             () -> System.out.println("No student found with that Registration Number."));
                     break;
+                case 5:
+                    runSearch("student name or email", text -> studentService.searchStudents(text, SEARCH_RESULTS),
+                            s -> String.format("%-10s | %-20s | %s", s.getRegNo(), s.getFullName(), s.getEmail()));
+                    break;
                 default:
                     System.out.println("Invalid choice. Please try again.");
             }
@@ -222,6 +516,7 @@ public class CliManager {
             System.out.println("\n--- Course Management ---");
             System.out.println("1. Add New Course");
             System.out.println("2. List All Courses");
+            System.out.println("3. Search Courses by Title or Code");
             System.out.println("0. Return to Main Menu");
             System.out.print("Enter your choice: ");
 
@@ -270,6 +565,10 @@ public class CliManager {
                         courses.forEach(System.out::println);
                     }
                     break;
+                case 3:
+                    runSearch("course title or code", text -> courseService.searchCourses(text, SEARCH_RESULTS),
+                            Course::toString);
+                    break;
                 default:
                     System.out.println("Invalid choice. Please try again.");
             }
@@ -282,6 +581,12 @@ public class CliManager {
             System.out.println("1. Import All Data (from .csv files)");
             System.out.println("2. Export All Data (to .csv files)");
             System.out.println("3. Create a Backup");
+            System.out.println("4. Bulk Import All Data (parallel loader)");
+            System.out.println("5. Restore a Backup");
+            System.out.println("6. Save Shards");
+            System.out.println("7. Load Shards");
+            System.out.println("8. Back Up One Shard");
+            System.out.println("9. Page Out Inactive Students");
             System.out.println("0. Return to Main Menu");
             System.out.print("Enter your choice: ");
 
@@ -293,6 +598,10 @@ public class CliManager {
                         System.out.println("Importing data...");
                         studentService.loadData();
                         courseService.loadData();
+                        if (DataStore.getInstance().isSharded()) {
+                            shardStorage.loadAll(DataStore.getInstance()).forEach(System.out::println);
+                        }
+                        enrollmentService.replayLog();
                         System.out.println("Data import successful!");
                     } catch (IOException e) {
                         System.out.println("Error importing data: " + e.getMessage());
@@ -303,6 +612,10 @@ public class CliManager {
                         System.out.println("Exporting data...");
                         studentService.saveData();
                         courseService.saveData();
+                        if (DataStore.getInstance().isSharded()) {
+                            shardStorage.saveAll(DataStore.getInstance()).forEach(System.out::println);
+                        }
+                        saveSnapshot();
                         System.out.println("Data export successful!");
                     } catch (IOException e) {
                         System.out.println("Error exporting data: " + e.getMessage());
@@ -311,11 +624,72 @@ public class CliManager {
                 case 3:
                     try {
                         System.out.println("Creating backup...");
+                        saveSnapshot(); // Backups leave the log out, so whatever it holds goes into the snapshot first
                         backupService.backupData();
                     } catch (IOException e) {
                         System.out.println("Error creating backup: " + e.getMessage());
                     }
                     break;
+                case 4:
+                    try {
+                        System.out.println("Importing data in parallel...");
+                        studentService.loadDataParallel();
+                        courseService.loadDataParallel();
+                        if (DataStore.getInstance().isSharded()) {
+                            shardStorage.loadAll(DataStore.getInstance()).forEach(System.out::println);
+                        }
+                        enrollmentService.replayLog();
+                        System.out.println("Data import successful!");
+                    } catch (IOException e) {
+                        System.out.println("Error importing data: " + e.getMessage());
+                    }
+                    break;
+                case 5:
+                    try {
+                        List<String> backups = backupService.listBackups();
+                        if (backups.isEmpty()) {
+                            System.out.println("No backups found.");
+                            break;
+                        }
+                        System.out.println("Available backups:");
+                        backups.forEach(b -> System.out.println("  " + b));
+                        System.out.print("Enter backup name: ");
+                        String backupName = scanner.nextLine().trim();
+                        backupService.restoreBackup(backupName, Paths.get("restored", backupName));
+                    } catch (IOException e) {
+                        System.out.println("Error restoring backup: " + e.getMessage());
+                    }
+                    break;
+                case 6:
+                    try {
+                        if (isSharded()) {
+                            shardStorage.saveAll(DataStore.getInstance()).forEach(System.out::println);
+                        }
+                    } catch (IOException e) {
+                        System.out.println("Error saving shards: " + e.getMessage());
+                    }
+                    break;
+                case 7:
+                    try {
+                        if (isSharded()) {
+                            shardStorage.loadAll(DataStore.getInstance()).forEach(System.out::println);
+                        }
+                    } catch (IOException e) {
+                        System.out.println("Error loading shards: " + e.getMessage());
+                    }
+                    break;
+                case 8:
+                    backUpShard();
+                    break;
+                case 9:
+                    try {
+                        System.out.println("Moving inactive and graduated students to the archive...");
+                        System.out.println(StudentPager.getInstance().pageOutInactive());
+                        System.out.println(StudentPager.getInstance().getStats());
+                    } catch (IOException e) {
+                        System.out.println("Error paging out students: " + e.getMessage());
+                    }
+                    break;
                 case 0:
                     return;
                 default:
@@ -324,6 +698,27 @@ public class CliManager {
         }
     }
 
+    // Saves one shard's files and backs them up on their own
+    private void backUpShard() {
+        if (!isSharded()) {
+            return;
+        }
+        DataStore dataStore = DataStore.getInstance();
+        System.out.print("Shard " + dataStore.shardKey.getAttribute() + ": ");
+        String keyValue = scanner.nextLine().trim();
+        CourseShard shard = dataStore.shardFor(keyValue);
+        if (shard == null) {
+            System.out.println("No shard for " + keyValue);
+            return;
+        }
+        try {
+            System.out.println(shardStorage.save(shard));
+            backupService.backupShard(shard.getName());
+        } catch (IOException e) {
+            System.out.println("Error backing up shard: " + e.getMessage());
+        }
+    }
+
     private int getUserChoice() {
         int choice = -1;
         try {
@@ -5,7 +5,18 @@ public class Main {
         // 1. Create the manager
         CliManager cliManager = new CliManager();
         
-        // 2. Run the application
+        // 2. Headless mode: "--script <file>" runs commands from a file, "--script" alone reads stdin
+        if (args.length > 0 && args[0].equals("--script")) {
+            int failed = cliManager.runScript(args.length > 1 ? args[1] : "-");
+            System.exit(failed == 0 ? 0 : 1);
+        }
+        // "--serve [port]" runs the HTTP API instead of the menus
+        if (args.length > 0 && args[0].equals("--serve")) {
+            cliManager.serve(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            return;
+        }
+
+        // 3. Run the application
         cliManager.start();
     }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package edu.ccrm.cli;
+
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Student;
+import edu.ccrm.query.Entity;
+import edu.ccrm.query.Query;
+import edu.ccrm.query.QueryEngine;
+import edu.ccrm.query.QueryException;
+
+import java.util.stream.Stream;
+
+// Runs text queries for the interactive menu and for scripts, printing one line per result
+final class QueryConsole {
+
+    private final QueryEngine engine = new QueryEngine();
+
+    static void printHelp() {
+        System.out.println("Syntax: <entity> [where <attribute> <op> <value> (and ...)*]"
+                + " [order by <attribute> [asc|desc], ...] [limit n] [offset n | page n]");
+        System.out.println("Operators: = != < <= > >= contains, and <attribute> between <low> and <high>");
+        for (Entity<?> entity : Entity.all()) {
+            System.out.println("  " + entity.getName() + ": " + String.join(", ", entity.getAttributeNames()));
+        }
+        System.out.println("Example: courses where department = CS and credits between 3 and 4 order by code limit 10");
+    }
+
+    /**
+     * Parses and runs the query, printing its plan and its results as they
+     * are produced.
+     *
+     * @return The number of results.
+     */
+    long run(String text) throws QueryException {
+        long start = System.nanoTime();
+        Query<?> query = Query.parse(text);
+        QueryEngine.Plan<?> plan = engine.plan(query);
+        System.out.println("Plan: " + plan.describe());
+        long[] count = {0};
+        try (Stream<?> results = plan.stream()) {
+            results.forEach(row -> {
+                System.out.println(format(row));
+                count[0]++;
+            });
+        }
+        System.out.printf("%d result(s) in %.1f ms\n", count[0], (System.nanoTime() - start) / 1_000_000.0);
+        return count[0];
+    }
+
+    private static String format(Object row) {
+        if (row instanceof Student) {
+            Student s = (Student) row;
+            return String.format("%-10s | %-20s | %-8s | GPA: %.2f | Enrollments: %d", s.getRegNo(),
+                    s.getFullName(), s.getStatus(), s.calculateGpa(), s.getEnrollmentCount());
+        } else if (row instanceof Enrollment) {
+            Enrollment e = (Enrollment) row;
+            return String.format("%-10s | %-10s | Grade: %-10s | Enrolled: %s",
+                    e.getStudent() == null ? "-" : e.getStudent().getRegNo(), e.getCourseCode(), e.getGrade(),
+                    e.getEnrollmentDate());
+        } else if (row instanceof Course) {
+            return row.toString();
+        }
+        return String.valueOf(row);
+    }
+}
@@ -0,0 +1,381 @@
+package edu.ccrm.cli;
+
+import edu.ccrm.config.CourseShard;
+import edu.ccrm.config.DataStore;
+import edu.ccrm.config.ShardKey;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.Student;
+import edu.ccrm.io.ShardStorage;
+import edu.ccrm.io.SnapshotService;
+import edu.ccrm.io.WriteAheadLog;
+import edu.ccrm.query.QueryException;
+import edu.ccrm.service.BulkTranscriptService;
+import edu.ccrm.service.CourseService;
+import edu.ccrm.service.EnrollmentRequest;
+import edu.ccrm.service.EnrollmentResult;
+import edu.ccrm.service.EnrollmentService;
+import edu.ccrm.service.ReportService;
+import edu.ccrm.service.ShardReportService;
+import edu.ccrm.service.StudentPager;
+import edu.ccrm.service.StudentService;
+import edu.ccrm.service.WriteBehindPersister;
+import edu.ccrm.util.BackupService;
+import edu.ccrm.util.OperationMetrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs CCRM commands read one per line, without rendering any menus.
+ *
+ * Arguments are separated by spaces; wrap an argument in double quotes if it
+ * contains spaces. Blank lines and lines starting with '#' are ignored.
+ * <pre>
+ * add-student   &lt;regNo&gt; &lt;fullName&gt; &lt;email&gt;
+ * update-student &lt;regNo&gt; &lt;fullName&gt; &lt;email&gt;
+ * deactivate    &lt;regNo&gt;
+ * add-course    &lt;code&gt; &lt;title&gt; &lt;credits&gt; &lt;department&gt; &lt;FALL|SPRING|SUMMER&gt;
+ * enroll        &lt;regNo&gt; &lt;courseCode&gt;
+ * grade         &lt;regNo&gt; &lt;courseCode&gt; &lt;S|A|B|C|D|E|F&gt;
+ * transcript    &lt;regNo&gt;
+ * top-students  &lt;count&gt;
+ * export-transcripts &lt;file|directory&gt; [per-student] [regNoPrefix]
+ * search        students|courses &lt;words or beginnings of words&gt;
+ * query         &lt;query text, e.g. courses where semester = FALL order by code limit 10&gt;
+ * shards        [report|save|load|backup] [shard, e.g. a department]
+ * import | export | backup | stats
+ * page-out | tiers
+ * persist [flush]
+ * </pre>
+ * The shards command needs the sharded store (-Dccrm.shard.by); without a
+ * shard it covers all shards. In sharded mode, import and export also load
+ * and save the shard files. page-out moves the students who are not ACTIVE
+ * to the on-disk archive; tiers shows how many students are in each tier.
+ * persist shows the write-behind queue and flush latency; persist flush
+ * writes the waiting changes first.
+ * Consecutive enroll commands are collected and submitted as one
+ * {@link EnrollmentService#enrollBatch(java.util.Collection)} call, so a long
+ * run of enrollments shares a single write-ahead log flush.
+ */
+class ScriptRunner {
+
+    private static final int SEARCH_RESULTS = 10;
+
+    private final StudentService studentService;
+    private final CourseService courseService;
+    private final EnrollmentService enrollmentService;
+    private final BackupService backupService;
+    private final SnapshotService snapshotService;
+    private final BulkTranscriptService bulkTranscriptService = new BulkTranscriptService();
+    private final ShardStorage shardStorage = new ShardStorage();
+    private final ShardReportService shardReportService = new ShardReportService();
+    private final ReportService reportService = new ReportService();
+    private final QueryConsole queryConsole = new QueryConsole();
+
+    private final List<EnrollmentRequest> pendingEnrollments = new ArrayList<>();
+    private final List<Integer> pendingLineNumbers = new ArrayList<>();
+    private int executed = 0;
+    private int failed = 0;
+    private long elapsedNanos = 0;
+
+    ScriptRunner(StudentService studentService, CourseService courseService, EnrollmentService enrollmentService,
+            BackupService backupService, SnapshotService snapshotService) {
+        this.studentService = studentService;
+        this.courseService = courseService;
+        this.enrollmentService = enrollmentService;
+        this.backupService = backupService;
+        this.snapshotService = snapshotService;
+    }
+
+    /**
+     * Executes every command in the input. A failing command is reported with
+     * its line number and does not stop the script.
+     *
+     * @return The number of commands that failed.
+     */
+    int run(BufferedReader input) throws IOException {
+        long start = System.nanoTime();
+        String line;
+        int lineNumber = 0;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            List<String> args = tokenize(trimmed);
+            String command = args.remove(0).toLowerCase();
+            if (command.equals("enroll") && args.size() == 2) {
+                pendingEnrollments.add(new EnrollmentRequest(args.get(0), args.get(1)));
+                pendingLineNumbers.add(lineNumber);
+                continue;
+            }
+            flushEnrollments();
+            executed++;
+            try {
+                if (command.equals("query")) {
+                    // Passed on as typed: the query syntax has its own quoting
+                    queryConsole.run(trimmed.substring(command.length()).trim());
+                } else {
+                    execute(command, args);
+                }
+            } catch (IllegalArgumentException | IOException | QueryException e) {
+                fail(lineNumber, e.getMessage());
+            }
+        }
+        flushEnrollments();
+        elapsedNanos = System.nanoTime() - start;
+        return failed;
+    }
+
+    void printSummary() {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        System.out.println("\n--- Script Summary ---");
+        System.out.printf("Commands: %d | Succeeded: %d | Failed: %d\n", executed, executed - failed, failed);
+        System.out.printf("Elapsed: %.2f s (%.0f commands/s)\n", seconds, seconds > 0 ? executed / seconds : 0.0);
+    }
+
+    private void execute(String command, List<String> args) throws IOException {
+        switch (command) {
+            case "add-student":
+                expectArgs(command, args, 3);
+                if (studentService.findStudentByRegNo(args.get(0)).isPresent()) {
+                    throw new IllegalArgumentException("Student " + args.get(0) + " already exists.");
+                }
+                studentService.addStudent(args.get(1), args.get(2), args.get(0));
+                break;
+            case "update-student":
+                expectArgs(command, args, 3);
+                if (!studentService.updateStudent(args.get(0), args.get(1), args.get(2))) {
+                    throw new IllegalArgumentException("Student " + args.get(0) + " not found.");
+                }
+                break;
+            case "deactivate":
+                expectArgs(command, args, 1);
+                requireStudent(args.get(0));
+                studentService.deactivateStudent(args.get(0));
+                break;
+            case "add-course":
+                expectArgs(command, args, 5);
+                if (courseService.findCourseByCode(args.get(0)).isPresent()) {
+                    throw new IllegalArgumentException("Course " + args.get(0) + " already exists.");
+                }
+                courseService.addCourse(new Course.Builder(args.get(0), args.get(1), Integer.parseInt(args.get(2)))
+                        .department(args.get(3))
+                        .semester(Semester.valueOf(args.get(4).toUpperCase()))
+                        .build());
+                break;
+            case "enroll":
+                throw new IllegalArgumentException("Usage: enroll <regNo> <courseCode>");
+            case "grade":
+                expectArgs(command, args, 3);
+                Student student = requireStudent(args.get(0));
+                if (student.findEnrollment(args.get(1)).isEmpty()) {
+                    throw new IllegalArgumentException(
+                            "Student " + args.get(0) + " is not enrolled in " + args.get(1) + ".");
+                }
+                enrollmentService.assignGrade(args.get(0), args.get(1), Grade.valueOf(args.get(2).toUpperCase()));
+                break;
+            case "transcript":
+                expectArgs(command, args, 1);
+                requireStudent(args.get(0));
+                System.out.println(enrollmentService.generateTranscript(args.get(0)));
+                break;
+            case "top-students":
+                expectArgs(command, args, 1);
+                reportService.getTopStudents(Integer.parseInt(args.get(0))).forEach(s -> System.out.printf(
+                        "Reg No: %-10s | Name: %-20s | GPA: %.2f\n", s.getRegNo(), s.getFullName(), s.getGpa()));
+                break;
+            case "search":
+                if (args.size() < 2 || !(args.get(0).equalsIgnoreCase("students")
+                        || args.get(0).equalsIgnoreCase("courses"))) {
+                    throw new IllegalArgumentException("Usage: search students|courses <text>");
+                }
+                String text = String.join(" ", args.subList(1, args.size()));
+                if (args.get(0).equalsIgnoreCase("students")) {
+                    studentService.searchStudents(text, SEARCH_RESULTS).forEach(s -> System.out.printf(
+                            "Reg No: %-10s | Name: %-20s | Email: %s\n", s.getRegNo(), s.getFullName(), s.getEmail()));
+                } else {
+                    courseService.searchCourses(text, SEARCH_RESULTS).forEach(System.out::println);
+                }
+                break;
+            case "export-transcripts":
+                if (args.isEmpty() || args.size() > 3) {
+                    throw new IllegalArgumentException(
+                            "Usage: export-transcripts <file|directory> [per-student] [regNoPrefix]");
+                }
+                boolean perStudent = args.size() > 1 && args.get(1).equalsIgnoreCase("per-student");
+                String prefix = args.size() > (perStudent ? 2 : 1) ? args.get(args.size() - 1) : "";
+                bulkTranscriptService.exportTranscripts(s -> s.getRegNo().startsWith(prefix), Paths.get(args.get(0)),
+                        perStudent ? BulkTranscriptService.Output.PER_STUDENT : BulkTranscriptService.Output.COMBINED)
+                        .print();
+                break;
+            case "shards":
+                shards(args.isEmpty() ? "report" : args.get(0).toLowerCase(),
+                        args.size() > 1 ? String.join(" ", args.subList(1, args.size())) : null);
+                break;
+            case "import":
+                studentService.loadData();
+                courseService.loadData();
+                if (DataStore.getInstance().isSharded()) {
+                    shardStorage.loadAll(DataStore.getInstance()).forEach(System.out::println);
+                }
+                enrollmentService.replayLog();
+                break;
+            case "export":
+                studentService.saveData();
+                courseService.saveData();
+                if (DataStore.getInstance().isSharded()) {
+                    shardStorage.saveAll(DataStore.getInstance()).forEach(System.out::println);
+                }
+                saveSnapshot();
+                break;
+            case "backup":
+                saveSnapshot(); // Backups leave the log out, so whatever it holds goes into the snapshot first
+                backupService.backupData();
+                break;
+            case "stats":
+                OperationMetrics.getInstance().printTable(System.out);
+                break;
+            case "page-out":
+                System.out.println(StudentPager.getInstance().pageOutInactive());
+                System.out.println(StudentPager.getInstance().getStats());
+                break;
+            case "tiers":
+                System.out.println(StudentPager.getInstance().getStats());
+                break;
+            case "persist":
+                if (args.size() > 1 || (args.size() == 1 && !args.get(0).equalsIgnoreCase("flush"))) {
+                    throw new IllegalArgumentException("Usage: persist [flush]");
+                }
+                if (!args.isEmpty()) {
+                    WriteBehindPersister.getInstance().flush();
+                }
+                System.out.println(WriteBehindPersister.getInstance().getStats());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    // Runs a shards sub-command on one shard, or on all of them in parallel when shard is null
+    private void shards(String action, String shard) throws IOException {
+        DataStore dataStore = DataStore.getInstance();
+        if (!dataStore.isSharded()) {
+            throw new IllegalArgumentException(
+                    "The store is not sharded; start with -Dccrm.shard.by=department (or semester).");
+        }
+        CourseShard target = shard == null ? null : dataStore.shardFor(shard);
+        if (target == null && shard != null && !action.equals("load")) {
+            throw new IllegalArgumentException("No shard for " + dataStore.shardKey.getAttribute() + " " + shard);
+        }
+        switch (action) {
+            case "report":
+                if (target == null) {
+                    shardReportService.summarizeShards().forEach(System.out::println);
+                } else {
+                    shardReportService.summarizeShard(shard).ifPresent(System.out::println);
+                }
+                break;
+            case "save":
+                if (target == null) {
+                    shardStorage.saveAll(dataStore).forEach(System.out::println);
+                } else {
+                    System.out.println(shardStorage.save(target));
+                }
+                break;
+            case "load":
+                if (shard == null) {
+                    shardStorage.loadAll(dataStore).forEach(System.out::println);
+                } else {
+                    System.out.println(shardStorage.load(dataStore, ShardKey.shardName(shard)));
+                }
+                break;
+            case "backup":
+                if (target == null) {
+                    throw new IllegalArgumentException("Usage: shards backup <shard>");
+                }
+                System.out.println(shardStorage.save(target)); // So the backup holds the shard as it is now
+                backupService.backupShard(target.getName());
+                break;
+            default:
+                throw new IllegalArgumentException("Usage: shards [report|save|load|backup] [shard]");
+        }
+    }
+
+    // Writes a snapshot of everything in memory; the log entries it covers are then dropped
+    private void saveSnapshot() throws IOException {
+        WriteBehindPersister.getInstance().checkpoint(() -> {
+            snapshotService.saveSnapshot(DataStore.getInstance());
+            WriteAheadLog.getInstance().truncate();
+        });
+    }
+
+    // Submits the enroll commands collected so far as one batch
+    private void flushEnrollments() {
+        if (pendingEnrollments.isEmpty()) {
+            return;
+        }
+        List<EnrollmentResult> results = enrollmentService.enrollBatch(pendingEnrollments);
+        for (int i = 0; i < results.size(); i++) {
+            executed++;
+            if (!results.get(i).isSuccess()) {
+                fail(pendingLineNumbers.get(i), "enroll " + results.get(i));
+            }
+        }
+        System.out.println("Enrolled " + results.stream().filter(EnrollmentResult::isSuccess).count() + " of "
+                + results.size() + " requested enrollment(s).");
+        pendingEnrollments.clear();
+        pendingLineNumbers.clear();
+    }
+
+    private void fail(int lineNumber, String message) {
+        failed++;
+        System.out.println("Line " + lineNumber + ": " + message);
+    }
+
+    private Student requireStudent(String regNo) {
+        return studentService.findStudentByRegNo(regNo)
+                .orElseThrow(() -> new IllegalArgumentException("Student " + regNo + " not found."));
+    }
+
+    private static void expectArgs(String command, List<String> args, int count) {
+        if (args.size() != count) {
+            throw new IllegalArgumentException(
+                    command + " expects " + count + " argument(s) but got " + args.size() + ".");
+        }
+    }
+
+    // Splits on spaces, keeping "quoted text" together as one argument
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean inToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inToken = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (inToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,115 @@
+package edu.ccrm.config;
+
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Instructor;
+import edu.ccrm.domain.Semester;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary hash indexes over the course catalogue, so lookups by department,
+ * instructor or semester cost time proportional to the number of matches
+ * instead of the size of the catalogue.
+ */
+public class CourseIndex {
+
+    private final Map<String, Set<Course>> byDepartment = new ConcurrentHashMap<>();
+    private final Map<Instructor, Set<Course>> byInstructor = new ConcurrentHashMap<>();
+    private final Map<Semester, Set<Course>> bySemester = new EnumMap<>(Semester.class);
+
+    public CourseIndex() {
+        // Every semester gets its set up front, so the EnumMap itself is never modified afterwards
+        for (Semester semester : Semester.values()) {
+            bySemester.put(semester, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    public void add(Course course) {
+        byDepartment.computeIfAbsent(normalize(course.getDepartment()), k -> ConcurrentHashMap.newKeySet())
+                .add(course);
+        bySemester.get(course.getSemester()).add(course);
+        if (course.getInstructor() != null) {
+            byInstructor.computeIfAbsent(course.getInstructor(), k -> ConcurrentHashMap.newKeySet()).add(course);
+        }
+        course.setInstructorListener(this::instructorChanged);
+    }
+
+    public void remove(Course course) {
+        course.setInstructorListener(null);
+        removeFrom(byDepartment, normalize(course.getDepartment()), course);
+        bySemester.get(course.getSemester()).remove(course);
+        if (course.getInstructor() != null) {
+            removeFrom(byInstructor, course.getInstructor(), course);
+        }
+    }
+
+    public void rebuild(Collection<Course> courses) {
+        clear();
+        courses.forEach(this::add);
+    }
+
+    public void clear() {
+        byDepartment.values().forEach(set -> set.forEach(c -> c.setInstructorListener(null)));
+        byDepartment.clear();
+        byInstructor.clear();
+        bySemester.values().forEach(Set::clear);
+    }
+
+    public List<Course> findByDepartment(String department) {
+        Set<Course> matches = byDepartment.get(normalize(department));
+        return matches == null ? new ArrayList<>() : new ArrayList<>(matches);
+    }
+
+    public List<Course> findByInstructor(Instructor instructor) {
+        Set<Course> matches = instructor == null ? null : byInstructor.get(instructor);
+        return matches == null ? new ArrayList<>() : new ArrayList<>(matches);
+    }
+
+    public List<Course> findBySemester(Semester semester) {
+        return new ArrayList<>(bySemester.get(semester));
+    }
+
+    // Sizes of the lookups above, without copying the matches; lets a query pick the most selective index
+    public int countByDepartment(String department) {
+        Set<Course> matches = byDepartment.get(normalize(department));
+        return matches == null ? 0 : matches.size();
+    }
+
+    public int countByInstructor(Instructor instructor) {
+        Set<Course> matches = instructor == null ? null : byInstructor.get(instructor);
+        return matches == null ? 0 : matches.size();
+    }
+
+    public int countBySemester(Semester semester) {
+        return bySemester.get(semester).size();
+    }
+
+    // Called by Course.assignInstructor after the instructor has changed
+    private void instructorChanged(Course course, Instructor previous) {
+        if (previous != null) {
+            removeFrom(byInstructor, previous, course);
+        }
+        if (course.getInstructor() != null) {
+            byInstructor.computeIfAbsent(course.getInstructor(), k -> ConcurrentHashMap.newKeySet()).add(course);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Course>> index, K key, Course course) {
+        index.computeIfPresent(key, (k, set) -> {
+            set.remove(course);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    // Department lookups were case-insensitive, so keys are stored lower-cased
+    private static String normalize(String department) {
+        return department == null ? "" : department.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,79 @@
+package edu.ccrm.config;
+
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.EnrollmentTable;
+import edu.ccrm.domain.Grade;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/**
+ * One partition of the sharded store: the courses with the same shard key
+ * value, and through them the enrollments in those courses. Enrollments are
+ * read from the courses' own row lists in the {@link EnrollmentTable}, so
+ * working on one shard never touches the rows of another.
+ */
+public class CourseShard {
+
+    private final String name;
+    private final ConcurrentMap<String, Course> courses = new ConcurrentHashMap<>(); // Key: courseCode
+    private final EnrollmentTable enrollmentTable;
+
+    CourseShard(String name, EnrollmentTable enrollmentTable) {
+        this.name = name;
+        this.enrollmentTable = enrollmentTable;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // A read-only view of the shard's courses
+    public Map<String, Course> getCourses() {
+        return Collections.unmodifiableMap(courses);
+    }
+
+    public int courseCount() {
+        return courses.size();
+    }
+
+    // The enrollments in this shard's courses, read lazily course by course
+    public Stream<Enrollment> enrollments() {
+        return courses.keySet().stream().flatMap(enrollmentTable::stream);
+    }
+
+    public long enrollmentCount() {
+        long count = 0;
+        for (String code : courses.keySet()) {
+            count += enrollmentTable.count(code);
+        }
+        return count;
+    }
+
+    // Number of enrollments per grade in this shard, summed from the per-course counters
+    public Map<Grade, Long> gradeCounts() {
+        Map<Grade, Long> counts = new EnumMap<>(Grade.class);
+        for (String code : courses.keySet()) {
+            enrollmentTable.gradeCounts(code).forEach((grade, count) -> counts.merge(grade, count, Long::sum));
+        }
+        return counts;
+    }
+
+    void put(Course course) {
+        courses.put(course.getCode(), course);
+    }
+
+    // Removes the course if it is the one stored under its code
+    void remove(Course course) {
+        courses.remove(course.getCode(), course);
+    }
+
+    boolean isEmpty() {
+        return courses.isEmpty();
+    }
+}
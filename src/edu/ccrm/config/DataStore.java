@@ -1,13 +1,22 @@
 package edu.ccrm.config;
 
 import edu.ccrm.domain.Course;
-import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.EnrollmentTable;
 import edu.ccrm.domain.Instructor;
 import edu.ccrm.domain.Student;
+import edu.ccrm.domain.VersionClock;
+import edu.ccrm.domain.VersionHistory;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class DataStore {
 
@@ -15,10 +24,30 @@ public class DataStore {
 
     // Using ConcurrentHashMap for thread safety, though not strictly necessary for
     // this single-threaded CLI app.
-    public final Map<String, Student> students = new ConcurrentHashMap<>(); // Key: regNo
-    public final Map<String, Course> courses = new ConcurrentHashMap<>(); // Key: courseCode
-    public final Map<String, Instructor> instructors = new ConcurrentHashMap<>(); // Key: instructorId
-    public final Map<String, Enrollment> enrollments = new ConcurrentHashMap<>(); // Key: studentId + "_" + courseCode
+    public final ConcurrentMap<String, Student> students = new ConcurrentHashMap<>(); // Key: regNo
+    public final ConcurrentMap<String, Course> courses = new ConcurrentHashMap<>(); // Key: courseCode
+    public final Map<Long, Instructor> instructors = new ConcurrentHashMap<>(); // Key: instructor id
+    // Every enrollment, stored as compact rows; Students and Enrollments are views over it
+    public final EnrollmentTable enrollmentTable = EnrollmentTable.getInstance();
+
+    // Secondary indexes over courses; kept current by putCourse
+    public final CourseIndex courseIndex = new CourseIndex();
+    // Students ordered by GPA; kept current by putStudent and the students' GPA listeners
+    public final GpaRanking gpaRanking = new GpaRanking();
+    // Search-as-you-type by name or email, and by course title or code; kept current by putStudent and putCourse
+    public final SearchIndex<Student> studentSearch = new SearchIndex<>(
+            s -> students.get(s.getRegNo()) == s, Student::getFullName, Student::getEmail);
+    public final SearchIndex<Course> courseSearch = new SearchIndex<>(
+            c -> courses.get(c.getCode()) == c, Course::getTitle, Course::getCode);
+
+    // Sharded mode (-Dccrm.shard.by): courses are also partitioned into shards by this key, or null if not sharded.
+    // The courses map stays the directory of every course, as codes are unique across shards.
+    public final ShardKey shardKey = ShardKey.configured();
+    private final ConcurrentMap<String, CourseShard> shards = new ConcurrentHashMap<>(); // Key: shard name
+
+    // Earlier entries of the students and courses maps, kept by putStudent and putCourse for open snapshots
+    final ConcurrentMap<String, VersionHistory<Student>> studentVersions = new ConcurrentHashMap<>();
+    final ConcurrentMap<String, VersionHistory<Course>> courseVersions = new ConcurrentHashMap<>();
 
     // Private constructor to prevent instantiation
     private DataStore() {
@@ -31,10 +60,217 @@ public class DataStore {
         return instance;
     }
 
+    /**
+     * Adds or replaces a student and keeps the GPA ranking and search index in
+     * step. A replaced student's enrollments are dropped with them, so bring an
+     * existing student up to date instead of replacing them to keep their
+     * enrollments.
+     */
+    public void putStudent(Student student) {
+        Student previous = putVersioned(students, studentVersions, student.getRegNo(), student);
+        if (previous != null && previous != student) {
+            gpaRanking.remove(previous);
+            dropEnrollments(previous);
+        }
+        gpaRanking.add(student);
+        if (previous != student) {
+            if (previous != null) {
+                studentSearch.remove(previous);
+            }
+            studentSearch.add(student);
+        }
+    }
+
+    /**
+     * Removes a student and their index entries, e.g. when they are paged out
+     * of memory. Their enrollments must have been removed already. Open store
+     * snapshots keep seeing the student.
+     *
+     * @return False if the map no longer held this student object.
+     */
+    public boolean removeStudent(Student student) {
+        if (!removeVersioned(students, studentVersions, student.getRegNo(), student)) {
+            return false;
+        }
+        gpaRanking.remove(student);
+        studentSearch.remove(student);
+        return true;
+    }
+
+    /**
+     * Removes every enrollment of a student who left the store and frees their
+     * rows and table id, so the live grade counters and course rosters stop
+     * counting them. The Student object is retired: it, and any enrollment view
+     * of it, only reads the state it left with (see {@link Student#retire()}).
+     */
+    public void dropEnrollments(Student student) {
+        student.retire();
+        enrollmentTable.release(student);
+    }
+
+    // Rebuilds the student indexes after students were put into the map directly
+    public void rebuildStudentIndexes() {
+        gpaRanking.rebuild(students.values());
+        studentSearch.rebuild(students.values());
+    }
+
+    // Adds or replaces a course and keeps the course indexes in step
+    public void putCourse(Course course) {
+        Course previous = putVersioned(courses, courseVersions, course.getCode(), course);
+        if (previous != null) {
+            courseIndex.remove(previous);
+            removeFromShard(previous);
+        }
+        courseIndex.add(course);
+        addToShard(course);
+        if (previous != course) {
+            if (previous != null) {
+                courseSearch.remove(previous);
+            }
+            courseSearch.add(course);
+        }
+    }
+
+    // Rebuilds the course indexes after courses were put into the map directly
+    public void rebuildCourseIndexes() {
+        courseIndex.rebuild(courses.values());
+        courseSearch.rebuild(courses.values());
+        shards.clear();
+        courses.values().forEach(this::addToShard);
+    }
+
+    // Both run inside the map's compute methods, so a shard dropped when it empties never receives a course
+    private void addToShard(Course course) {
+        if (shardKey != null) {
+            shards.compute(shardKey.shardOf(course), (name, shard) -> {
+                CourseShard target = shard != null ? shard : new CourseShard(name, enrollmentTable);
+                target.put(course);
+                return target;
+            });
+        }
+    }
+
+    private void removeFromShard(Course course) {
+        if (shardKey != null) {
+            shards.computeIfPresent(shardKey.shardOf(course), (name, shard) -> {
+                shard.remove(course);
+                return shard.isEmpty() ? null : shard;
+            });
+        }
+    }
+
+    /**
+     * Opens a point-in-time view of the students, their enrollments and the
+     * courses, for reports that must not see changes made while they run.
+     * Writers are never blocked. Close the snapshot when done.
+     */
+    public StoreSnapshot snapshot() {
+        return new StoreSnapshot(this);
+    }
+
+    // Puts into the map, first keeping the replaced entry (or its absence) if an open snapshot needs it
+    private static <V> V putVersioned(ConcurrentMap<String, V> map, ConcurrentMap<String, VersionHistory<V>> versions,
+            String key, V value) {
+        VersionClock clock = VersionClock.global();
+        List<V> previous = new ArrayList<>(1);
+        map.compute(key, (k, old) -> {
+            long version = clock.current(); // Read inside compute, so writes to one key get versions in order
+            keepForSnapshots(versions, k, old, version);
+            previous.add(old);
+            return value;
+        });
+        return previous.get(0);
+    }
+
+    // Removes the entry if it still maps to the value, first keeping it if an open snapshot needs it
+    private static <V> boolean removeVersioned(ConcurrentMap<String, V> map,
+            ConcurrentMap<String, VersionHistory<V>> versions, String key, V value) {
+        VersionClock clock = VersionClock.global();
+        List<V> removed = new ArrayList<>(1);
+        map.computeIfPresent(key, (k, old) -> {
+            if (old != value) {
+                return old;
+            }
+            keepForSnapshots(versions, k, old, clock.current());
+            removed.add(old);
+            return null;
+        });
+        return !removed.isEmpty();
+    }
+
+    // Called inside the map's compute, so it is atomic with the change and with dropping empty histories
+    private static <V> void keepForSnapshots(ConcurrentMap<String, VersionHistory<V>> versions, String key, V old,
+            long version) {
+        long newestOlder = VersionClock.global().newestOpenBefore(version);
+        if (newestOlder >= 0) {
+            versions.compute(key, (k, history) -> {
+                VersionHistory<V> target = history != null ? history : new VersionHistory<>();
+                target.record(() -> old, version, newestOlder);
+                return target;
+            });
+        }
+    }
+
+    // Forgets the map histories whose copies were all pruned; called when a snapshot closes
+    void dropEmptyVersions() {
+        for (String regNo : studentVersions.keySet()) {
+            studentVersions.computeIfPresent(regNo, (k, history) -> history.isEmpty() ? null : history);
+        }
+        for (String code : courseVersions.keySet()) {
+            courseVersions.computeIfPresent(code, (k, history) -> history.isEmpty() ? null : history);
+        }
+    }
+
+    public boolean isSharded() {
+        return shardKey != null;
+    }
+
+    // The shards, ordered by name; empty if the store is not sharded
+    public List<CourseShard> shards() {
+        List<CourseShard> list = new ArrayList<>(shards.values());
+        list.sort(Comparator.comparing(CourseShard::getName));
+        return list;
+    }
+
+    // The shard holding courses with the given key value (e.g. a department), or null if there is none
+    public CourseShard shardFor(Object keyValue) {
+        return shardKey == null ? null : shards.get(ShardKey.shardName(keyValue));
+    }
+
+    /**
+     * Runs a piece of work on every shard in parallel and merges the results,
+     * so a campus-wide report costs about as long as its largest shard.
+     *
+     * @param work     What to compute for one shard.
+     * @param identity The result for no shards.
+     * @param merge    Combines two results; must be associative.
+     */
+    public <R> R acrossShards(Function<CourseShard, R> work, R identity, BinaryOperator<R> merge) {
+        return shards().parallelStream().map(work).reduce(identity, merge);
+    }
+
+    // Runs work on every shard in parallel; results are returned in shard name order
+    public <R> Map<String, R> perShard(Function<CourseShard, R> work) {
+        Map<String, R> results = new LinkedHashMap<>();
+        List<CourseShard> list = shards();
+        List<R> computed = list.parallelStream().map(work).collect(Collectors.toList());
+        for (int i = 0; i < list.size(); i++) {
+            results.put(list.get(i).getName(), computed.get(i));
+        }
+        return results;
+    }
+
     public void clearAll() {
         students.clear();
+        gpaRanking.clear();
+        studentSearch.clear();
         courses.clear();
+        courseIndex.clear();
+        courseSearch.clear();
+        shards.clear();
         instructors.clear();
-        enrollments.clear();
+        enrollmentTable.clear();
+        studentVersions.clear();
+        courseVersions.clear();
     }
 }
\ No newline at end of file
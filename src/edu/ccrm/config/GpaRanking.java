@@ -0,0 +1,146 @@
+package edu.ccrm.config;
+
+import edu.ccrm.domain.Student;
+import edu.ccrm.util.StripedLocks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Students ordered by GPA (highest first, ties by registration number),
+ * maintained incrementally: a student is re-positioned only when their own
+ * GPA changes, so reading the top K costs O(K) instead of a full sort.
+ *
+ * The GPA is computed outside any ranking lock. Moving a student's entry
+ * only takes the lock of their stripe, so grade changes to different
+ * students re-rank them in parallel.
+ */
+public class GpaRanking {
+
+    private final NavigableSet<Entry> ranking = new ConcurrentSkipListSet<>(
+            Comparator.comparingDouble(Entry::gpa).reversed().thenComparing(Entry::regNo));
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>(); // Key: regNo
+    // A student's entry is only replaced while holding the stripe of their regNo
+    private final StripedLocks locks = new StripedLocks(64);
+
+    public void add(Student student) {
+        Entry entry = new Entry(student, student.calculateGpa());
+        ReentrantLock lock = locks.lockFor(student.getRegNo());
+        lock.lock();
+        try {
+            Entry previous = entries.put(student.getRegNo(), entry);
+            if (previous != null) {
+                ranking.remove(previous);
+            }
+            ranking.add(entry);
+        } finally {
+            lock.unlock();
+        }
+        student.setGpaListener(this::update);
+        update(student); // In case the GPA changed before the listener was set
+    }
+
+    public void remove(Student student) {
+        student.setGpaListener(null);
+        ReentrantLock lock = locks.lockFor(student.getRegNo());
+        lock.lock();
+        try {
+            Entry entry = entries.get(student.getRegNo());
+            if (entry != null && entry.student == student) {
+                entries.remove(student.getRegNo());
+                ranking.remove(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void rebuild(Collection<Student> students) {
+        clear();
+        students.forEach(this::add);
+    }
+
+    public void clear() {
+        List<ReentrantLock> all = locks.lockEvery();
+        try {
+            entries.values().forEach(e -> e.student.setGpaListener(null));
+            entries.clear();
+            ranking.clear();
+        } finally {
+            locks.unlockAll(all);
+        }
+    }
+
+    public List<Student> top(int count) {
+        List<Student> top = new ArrayList<>(Math.max(0, count));
+        Iterator<Entry> it = ranking.iterator();
+        while (top.size() < count && it.hasNext()) {
+            top.add(it.next().student);
+        }
+        return top;
+    }
+
+    /**
+     * Streams students in ranking order without copying the ranking, so
+     * taking the first K costs O(K). The stream is weakly consistent: students
+     * re-ranked while it is consumed may appear at their old or new place.
+     *
+     * @param highestFirst True for highest GPA first, false for lowest first.
+     */
+    public Stream<Student> stream(boolean highestFirst) {
+        NavigableSet<Entry> order = highestFirst ? ranking : ranking.descendingSet();
+        return order.stream().map(e -> e.student);
+    }
+
+    // Called whenever a student's cached GPA has been invalidated
+    private void update(Student student) {
+        student.calculateGpa(); // Recomputed here, outside the stripe lock, and cached on the student
+        ReentrantLock lock = locks.lockFor(student.getRegNo());
+        lock.lock();
+        try {
+            Entry previous = entries.get(student.getRegNo());
+            if (previous == null || previous.student != student) {
+                return; // Removed or replaced meanwhile
+            }
+            // Read again under the lock, so of two concurrent updates the one applied last has the newest GPA;
+            // normally a cache hit, recomputed only if the GPA changed again since the call above
+            double gpa = student.calculateGpa();
+            if (previous.gpa == gpa) {
+                return;
+            }
+            Entry entry = new Entry(student, gpa);
+            ranking.remove(previous);
+            entries.put(student.getRegNo(), entry);
+            ranking.add(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Entry {
+        private final Student student;
+        private final double gpa;
+
+        Entry(Student student, double gpa) {
+            this.student = student;
+            this.gpa = gpa;
+        }
+
+        double gpa() {
+            return gpa;
+        }
+
+        String regNo() {
+            return student.getRegNo();
+        }
+    }
+}
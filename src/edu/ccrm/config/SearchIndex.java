@@ -0,0 +1,715 @@
+package edu.ccrm.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Search-as-you-type over the words of some text fields, e.g. a student's
+ * name and email. An item matches a query when every query word is the start
+ * of a word in one of its fields, ignoring case ("ann sm" finds "Anna Smith").
+ * Results are ranked by how each query word matched: a whole word beats a
+ * prefix, and a match in an earlier field beats one in a later field.
+ *
+ * Each field keeps a sorted array of word positions (text, offset, item), so
+ * the words with a given prefix are found by binary search and no string is
+ * created per word. New words go to a small sorted buffer that is merged into
+ * the array once it has grown by an eighth. Nothing is removed directly: an
+ * entry whose item has been replaced, or whose field now holds a different
+ * text, is skipped when read, and dropped by a merge once enough entries may
+ * be stale to be worth the check. Items must therefore be changed through
+ * {@link #update}.
+ *
+ * Searches take no lock; writes are serialised on the index.
+ */
+public class SearchIndex<T> {
+
+    private static final int MIN_MERGE = 4096;
+    private static final int[] SIGNATURE_PREFIXES = { 2, 3, 5 };
+
+    private final Predicate<T> isCurrent;
+    private final List<FieldIndex> fields = new ArrayList<>();
+    private long nextSeq; // Under the index lock
+
+    /**
+     * @param isCurrent Tells whether an item is still the stored one (and not replaced or removed).
+     * @param fields    The indexed fields, most important first.
+     */
+    @SafeVarargs
+    public SearchIndex(Predicate<T> isCurrent, Function<T, String>... fields) {
+        this.isCurrent = isCurrent;
+        for (Function<T, String> field : fields) {
+            this.fields.add(new FieldIndex(field));
+        }
+    }
+
+    public synchronized void add(T item) {
+        long signature = signature(item);
+        for (FieldIndex field : fields) {
+            field.add(item, signature);
+        }
+    }
+
+    /**
+     * Applies a change to an indexed item's fields and re-indexes the fields
+     * it replaced. Unchanged fields are indexed again too if the item's
+     * signature changed, as their entries carry the signature.
+     */
+    public synchronized void update(T item, Runnable change) {
+        String[] before = new String[fields.size()];
+        for (int f = 0; f < fields.size(); f++) {
+            before[f] = fields.get(f).field.apply(item);
+        }
+        long signatureBefore = signature(item);
+        change.run();
+        long signature = signature(item);
+        for (int f = 0; f < fields.size(); f++) {
+            FieldIndex field = fields.get(f);
+            if (field.field.apply(item) != before[f] || signature != signatureBefore) {
+                field.possiblyStale += before[f] == null ? 0 : countWords(before[f]);
+                field.add(item, signature);
+            }
+        }
+    }
+
+    // Called when an item has been removed or replaced; its entries are dropped lazily
+    public synchronized void remove(T item) {
+        for (FieldIndex field : fields) {
+            String text = field.field.apply(item);
+            if (text != null) {
+                field.possiblyStale += countWords(text);
+            }
+        }
+    }
+
+    // Drops the entries of removed and changed items now instead of at a later merge, e.g. after a mass removal
+    public synchronized void purge() {
+        for (FieldIndex field : fields) {
+            if (field.possiblyStale > 0) {
+                field.merge(true);
+            }
+        }
+    }
+
+    public synchronized void rebuild(Collection<T> items) {
+        List<T> current = new ArrayList<>(items.size());
+        for (T item : items) {
+            if (isCurrent.test(item)) {
+                current.add(item);
+            }
+        }
+        long[] signatures = new long[current.size()];
+        for (int i = 0; i < signatures.length; i++) {
+            signatures[i] = signature(current.get(i));
+        }
+        for (FieldIndex field : fields) {
+            field.rebuild(current, signatures);
+        }
+    }
+
+    public synchronized void clear() {
+        for (FieldIndex field : fields) {
+            field.run = Run.EMPTY;
+            field.buffer.clear();
+            field.buffered = 0;
+            field.possiblyStale = 0;
+        }
+    }
+
+    // Number of indexed word positions, including stale ones not yet merged away
+    public synchronized long size() {
+        long size = 0;
+        for (FieldIndex field : fields) {
+            size += field.run.items.length + field.buffered;
+        }
+        return size;
+    }
+
+    /**
+     * Finds the best matches for a query, best first; equally ranked items
+     * are ordered by their first field. Only as many entries are read as
+     * are needed to be sure of the top results, so a short prefix that
+     * matches most of the index costs about the same as a rare one.
+     *
+     * @param query Words, or the beginnings of words, separated by spaces or punctuation.
+     * @param limit The maximum number of results.
+     */
+    public List<T> search(String query, int limit) {
+        List<String> words = words(query);
+        if (words.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Candidates come from the word with the fewest indexed matches; the others are checked per item
+        String driver = words.get(0);
+        long fewest = Long.MAX_VALUE;
+        for (String word : words) {
+            long count = 0;
+            for (FieldIndex field : fields) {
+                count += field.countPrefix(word);
+            }
+            if (count < fewest) {
+                fewest = count;
+                driver = word;
+            }
+        }
+
+        // The best score each word can reach anywhere in the index bounds what is still to be found
+        int[] best = new int[words.size()];
+        int bestTotal = 0;
+        for (int i = 0; i < words.size(); i++) {
+            best[i] = bestPossible(words.get(i));
+            if (best[i] == 0) {
+                return new ArrayList<>(); // Nothing has a word starting with it
+            }
+            bestTotal += best[i];
+        }
+        int otherWordsBest = bestTotal - best[words.indexOf(driver)];
+        long required = 0; // Signature bits every match has
+        for (String word : words) {
+            if (word != driver) {
+                required |= signatureBits(word, 0);
+            }
+        }
+        long requiredBits = required;
+        Map<Object, Boolean> seen = new IdentityHashMap<>();
+        PriorityQueue<Hit<T>> top = new PriorityQueue<>(Comparator.comparingInt((Hit<T> h) -> h.score)
+                .thenComparing(h -> -h.order));
+        // Tiers in falling score: first field whole words, first field prefixes, second field whole words, ...
+        for (int f = 0; f < fields.size(); f++) {
+            FieldIndex field = fields.get(f);
+            for (boolean whole : new boolean[] { true, false }) {
+                int bound = score(f, whole) + otherWordsBest; // No item found from here on can score higher
+                if (isSettled(top, limit, bound)) {
+                    return sorted(top);
+                }
+                boolean completed = field.scan(driver, whole, (item, text, signature) -> {
+                    // Most non-matches are told apart by the signature, without reading the item
+                    if ((signature & requiredBits) != requiredBits || seen.containsKey(item)) {
+                        return true;
+                    }
+                    @SuppressWarnings("unchecked")
+                    T match = (T) item;
+                    int score = score(match, words);
+                    if (score > 0 && field.isLive(item, text)) {
+                        seen.put(item, Boolean.TRUE);
+                        if (top.size() < limit) {
+                            top.add(new Hit<>(match, score, seen.size()));
+                        } else if (score > top.peek().score) {
+                            top.poll();
+                            top.add(new Hit<>(match, score, seen.size()));
+                        }
+                    }
+                    return !isSettled(top, limit, bound);
+                });
+                if (!completed) {
+                    return sorted(top);
+                }
+            }
+        }
+        return sorted(top);
+    }
+
+    /**
+     * The score search gives the item for the query, or 0 if it does not
+     * match. Indexes over the same fields score alike, so their results can be
+     * merged by it.
+     */
+    public int score(T item, String query) {
+        List<String> words = words(query);
+        return words.isEmpty() ? 0 : score(item, words);
+    }
+
+    private static boolean isSettled(PriorityQueue<? extends Hit<?>> top, int limit, int bound) {
+        return top.size() >= limit && top.peek().score >= bound;
+    }
+
+    private List<T> sorted(PriorityQueue<Hit<T>> top) {
+        List<Hit<T>> hits = new ArrayList<>(top);
+        Function<T, String> first = fields.get(0).field;
+        hits.sort(Comparator.comparingInt((Hit<T> h) -> -h.score)
+                .thenComparing(h -> String.valueOf(first.apply(h.item)), String.CASE_INSENSITIVE_ORDER));
+        List<T> results = new ArrayList<>(hits.size());
+        hits.forEach(h -> results.add(h.item));
+        return results;
+    }
+
+    // Sum of each query word's best match in the item, or 0 if some word does not match at all
+    private int score(T item, List<String> words) {
+        int total = 0;
+        for (String word : words) {
+            int best = 0;
+            for (int f = 0; f < fields.size() && best < score(f, true); f++) {
+                String text = fields.get(f).field.apply(item);
+                if (text == null) {
+                    continue;
+                }
+                for (int at = nextWord(text, 0); at < text.length(); at = nextWord(text, wordEnd(text, at))) {
+                    if (comparePrefix(text, at, word) == 0) {
+                        best = Math.max(best, score(f, wordEnd(text, at) - at == word.length()));
+                    }
+                }
+            }
+            if (best == 0) {
+                return 0;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    /**
+     * Bits for the words of the item, each chosen by a word's first three or
+     * first five characters. A query word of three or more characters can
+     * only match an item whose signature has the same bits for the query
+     * word, which is checked without reading the item. The signature is stored with each of the item's
+     * entries; entries added before a field changed may keep an outdated one,
+     * but the item is always added again with a current one.
+     */
+    private long signature(T item) {
+        long signature = 0;
+        for (FieldIndex field : fields) {
+            String text = field.field.apply(item);
+            if (text == null) {
+                continue;
+            }
+            for (int at = nextWord(text, 0); at < text.length(); at = nextWord(text, wordEnd(text, at))) {
+                signature |= signatureBits(text, at);
+            }
+        }
+        return signature;
+    }
+
+    // One bit per signature prefix length that the word at text[at] reaches
+    private static long signatureBits(String text, int at) {
+        int end = wordEnd(text, at);
+        long bits = 0;
+        int hash = 0;
+        int length = 0;
+        for (int prefix : SIGNATURE_PREFIXES) {
+            if (end - at < prefix) {
+                break;
+            }
+            for (; length < prefix; length++) {
+                hash = hash * 31 + toLowerCase(text.charAt(at + length));
+            }
+            bits |= 1L << ((hash * 0x9E3779B9) >>> 26);
+        }
+        return bits;
+    }
+
+    private int bestPossible(String word) {
+        for (int f = 0; f < fields.size(); f++) {
+            if (fields.get(f).has(word, true)) {
+                return score(f, true);
+            }
+            if (fields.get(f).has(word, false)) {
+                return score(f, false);
+            }
+        }
+        return 0;
+    }
+
+    private int score(int field, boolean whole) {
+        return 2 * (fields.size() - field) - (whole ? 0 : 1);
+    }
+
+    // Lower-cased words of a query
+    static List<String> words(String query) {
+        List<String> words = new ArrayList<>();
+        if (query == null) {
+            return words;
+        }
+        for (int at = nextWord(query, 0); at < query.length(); at = nextWord(query, wordEnd(query, at))) {
+            StringBuilder word = new StringBuilder();
+            for (int i = at; i < wordEnd(query, at); i++) {
+                word.append(toLowerCase(query.charAt(i)));
+            }
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private static int countWords(String text) {
+        int count = 0;
+        for (int at = nextWord(text, 0); at < text.length(); at = nextWord(text, wordEnd(text, at))) {
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean isWordChar(char c) {
+        if (c < 128) { // Fast path for the common case
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+        }
+        return Character.isLetterOrDigit(c);
+    }
+
+    private static char toLowerCase(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    private static int wordEnd(String text, int at) {
+        while (at < text.length() && isWordChar(text.charAt(at))) {
+            at++;
+        }
+        return at;
+    }
+
+    private static int nextWord(String text, int at) {
+        while (at < text.length() && !isWordChar(text.charAt(at))) {
+            at++;
+        }
+        return at;
+    }
+
+    // Compares the words starting at a[i] and b[j], ignoring case
+    private static int compareWords(String a, int i, String b, int j) {
+        while (true) {
+            boolean aEnded = i >= a.length() || !isWordChar(a.charAt(i));
+            boolean bEnded = j >= b.length() || !isWordChar(b.charAt(j));
+            if (aEnded || bEnded) {
+                return aEnded ? (bEnded ? 0 : -1) : 1;
+            }
+            int c = toLowerCase(a.charAt(i++)) - toLowerCase(b.charAt(j++));
+            if (c != 0) {
+                return c;
+            }
+        }
+    }
+
+    // Compares the start of the word at text[at] with a lower-cased prefix; 0 if the word starts with it
+    private static int comparePrefix(String text, int at, String prefix) {
+        for (int k = 0; k < prefix.length(); k++) {
+            if (at + k >= text.length() || !isWordChar(text.charAt(at + k))) {
+                return -1;
+            }
+            int c = toLowerCase(text.charAt(at + k)) - prefix.charAt(k);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Packs the first eight characters of the word at text[at], lower-cased,
+     * into a long that compares (unsigned) like the words themselves, so most
+     * comparisons while sorting need not look at the strings. Characters
+     * above 0xFF are clamped to 0xFF, which keeps the order; words whose keys
+     * are equal still have to be compared in full.
+     */
+    private static long wordKey(String text, int at) {
+        long key = 0;
+        int end = wordEnd(text, at);
+        for (int i = 0; i < 8; i++) {
+            int c = at + i < end ? Math.min(toLowerCase(text.charAt(at + i)), 0xFF) : 0;
+            key = key << 8 | c;
+        }
+        return key;
+    }
+
+    // Whether wordKey holds the whole word: it is shorter than eight characters and none was clamped
+    private static boolean isWholeKey(String text, int at) {
+        int end = wordEnd(text, at);
+        if (end - at >= 8) {
+            return false;
+        }
+        for (int i = at; i < end; i++) {
+            if (toLowerCase(text.charAt(i)) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final Comparator<Entry> ENTRY_ORDER = (a, b) -> {
+        int c = Long.compareUnsigned(a.key, b.key);
+        if (c == 0 && !a.keyIsWord && !b.keyIsWord) {
+            c = compareWords(a.text, a.offset, b.text, b.offset);
+        }
+        if (c == 0 && (a.item == null || b.item == null)) { // A search probe sorts before the entries for its word
+            return Boolean.compare(b.item == null, a.item == null);
+        }
+        return c != 0 ? c : Long.compare(a.seq, b.seq);
+    };
+
+    // Receives matching entries; returns false to stop the scan
+    private interface EntryVisitor {
+        boolean visit(Object item, String text, long signature);
+    }
+
+    // The index of one field: a sorted array plus a buffer of recent additions
+    private final class FieldIndex {
+        private final Function<T, String> field;
+        private volatile Run run = Run.EMPTY;
+        private final ConcurrentSkipListSet<Entry> buffer = new ConcurrentSkipListSet<>(ENTRY_ORDER);
+        private int buffered; // Under the index lock
+        private int possiblyStale; // Entries of removed or changed items, under the index lock
+
+        FieldIndex(Function<T, String> field) {
+            this.field = field;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean isLive(Object item, String text) {
+            return field.apply((T) item) == text && isCurrent.test((T) item);
+        }
+
+        // Stricter than isLive: also false for entries left behind with an outdated signature
+        @SuppressWarnings("unchecked")
+        private boolean isCurrentEntry(Object item, String text, long signature) {
+            return isLive(item, text) && signature((T) item) == signature;
+        }
+
+        void add(T item, long signature) {
+            String text = field.apply(item);
+            if (text == null) {
+                return;
+            }
+            for (int at = nextWord(text, 0); at < text.length(); at = nextWord(text, wordEnd(text, at))) {
+                buffer.add(new Entry(text, at, item, signature, nextSeq++));
+                buffered++;
+            }
+            if (buffered >= Math.max(MIN_MERGE, run.items.length / 8)) {
+                merge(possiblyStale > run.items.length / 8);
+            }
+        }
+
+        /**
+         * Merges the buffer into a new array, dropping stale entries if purge
+         * is set. Checking every entry for staleness would mean reading every
+         * item, so add() only asks for that once an eighth of the entries may
+         * be stale.
+         */
+        private void merge(boolean purge) {
+            Run old = run;
+            List<Entry> pending = new ArrayList<>(buffer);
+            Run merged = new Run(old.items.length + pending.size());
+            int i = 0;
+            int j = 0;
+            while (i < old.items.length || j < pending.size()) {
+                Entry next = j < pending.size() ? pending.get(j) : null;
+                if (next == null || (i < old.items.length
+                        && compareWords(old.texts[i], old.offsets[i], next.text, next.offset) <= 0)) {
+                    if (!purge || isCurrentEntry(old.items[i], old.texts[i], old.signatures[i])) {
+                        merged.append(old.texts[i], old.offsets[i], old.items[i], old.signatures[i]);
+                    }
+                    i++;
+                } else {
+                    if (!purge || isCurrentEntry(next.item, next.text, next.signature)) {
+                        merged.append(next.text, next.offset, next.item, next.signature);
+                    }
+                    j++;
+                }
+            }
+            run = merged.trim(); // Published before the buffer is emptied, so searches never miss an entry
+            buffer.clear();
+            buffered = 0;
+            if (purge) {
+                possiblyStale = 0;
+            }
+        }
+
+        void rebuild(List<T> items, long[] signatures) {
+            List<Entry> entries = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                String text = field.apply(items.get(i));
+                if (text == null) {
+                    continue;
+                }
+                for (int at = nextWord(text, 0); at < text.length(); at = nextWord(text, wordEnd(text, at))) {
+                    entries.add(new Entry(text, at, items.get(i), signatures[i], 0));
+                }
+            }
+            Entry[] sorted = entries.toArray(new Entry[0]);
+            Arrays.parallelSort(sorted, ENTRY_ORDER);
+            Run rebuilt = new Run(sorted.length);
+            for (Entry entry : sorted) {
+                rebuilt.append(entry.text, entry.offset, entry.item, entry.signature);
+            }
+            run = rebuilt.trim();
+            buffer.clear();
+            buffered = 0;
+            possiblyStale = 0;
+        }
+
+        // Whether some entry's word equals the given word (whole) or starts with it, possibly a stale one
+        boolean has(String word, boolean whole) {
+            Run current = run;
+            int from = current.lowerBound(word);
+            if ((whole ? current.wholeEnd(word, from) : current.prefixEnd(word, from)) > from) {
+                return true;
+            }
+            Entry first = buffer.ceiling(new Entry(word, 0, null, 0, 0));
+            return first != null && (whole ? compareWords(first.text, first.offset, word, 0) == 0
+                    : comparePrefix(first.text, first.offset, word) == 0);
+        }
+
+        // Array entries whose word starts with the prefix; the buffer is not counted
+        long countPrefix(String prefix) {
+            Run current = run;
+            int from = current.lowerBound(prefix);
+            return current.prefixEnd(prefix, from) - from;
+        }
+
+        /**
+         * Visits the entries whose word equals the given word (whole) or
+         * starts with it but is longer (not whole).
+         *
+         * @return False if the visitor stopped the scan.
+         */
+        boolean scan(String word, boolean whole, EntryVisitor visitor) {
+            Run current = run;
+            int from = current.lowerBound(word);
+            int wholeEnd = current.wholeEnd(word, from);
+            int to = whole ? wholeEnd : current.prefixEnd(word, wholeEnd);
+            for (int i = whole ? from : wholeEnd; i < to; i++) {
+                if (!visitor.visit(current.items[i], current.texts[i], current.signatures[i])) {
+                    return false;
+                }
+            }
+            for (Entry entry : buffer.tailSet(new Entry(word, 0, null, 0, 0))) {
+                if (comparePrefix(entry.text, entry.offset, word) != 0) {
+                    break;
+                }
+                boolean isWhole = wordEnd(entry.text, entry.offset) - entry.offset == word.length();
+                if (isWhole != whole) {
+                    if (whole) {
+                        break; // Whole-word entries sort before longer ones
+                    }
+                    continue;
+                }
+                if (!visitor.visit(entry.item, entry.text, entry.signature)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // A sorted array of word positions, stored as parallel arrays; never changed once published
+    private static final class Run {
+        static final Run EMPTY = new Run(0);
+
+        private String[] texts;
+        private int[] offsets;
+        private Object[] items;
+        private long[] signatures;
+        private int size;
+
+        Run(int capacity) {
+            texts = new String[capacity];
+            offsets = new int[capacity];
+            items = new Object[capacity];
+            signatures = new long[capacity];
+        }
+
+        void append(String text, int offset, Object item, long signature) {
+            texts[size] = text;
+            offsets[size] = offset;
+            items[size] = item;
+            signatures[size] = signature;
+            size++;
+        }
+
+        Run trim() {
+            if (size < items.length) {
+                texts = Arrays.copyOf(texts, size);
+                offsets = Arrays.copyOf(offsets, size);
+                items = Arrays.copyOf(items, size);
+                signatures = Arrays.copyOf(signatures, size);
+            }
+            return this;
+        }
+
+        // First position whose word is not less than the given word
+        int lowerBound(String word) {
+            int low = 0;
+            int high = items.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareWords(texts[mid], offsets[mid], word, 0) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // First position from 'from' whose word is greater than the given word
+        int wholeEnd(String word, int from) {
+            int low = from;
+            int high = items.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareWords(texts[mid], offsets[mid], word, 0) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // First position from 'from' whose word does not start with the prefix
+        int prefixEnd(String prefix, int from) {
+            int low = from;
+            int high = items.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (comparePrefix(texts[mid], offsets[mid], prefix) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    // A word position in the buffer (item is null for a search probe)
+    private static final class Entry {
+        final String text;
+        final int offset;
+        final Object item;
+        final long signature;
+        final long seq;
+        final long key; // See wordKey
+        final boolean keyIsWord; // The key holds the whole word, so an equal key means an equal word
+
+        Entry(String text, int offset, Object item, long signature, long seq) {
+            this.text = text;
+            this.offset = offset;
+            this.item = item;
+            this.signature = signature;
+            this.seq = seq;
+            this.key = wordKey(text, offset);
+            this.keyIsWord = isWholeKey(text, offset);
+        }
+    }
+
+    private static final class Hit<T> {
+        final T item;
+        final int score;
+        final int order; // Discovery order; an earlier hit wins a tie for the last place
+
+        Hit(T item, int score, int order) {
+            this.item = item;
+            this.score = score;
+            this.order = order;
+        }
+    }
+}
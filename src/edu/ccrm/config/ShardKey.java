@@ -0,0 +1,62 @@
+package edu.ccrm.config;
+
+import edu.ccrm.domain.Course;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * What the sharded store partitions courses (and the enrollments in them) by.
+ * Chosen at startup with {@code -Dccrm.shard.by=department|semester}; without
+ * the property the store is not sharded.
+ */
+public enum ShardKey {
+    DEPARTMENT("department", Course::getDepartment),
+    SEMESTER("semester", c -> c.getSemester() == null ? null : c.getSemester().name());
+
+    private final String attribute;
+    private final Function<Course, String> value;
+
+    ShardKey(String attribute, Function<Course, String> value) {
+        this.attribute = attribute;
+        this.value = value;
+    }
+
+    // The course (and enrollment) query attribute holding the key
+    public String getAttribute() {
+        return attribute;
+    }
+
+    // Name of the shard a course belongs to
+    public String shardOf(Course course) {
+        return shardName(value.apply(course));
+    }
+
+    /**
+     * Name of the shard holding the given key value, e.g. "computer_science"
+     * for "Computer Science". Names are lower-cased (like department lookups,
+     * which ignore case) and safe to use as a directory name.
+     */
+    public static String shardName(Object keyValue) {
+        String text = keyValue == null ? "" : keyValue.toString().trim().toLowerCase(Locale.ROOT);
+        String name = text.replaceAll("[^a-z0-9]+", "_");
+        return name.isEmpty() ? "none" : name;
+    }
+
+    // The key configured for this run, or null if the store is not sharded
+    static ShardKey configured() {
+        String setting = System.getProperty("ccrm.shard.by", "").trim();
+        if (setting.isEmpty() || setting.equalsIgnoreCase("none")) {
+            return null;
+        }
+        for (ShardKey key : values()) {
+            if (key.attribute.equalsIgnoreCase(setting)) {
+                return key;
+            }
+        }
+        throw new IllegalArgumentException("Unknown ccrm.shard.by value: " + setting + " (one of none, "
+                + Arrays.stream(values()).map(k -> k.attribute).collect(Collectors.joining(", ")) + ")");
+    }
+}
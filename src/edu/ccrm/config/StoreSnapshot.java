@@ -0,0 +1,155 @@
+package edu.ccrm.config;
+
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.Student;
+import edu.ccrm.domain.StudentSnapshot;
+import edu.ccrm.domain.VersionClock;
+import edu.ccrm.domain.VersionHistory;
+
+import java.lang.ref.Cleaner;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A consistent, read-only view of the store's students, enrollments and
+ * courses as they were when {@link DataStore#snapshot()} was called. Taking
+ * one costs O(1) and never blocks writers: students changed afterwards keep a
+ * copy of their earlier state for as long as the snapshot is open, so a
+ * report can run for minutes while enrollments and grades keep changing.
+ *
+ * Close it when done (try-with-resources), which lets the kept copies go;
+ * a snapshot that is only dropped is closed once it is garbage collected.
+ * Bulk loads that clear the store (imports, restoring a snapshot file) are
+ * not versioned and must not overlap an open snapshot.
+ */
+public final class StoreSnapshot implements AutoCloseable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    // Ranking order of the GPA ranking: highest GPA first, ties by registration number
+    private static final Comparator<StudentSnapshot> BY_GPA = Comparator
+            .comparingDouble(StudentSnapshot::getGpa).reversed().thenComparing(StudentSnapshot::getRegNo);
+
+    private final DataStore dataStore;
+    private final long version;
+    private final Cleaner.Cleanable cleanable;
+
+    // Closes the version once, whether by close() or by the cleaner; must not refer to the snapshot itself
+    private static final class Release implements Runnable {
+        private final long version;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Release(long version) {
+            this.version = version;
+        }
+
+        @Override
+        public void run() {
+            if (done.compareAndSet(false, true)) {
+                VersionClock.global().close(version);
+            }
+        }
+    }
+
+    StoreSnapshot(DataStore dataStore) {
+        this.dataStore = dataStore;
+        this.version = VersionClock.global().open();
+        this.cleanable = CLEANER.register(this, new Release(version));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // The student with the given registration number at the snapshot, if there was one
+    public Optional<StudentSnapshot> student(String regNo) {
+        return Optional.ofNullable(resolveStudent(regNo)).map(s -> s.snapshotAt(version));
+    }
+
+    // Every student at the snapshot, in no particular order; parallel-friendly
+    public Stream<StudentSnapshot> students() {
+        Stream<String> regNos = dataStore.students.keySet().stream();
+        if (!dataStore.studentVersions.isEmpty()) {
+            // Students removed since the snapshot are only found through their kept map entry
+            regNos = Stream.concat(regNos, dataStore.studentVersions.keySet().stream()).distinct();
+        }
+        return regNos.map(this::resolveStudent)
+                .filter(s -> s != null)
+                .map(s -> s.snapshotAt(version));
+    }
+
+    // The course with the given code at the snapshot, or null
+    public Course course(String courseCode) {
+        return resolve(dataStore.courses, dataStore.courseVersions, courseCode);
+    }
+
+    // The accepted students sorted by registration number
+    public List<StudentSnapshot> studentsByRegNo(Predicate<StudentSnapshot> filter) {
+        return students().parallel()
+                .filter(filter)
+                .sorted(Comparator.comparing(StudentSnapshot::getRegNo))
+                .collect(Collectors.toList());
+    }
+
+    // The students with the highest GPA, in the same order as the GpaRanking
+    public List<StudentSnapshot> topStudents(int count) {
+        if (count <= 0) {
+            return List.of();
+        }
+        // Keeps the best count students seen so far, the worst of them at the head
+        PriorityQueue<StudentSnapshot> best = new PriorityQueue<>(count + 1, BY_GPA.reversed());
+        students().forEach(s -> {
+            best.add(s);
+            if (best.size() > count) {
+                best.poll();
+            }
+        });
+        return best.stream().sorted(BY_GPA).collect(Collectors.toList());
+    }
+
+    // Number of enrollments per grade at the snapshot, counted from the rows
+    public Map<Grade, Long> gradeDistribution() {
+        return gradeDistribution(null);
+    }
+
+    // Like gradeDistribution(), for the courses of one semester; null counts every semester
+    public Map<Grade, Long> gradeDistribution(Semester semester) {
+        return students().parallel()
+                .flatMap(s -> s.getEnrollments().stream())
+                .filter(e -> semester == null || isInSemester(e.getCourseCode(), semester))
+                .collect(Collectors.groupingBy(StudentSnapshot.EnrolledCourse::getGrade,
+                        () -> new EnumMap<>(Grade.class), Collectors.counting()));
+    }
+
+    private boolean isInSemester(String courseCode, Semester semester) {
+        Course course = course(courseCode);
+        return course != null && course.getSemester() == semester;
+    }
+
+    @Override
+    public void close() {
+        cleanable.clean();
+        dataStore.dropEmptyVersions();
+    }
+
+    // The live value is read before the history, as putVersioned records the history before replacing it
+    private Student resolveStudent(String regNo) {
+        return resolve(dataStore.students, dataStore.studentVersions, regNo);
+    }
+
+    private <V> V resolve(Map<String, V> live, Map<String, VersionHistory<V>> versions, String key) {
+        V current = live.get(key);
+        VersionHistory<V> history = versions.get(key);
+        return history == null ? current : history.at(version, current);
+    }
+}
@@ -1,5 +1,7 @@
 package edu.ccrm.domain;
 
+import java.util.function.BiConsumer;
+
 public class Course {
 
     private final String code;
@@ -8,6 +10,8 @@ public class Course {
     private Instructor instructor;
     private final Semester semester;
     private final String department;
+    // Told about instructor changes (with the previous instructor) so indexes can follow them
+    private BiConsumer<Course, Instructor> instructorListener;
 
     // Private constructor to be used by the Builder
     private Course(Builder builder) {
@@ -16,7 +20,7 @@ public class Course {
         this.credits = builder.credits;
         this.instructor = builder.instructor;
         this.semester = builder.semester;
-        this.department = builder.department;
+        this.department = StringDictionary.departments().intern(builder.department);
     }
 
     // Getters (no setters to make core properties immutable after creation)
@@ -46,7 +50,15 @@ public class Course {
 
     // A setter for the instructor, as this can change
     public void assignInstructor(Instructor instructor) {
+        Instructor previous = this.instructor;
         this.instructor = instructor;
+        if (instructorListener != null && previous != instructor) {
+            instructorListener.accept(this, previous);
+        }
+    }
+
+    public void setInstructorListener(BiConsumer<Course, Instructor> instructorListener) {
+        this.instructorListener = instructorListener;
     }
 
     @Override
@@ -2,23 +2,58 @@ package edu.ccrm.domain;
 
 import java.time.LocalDate;
 
+/**
+ * One student's enrollment in one course.
+ *
+ * A new Enrollment holds its own values until it is added to a student.
+ * From then on it is a view of the student's row in the {@link EnrollmentTable},
+ * and the enrollments returned by Student are views created on demand, so
+ * reading or setting the grade always goes to the stored row. Rows are
+ * only freed when their student leaves the store ({@link Student#retire()}),
+ * after which views read the state the student left with, so a view never
+ * reaches a row that was reused for another enrollment.
+ */
 public class Enrollment {
 
-    private final String studentId;
     private final String courseCode;
-    private Grade grade;
-    private final LocalDate enrollmentDate;
+    // Values of an enrollment that has not been added to a student (yet)
+    private volatile long studentId;
+    private volatile LocalDate enrollmentDate;
+    private volatile Grade grade; // Volatile: grades may be read by report threads while being assigned
+    // Set once stored: the owning student (whose GPA cache depends on this grade) and the table row
+    private volatile Student owner;
+    private volatile int row = -1;
 
-    public Enrollment(String studentId, String courseCode) {
+    public Enrollment(long studentId, String courseCode) {
+        this(studentId, courseCode, LocalDate.now());
+    }
+
+    // Used when restoring an enrollment that was made on an earlier day
+    public Enrollment(long studentId, String courseCode, LocalDate enrollmentDate) {
         this.studentId = studentId;
         this.courseCode = courseCode;
-        this.enrollmentDate = LocalDate.now();
+        this.enrollmentDate = enrollmentDate;
         this.grade = Grade.NOT_GRADED; // Default grade
     }
 
+    // A view of a stored row
+    Enrollment(Student owner, int row) {
+        this.courseCode = EnrollmentTable.getInstance().courseCode(row);
+        this.studentId = 0;
+        this.enrollmentDate = null;
+        this.owner = owner;
+        this.row = row;
+    }
+
     // Getters
-    public String getStudentId() {
-        return studentId;
+    public long getStudentId() {
+        Student student = owner;
+        return student != null ? student.getId() : studentId;
+    }
+
+    // The student this enrollment is stored under, or null if it has not been added to one
+    public Student getStudent() {
+        return owner;
     }
 
     public String getCourseCode() {
@@ -26,21 +61,52 @@ public class Enrollment {
     }
 
     public Grade getGrade() {
-        return grade;
+        Student student = owner;
+        if (student == null) {
+            return grade;
+        }
+        Grade stored = EnrollmentTable.getInstance().grade(row); // Null if the row was freed meanwhile
+        // Checked after the read: a student is retired before their rows are freed (and maybe reused)
+        StudentSnapshot.EnrolledCourse retired = student.retiredEnrollment(courseCode);
+        return retired != null ? retired.getGrade() : stored;
     }
 
     public LocalDate getEnrollmentDate() {
-        return enrollmentDate;
+        Student student = owner;
+        if (student == null) {
+            return enrollmentDate;
+        }
+        int epochDay = EnrollmentTable.getInstance().epochDay(row);
+        StudentSnapshot.EnrolledCourse retired = student.retiredEnrollment(courseCode);
+        return retired != null ? retired.getEnrollmentDate() : LocalDate.ofEpochDay(epochDay);
     }
 
     // Setter for grade
     public void setGrade(Grade grade) {
-        this.grade = grade;
+        Student student = owner;
+        if (student == null) {
+            this.grade = grade;
+            return;
+        }
+        if (student.setGrade(this, grade)) {
+            student.invalidateGpa();
+        }
+    }
+
+    // Called by Student, under its lock, once this enrollment's values are stored in the row
+    void attach(Student owner, int row) {
+        this.row = row;
+        this.owner = owner;
+    }
+
+    // The stored row if this enrollment belongs to the given student and they still have rows, otherwise -1
+    int rowOf(Student student) {
+        return owner == student && !student.isRetired() ? row : -1;
     }
 
     @Override
     public String toString() {
         return String.format("Enrollment",
-                studentId, courseCode, grade, enrollmentDate);
+                getStudentId(), courseCode, getGrade(), getEnrollmentDate());
     }
-}
\ No newline at end of file
+}
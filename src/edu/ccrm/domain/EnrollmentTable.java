@@ -0,0 +1,444 @@
+package edu.ccrm.domain;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Column storage for every enrollment in the system (struct of arrays).
+ *
+ * One enrollment is one row: an int student id, an int course id, a grade
+ * ordinal byte, the enrollment date as an int epoch day and an int link to
+ * the same student's next row, about 17 bytes in total. Student and course
+ * ids are small surrogate numbers handed out here; the course code strings
+ * are stored once each. A Student only keeps the first and last of its rows,
+ * and {@link Enrollment} objects are created on demand as views of a row.
+ *
+ * Columns are split into fixed-size pages, so growing the table only adds a
+ * page and never copies existing rows. Rows are written while holding the
+ * table lock and linked to their student while holding the student's lock;
+ * readers reach a row through the student (under its lock), which makes the
+ * row's contents visible to them. Grades can change later, so they are
+ * written and read as volatile.
+ *
+ * Each course also keeps the list of its rows (4 more bytes per row), so the
+ * enrollments of one course, or of one shard's courses, are read without
+ * scanning the whole table.
+ *
+ * The table also keeps live enrollment counts per grade, overall, per course
+ * and per semester. They are adjusted on every insert, grade change and
+ * removal, so reading a grade distribution never has to scan the rows.
+ */
+public final class EnrollmentTable {
+
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS; // Rows per page
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final byte REMOVED = -1; // Grade column value of a row on the free list
+    private static final VarHandle GRADE = MethodHandles.arrayElementVarHandle(byte[].class);
+    private static final Grade[] GRADES = Grade.values();
+    private static final Semester[] SEMESTERS = Semester.values();
+    // Created after the constants above, which the constructor uses
+    private static final EnrollmentTable INSTANCE = new EnrollmentTable();
+
+    /** All column pages, swapped as a whole when a page is added. */
+    private static final class Columns {
+        final int[][] studentIds;
+        final int[][] courseIds;
+        final int[][] epochDays;
+        final int[][] nextRows;
+        final byte[][] grades;
+
+        Columns(int pages) {
+            studentIds = new int[pages][];
+            courseIds = new int[pages][];
+            epochDays = new int[pages][];
+            nextRows = new int[pages][];
+            grades = new byte[pages][];
+        }
+
+        Columns grow() {
+            int pages = grades.length;
+            Columns grown = new Columns(pages + 1);
+            System.arraycopy(studentIds, 0, grown.studentIds, 0, pages);
+            System.arraycopy(courseIds, 0, grown.courseIds, 0, pages);
+            System.arraycopy(epochDays, 0, grown.epochDays, 0, pages);
+            System.arraycopy(nextRows, 0, grown.nextRows, 0, pages);
+            System.arraycopy(grades, 0, grown.grades, 0, pages);
+            grown.studentIds[pages] = new int[PAGE_SIZE];
+            grown.courseIds[pages] = new int[PAGE_SIZE];
+            grown.epochDays[pages] = new int[PAGE_SIZE];
+            grown.nextRows[pages] = new int[PAGE_SIZE];
+            grown.grades[pages] = new byte[PAGE_SIZE];
+            return grown;
+        }
+    }
+
+    private volatile Columns columns = new Columns(0);
+    private volatile int highWater = 0; // Rows [0, highWater) have been handed out at least once
+    private int liveRows = 0;
+    private int[] freeRows = new int[16];
+    private int freeCount = 0;
+
+    // Surrogate ids; the course registry only grows until clear(), student ids are reused once released
+    private final Map<String, Integer> courseIds = new ConcurrentHashMap<>();
+    private volatile String[] courseCodes = new String[64];
+    private volatile byte[] courseSemesters = new byte[64]; // Semester ordinal per course id, -1 if unknown
+    // Rows of each course by course id, in the order they were added; guarded by the table lock
+    private int[][] courseRows = new int[64][];
+    private int[] courseRowCounts = new int[64];
+    private volatile Student[] students = new Student[1024];
+    private int studentCount = 0;
+    private int[] freeStudentIds = new int[16]; // Released ids, reused before new ones
+    private int freeStudentIdCount = 0;
+
+    // Live enrollment counts per grade ordinal; semester counts are indexed semester * GRADES.length + grade
+    private final LongAdder[] gradeCounts = newCounters(GRADES.length);
+    private final LongAdder[] semesterGradeCounts = newCounters(SEMESTERS.length * GRADES.length);
+    private volatile AtomicLongArray[] courseGradeCounts = new AtomicLongArray[64]; // By course id
+
+    private EnrollmentTable() {
+    }
+
+    public static EnrollmentTable getInstance() {
+        return INSTANCE;
+    }
+
+    // Number of stored enrollments
+    public synchronized int size() {
+        return liveRows;
+    }
+
+    // Approximate heap used by the columns and id registries, in bytes
+    public synchronized long estimatedBytes() {
+        long pages = columns.grades.length;
+        long rowBytes = pages * PAGE_SIZE * (4L * Integer.BYTES + 1);
+        long courseRowBytes = 0;
+        for (int id = 0; id < courseIds.size(); id++) {
+            courseRowBytes += 16 + courseRows[id].length * (long) Integer.BYTES;
+        }
+        return rowBytes + courseRowBytes + (long) courseCodes.length * 8 + (long) students.length * 8
+                + courseIds.size() * (64L + 16 + GRADES.length * 8L);
+    }
+
+    /**
+     * Drops every row and surrogate id. Students created before the call must
+     * not be used afterwards; DataStore.clearAll() discards them at the same time.
+     */
+    public synchronized void clear() {
+        columns = new Columns(0);
+        highWater = 0;
+        liveRows = 0;
+        freeRows = new int[16];
+        freeCount = 0;
+        courseIds.clear();
+        courseCodes = new String[64];
+        courseSemesters = new byte[64];
+        courseGradeCounts = new AtomicLongArray[64];
+        courseRows = new int[64][];
+        courseRowCounts = new int[64];
+        students = new Student[1024];
+        studentCount = 0;
+        freeStudentIds = new int[16];
+        freeStudentIdCount = 0;
+        Arrays.stream(gradeCounts).forEach(LongAdder::reset);
+        Arrays.stream(semesterGradeCounts).forEach(LongAdder::reset);
+    }
+
+    // --- Table scans ---
+
+    /**
+     * Streams a view of every stored enrollment, in row order. Rows are read
+     * lazily and without locking, so enrollments added or removed while the
+     * stream is consumed may or may not be included.
+     */
+    public Stream<Enrollment> stream() {
+        int rows = highWater;
+        return IntStream.range(0, rows)
+                .filter(this::isLive)
+                .mapToObj(this::view)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Like stream(), but only the enrollments in one course, in the order they
+     * were added. Reads the course's own row list, so the cost grows with the
+     * size of the course rather than of the table.
+     */
+    public Stream<Enrollment> stream(String courseCode) {
+        int courseId = courseIdOf(courseCode);
+        if (courseId < 0) {
+            return Stream.empty();
+        }
+        // A row removed after the copy may be reused by another course, hence the course id check
+        return Arrays.stream(rowsOf(courseId))
+                .filter(row -> courseId(row) == courseId && isLive(row))
+                .mapToObj(this::view)
+                .filter(Objects::nonNull);
+    }
+
+    // Number of enrollments in one course
+    public synchronized int count(String courseCode) {
+        int courseId = courseIdOf(courseCode);
+        return courseId < 0 ? 0 : courseRowCounts[courseId];
+    }
+
+    private synchronized int[] rowsOf(int courseId) {
+        return Arrays.copyOf(courseRows[courseId], courseRowCounts[courseId]);
+    }
+
+    // A view of the row, or null if its student was released after the row was found live
+    private Enrollment view(int row) {
+        Student student = student(row);
+        return student == null ? null : new Enrollment(student, row);
+    }
+
+    private boolean isLive(int row) {
+        return (byte) GRADE.getVolatile(columns.grades[row >>> PAGE_BITS], row & PAGE_MASK) != REMOVED;
+    }
+
+    // --- Grade distribution, read from the live counters ---
+
+    /** Number of enrollments per grade, over all courses; grades nobody has are left out. */
+    public Map<Grade, Long> gradeCounts() {
+        return toMap(grade -> gradeCounts[grade].sum());
+    }
+
+    /** Number of enrollments per grade in courses of the given semester. */
+    public Map<Grade, Long> gradeCounts(Semester semester) {
+        int base = semester.ordinal() * GRADES.length;
+        return toMap(grade -> semesterGradeCounts[base + grade].sum());
+    }
+
+    /** Number of enrollments per grade in one course; empty if nobody was ever enrolled in it. */
+    public Map<Grade, Long> gradeCounts(String courseCode) {
+        int courseId = courseIdOf(courseCode);
+        if (courseId < 0) {
+            return new EnumMap<>(Grade.class);
+        }
+        AtomicLongArray counts = courseGradeCounts[courseId];
+        return toMap(counts::get);
+    }
+
+    private static Map<Grade, Long> toMap(IntToLongFunction countOfGrade) {
+        Map<Grade, Long> counts = new EnumMap<>(Grade.class);
+        for (Grade grade : GRADES) {
+            long count = countOfGrade.applyAsLong(grade.ordinal());
+            if (count > 0) {
+                counts.put(grade, count);
+            }
+        }
+        return counts;
+    }
+
+    private static LongAdder[] newCounters(int size) {
+        LongAdder[] counters = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    // Adds delta to every counter the grade of an enrollment in the course contributes to
+    private void count(int courseId, int grade, long delta) {
+        gradeCounts[grade].add(delta);
+        courseGradeCounts[courseId].addAndGet(grade, delta);
+        int semester = courseSemesters[courseId];
+        if (semester >= 0) {
+            semesterGradeCounts[semester * GRADES.length + grade].add(delta);
+        }
+    }
+
+    // --- Row access, for Student and Enrollment ---
+
+    // The semester is that of the course and may be null if the course is unknown
+    synchronized int insert(Student student, String courseCode, Semester semester, Grade grade, int epochDay) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            row = highWater;
+            if ((row >>> PAGE_BITS) == columns.grades.length) {
+                columns = columns.grow();
+            }
+        }
+        Columns c = columns;
+        int page = row >>> PAGE_BITS;
+        int slot = row & PAGE_MASK;
+        c.studentIds[page][slot] = studentIdFor(student);
+        int courseId = courseIdFor(courseCode, semester);
+        c.courseIds[page][slot] = courseId;
+        c.epochDays[page][slot] = epochDay;
+        c.nextRows[page][slot] = -1;
+        GRADE.setVolatile(c.grades[page], slot, (byte) grade.ordinal());
+        count(courseId, grade.ordinal(), 1);
+        addCourseRow(courseId, row);
+        liveRows++;
+        if (row == highWater) {
+            highWater = row + 1; // Volatile write publishes the row to table scans
+        }
+        return row;
+    }
+
+    synchronized void remove(int row) {
+        byte[] grades = columns.grades[row >>> PAGE_BITS];
+        int slot = row & PAGE_MASK;
+        byte grade;
+        do { // Not getAndSet: once JIT-compiled on JDK 21 it can return a byte that is not sign-normalized
+            grade = (byte) GRADE.getVolatile(grades, slot);
+        } while (grade != REMOVED && !GRADE.compareAndSet(grades, slot, grade, REMOVED));
+        if (grade != REMOVED) {
+            count(courseId(row), grade, -1);
+        }
+        removeCourseRow(courseId(row), row);
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+        }
+        freeRows[freeCount++] = row;
+        liveRows--;
+    }
+
+    // Null if the row has been removed, which a view read without its student's lock may see
+    Grade grade(int row) {
+        byte ordinal = (byte) GRADE.getVolatile(columns.grades[row >>> PAGE_BITS], row & PAGE_MASK);
+        return ordinal == REMOVED ? null : GRADES[ordinal];
+    }
+
+    void setGrade(int row, Grade grade) {
+        byte[] grades = columns.grades[row >>> PAGE_BITS];
+        int slot = row & PAGE_MASK;
+        byte ordinal = (byte) grade.ordinal();
+        byte previous;
+        do {
+            previous = (byte) GRADE.getVolatile(grades, slot);
+            if (previous == REMOVED) {
+                return; // Removed concurrently; the enrollment no longer counts
+            }
+        } while (!GRADE.compareAndSet(grades, slot, previous, ordinal));
+        if (previous != ordinal) {
+            int courseId = courseId(row);
+            count(courseId, previous, -1);
+            count(courseId, ordinal, 1);
+        }
+    }
+
+    int courseId(int row) {
+        return columns.courseIds[row >>> PAGE_BITS][row & PAGE_MASK];
+    }
+
+    String courseCode(int row) {
+        return courseCodes[courseId(row)];
+    }
+
+    int epochDay(int row) {
+        return columns.epochDays[row >>> PAGE_BITS][row & PAGE_MASK];
+    }
+
+    void setEpochDay(int row, int epochDay) {
+        columns.epochDays[row >>> PAGE_BITS][row & PAGE_MASK] = epochDay;
+    }
+
+    Student student(int row) {
+        return students[columns.studentIds[row >>> PAGE_BITS][row & PAGE_MASK]];
+    }
+
+    // The same student's next row in enrollment order, or -1; guarded by that student's lock
+    int next(int row) {
+        return columns.nextRows[row >>> PAGE_BITS][row & PAGE_MASK];
+    }
+
+    void setNext(int row, int next) {
+        columns.nextRows[row >>> PAGE_BITS][row & PAGE_MASK] = next;
+    }
+
+    // The course's surrogate id, or -1 if no enrollment has ever used this code
+    int courseIdOf(String courseCode) {
+        Integer id = courseIds.get(courseCode);
+        return id == null ? -1 : id;
+    }
+
+    // Must be called while holding the table lock. A course's semester is fixed when it first gets an id.
+    private int courseIdFor(String courseCode, Semester semester) {
+        Integer id = courseIds.get(courseCode);
+        if (id != null) {
+            return id;
+        }
+        int next = courseIds.size();
+        if (next == courseCodes.length) {
+            courseCodes = Arrays.copyOf(courseCodes, next * 2);
+            courseSemesters = Arrays.copyOf(courseSemesters, next * 2);
+            courseGradeCounts = Arrays.copyOf(courseGradeCounts, next * 2);
+            courseRows = Arrays.copyOf(courseRows, next * 2);
+            courseRowCounts = Arrays.copyOf(courseRowCounts, next * 2);
+        }
+        courseCodes[next] = courseCode;
+        courseSemesters[next] = semester == null ? -1 : (byte) semester.ordinal();
+        courseGradeCounts[next] = new AtomicLongArray(GRADES.length);
+        courseRows[next] = new int[4];
+        courseIds.put(courseCode, next);
+        return next;
+    }
+
+    // Must be called while holding the table lock
+    private void addCourseRow(int courseId, int row) {
+        int count = courseRowCounts[courseId];
+        if (count == courseRows[courseId].length) {
+            courseRows[courseId] = Arrays.copyOf(courseRows[courseId], Math.max(4, count * 2));
+        }
+        courseRows[courseId][count] = row;
+        courseRowCounts[courseId] = count + 1;
+    }
+
+    // Must be called while holding the table lock; removals are rare, so the list is searched
+    private void removeCourseRow(int courseId, int row) {
+        int[] rows = courseRows[courseId];
+        int count = courseRowCounts[courseId];
+        for (int i = count - 1; i >= 0; i--) {
+            if (rows[i] == row) {
+                System.arraycopy(rows, i + 1, rows, i, count - i - 1);
+                courseRowCounts[courseId] = count - 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forgets a student who no longer has any rows, e.g. one paged out of
+     * memory, so the registry stops keeping them reachable; their id is reused.
+     * The caller must have removed all of the student's enrollments first.
+     */
+    public synchronized void release(Student student) {
+        int id = student.getTableId();
+        if (id >= 0 && id < studentCount && students[id] == student) {
+            students[id] = null;
+            if (freeStudentIdCount == freeStudentIds.length) {
+                freeStudentIds = Arrays.copyOf(freeStudentIds, freeStudentIdCount * 2);
+            }
+            freeStudentIds[freeStudentIdCount++] = id;
+        }
+    }
+
+    // Must be called while holding the table lock
+    private int studentIdFor(Student student) {
+        int id = student.getTableId();
+        if (id >= 0 && id < studentCount && students[id] == student) {
+            return id;
+        }
+        id = freeStudentIdCount > 0 ? freeStudentIds[--freeStudentIdCount] : studentCount++;
+        if (id == students.length) {
+            students = Arrays.copyOf(students, id * 2);
+        }
+        students[id] = student;
+        student.setTableId(id);
+        return id;
+    }
+}
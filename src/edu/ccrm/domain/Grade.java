@@ -10,9 +10,9 @@ public enum Grade {
     F(0.0),
     NOT_GRADED(-1.0);
 
+    // Same as getGradePoints(); -1 for NOT_GRADED, which no GPA counts
     public double getPoints() {
-
-        return 0.0; // Placeholder, update as needed
+        return gradePoints;
     }
 
     private final double gradePoints;
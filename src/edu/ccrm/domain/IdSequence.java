@@ -0,0 +1,39 @@
+package edu.ccrm.domain;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the numeric ids of students and instructors. Ids start at 1,
+ * only ever go up and are never reused while the program runs. A person
+ * restored with a saved id moves the sequence past that id, so loading a
+ * snapshot or CSV file that carries ids keeps newly created people from
+ * colliding with the restored ones.
+ */
+public final class IdSequence {
+
+    private static final IdSequence PERSONS = new IdSequence();
+
+    private final AtomicLong lastId = new AtomicLong();
+
+    private IdSequence() {
+    }
+
+    // The sequence shared by students and instructors
+    public static IdSequence persons() {
+        return PERSONS;
+    }
+
+    public long next() {
+        return lastId.incrementAndGet();
+    }
+
+    // Makes sure ids handed out from now on are greater than the given, already used id
+    public void advancePast(long usedId) {
+        lastId.accumulateAndGet(usedId, Math::max);
+    }
+
+    // The highest id handed out or restored so far
+    public long last() {
+        return lastId.get();
+    }
+}
@@ -9,17 +9,24 @@ public class Instructor extends Person {
 
     public Instructor(String fullName, String email, String department) {
         super(fullName, email);
-        this.department = department;
+        this.department = StringDictionary.departments().intern(department);
         this.hireDate = LocalDate.now();
     }
 
+    // Restores a previously saved instructor, keeping its ID and hire date
+    public Instructor(long id, String fullName, String email, String department, LocalDate hireDate) {
+        super(id, fullName, email);
+        this.department = StringDictionary.departments().intern(department);
+        this.hireDate = hireDate;
+    }
+
     // Getters and setters
     public String getDepartment() {
         return department;
     }
 
     public void setDepartment(String department) {
-        this.department = department;
+        this.department = StringDictionary.departments().intern(department);
     }
 
     public LocalDate getHireDate() {
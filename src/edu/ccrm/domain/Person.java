@@ -1,21 +1,27 @@
 package edu.ccrm.domain;
 
-import java.util.UUID;
-
 public abstract class Person {
 
-    private final String id;
+    private final long id; // Allocated from IdSequence.persons(); kept when saved and restored
     private String fullName;
     private String email;
 
     public Person(String fullName, String email) {
-        this.id = UUID.randomUUID().toString(); // A simple way to generate a unique ID.
+        this.id = IdSequence.persons().next();
+        this.fullName = fullName;
+        this.email = email;
+    }
+
+    // Used when restoring a person whose ID was already assigned
+    protected Person(long id, String fullName, String email) {
+        IdSequence.persons().advancePast(id);
+        this.id = id;
         this.fullName = fullName;
         this.email = email;
     }
 
     // Getters
-    public String getId() {
+    public long getId() {
         return id;
     }
 
@@ -0,0 +1,43 @@
+package edu.ccrm.domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps one shared instance of each distinct value of a frequently repeated
+ * string field, such as a department name. Every line of a CSV file or API
+ * request otherwise produces its own copy of the same few strings.
+ */
+public final class StringDictionary {
+
+    private static final StringDictionary DEPARTMENTS = new StringDictionary();
+
+    private final ConcurrentMap<String, String> values = new ConcurrentHashMap<>();
+
+    private StringDictionary() {
+    }
+
+    // Department names of courses and instructors
+    public static StringDictionary departments() {
+        return DEPARTMENTS;
+    }
+
+    /**
+     * Returns the shared instance equal to the given value.
+     *
+     * @param value The value to look up; may be null.
+     * @return The first instance of this value seen by the dictionary, or null.
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = values.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+    // Number of distinct values seen
+    public int size() {
+        return values.size();
+    }
+}
@@ -3,13 +3,28 @@ package edu.ccrm.domain;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 public class Student extends Person {
 
     private final String regNo;
     private Status status;
-    private final List<Enrollment> enrolledCourses;
+    // This student's rows in the shared EnrollmentTable, linked in enrollment order; -1 when empty
+    private int firstRow = -1;
+    private int lastRow = -1;
+    private int enrollmentCount = 0;
+    private int tableId = -1; // Surrogate id assigned by the EnrollmentTable
+    private final int[] creditsBySemester = new int[Semester.values().length]; // Indexed by Semester ordinal
     private final LocalDate registrationDate;
+    // Materialized result of calculateGpa(); NaN means it must be recomputed
+    private double cachedGpa = Double.NaN;
+    // Told whenever the cached GPA is invalidated, e.g. to re-rank the student
+    private volatile Consumer<Student> gpaListener;
+    // Earlier states kept for open store snapshots; created on the first write made while one is open
+    private VersionHistory<StudentSnapshot> history;
+    // The state this student left the store with (paged out or replaced); null while they are in it
+    private volatile StudentSnapshot retired;
 
     public enum Status {
         ACTIVE, INACTIVE, GRADUATED
@@ -19,10 +34,18 @@ public class Student extends Person {
         super(fullName, email);
         this.regNo = regNo;
         this.status = Status.ACTIVE;
-        this.enrolledCourses = new ArrayList<>();
         this.registrationDate = LocalDate.now(); // Uses the Date/Time API.
     }
 
+    // Restores a previously saved student, keeping its ID, status and registration date
+    public Student(long id, String fullName, String email, String regNo, Status status,
+            LocalDate registrationDate) {
+        super(id, fullName, email);
+        this.regNo = regNo;
+        this.status = status;
+        this.registrationDate = registrationDate;
+    }
+
     // Getters and a setter for status
     public String getRegNo() {
         return regNo;
@@ -32,36 +55,281 @@ public class Student extends Person {
         return status;
     }
 
-    public void setStatus(Status status) {
+    public synchronized void setStatus(Status status) {
+        checkNotRetired();
+        preserveForSnapshots();
         this.status = status;
     }
 
-    public List<Enrollment> getEnrolledCourses() {
-        return new ArrayList<>(enrolledCourses); // Defensive copying for encapsulation
+    @Override
+    public synchronized void setFullName(String fullName) {
+        checkNotRetired();
+        preserveForSnapshots();
+        super.setFullName(fullName);
+    }
+
+    @Override
+    public synchronized void setEmail(String email) {
+        checkNotRetired();
+        preserveForSnapshots();
+        super.setEmail(email);
+    }
+
+    // Views of this student's enrollments, in enrollment order; copies once the student is retired
+    public synchronized List<Enrollment> getEnrolledCourses() {
+        if (retired != null) {
+            List<Enrollment> copies = new ArrayList<>(enrollmentCount);
+            retired.getEnrollments().forEach(enrolled -> copies.add(copyOf(enrolled)));
+            return copies;
+        }
+        EnrollmentTable table = EnrollmentTable.getInstance();
+        List<Enrollment> enrollments = new ArrayList<>(enrollmentCount);
+        for (int row = firstRow; row >= 0; row = table.next(row)) {
+            enrollments.add(new Enrollment(this, row));
+        }
+        return enrollments;
+    }
+
+    public synchronized int getEnrollmentCount() {
+        return enrollmentCount;
     }
 
     public LocalDate getRegistrationDate() {
         return registrationDate;
     }
 
+    public synchronized boolean isEnrolledIn(String courseCode) {
+        return retired != null ? retiredEnrollment(courseCode) != null : findRow(courseCode) >= 0;
+    }
+
+    public synchronized Optional<Enrollment> findEnrollment(String courseCode) {
+        if (retired != null) {
+            return Optional.ofNullable(retiredEnrollment(courseCode)).map(this::copyOf);
+        }
+        int row = findRow(courseCode);
+        return row < 0 ? Optional.empty() : Optional.of(new Enrollment(this, row));
+    }
+
+    // Running total of credits this student is enrolled in for the given semester
+    public synchronized int getSemesterCredits(Semester semester) {
+        return creditsBySemester[semester.ordinal()];
+    }
+
+    // Adds an enrollment without counting its credits; prefer addEnrollment(Enrollment, Course)
     public void addEnrollment(Enrollment enrollment) {
-        this.enrolledCourses.add(enrollment);
+        addEnrollment(enrollment, null);
     }
 
-    public void removeEnrollment(Enrollment enrollment) {
-        this.enrolledCourses.remove(enrollment);
+    /**
+     * Stores the enrollment in the EnrollmentTable; from then on the given
+     * object is a view of the stored row. An existing enrollment in the same
+     * course is replaced (its grade and date are overwritten).
+     */
+    public void addEnrollment(Enrollment enrollment, Course course) {
+        EnrollmentTable table = EnrollmentTable.getInstance();
+        synchronized (this) {
+            checkNotRetired();
+            preserveForSnapshots();
+            int row = findRow(enrollment.getCourseCode());
+            int epochDay = (int) enrollment.getEnrollmentDate().toEpochDay();
+            if (row >= 0) {
+                table.setGrade(row, enrollment.getGrade());
+                table.setEpochDay(row, epochDay);
+            } else {
+                row = table.insert(this, enrollment.getCourseCode(), course == null ? null : course.getSemester(),
+                        enrollment.getGrade(), epochDay);
+                if (lastRow >= 0) {
+                    table.setNext(lastRow, row);
+                } else {
+                    firstRow = row;
+                }
+                lastRow = row;
+                enrollmentCount++;
+                if (course != null) {
+                    creditsBySemester[course.getSemester().ordinal()] += course.getCredits();
+                }
+            }
+            enrollment.attach(this, row);
+        }
+        invalidateGpa(); // Outside the lock: the GPA listener takes other locks
     }
 
-    public double calculateGpa() {
+    // This student's row for the course, or -1; must be called while holding this student's lock
+    private int findRow(String courseCode) {
+        EnrollmentTable table = EnrollmentTable.getInstance();
+        int courseId = table.courseIdOf(courseCode);
+        if (courseId < 0) {
+            return -1;
+        }
+        for (int row = firstRow; row >= 0; row = table.next(row)) {
+            if (table.courseId(row) == courseId) {
+                return row;
+            }
+        }
+        return -1;
+    }
 
-        double totalPoints = enrolledCourses.stream()
-                .filter(e -> e.getGrade() != null)
-                .mapToDouble(e -> e.getGrade().getPoints())
-                .sum();
+    // Sets a stored row's grade; called by Enrollment, which re-checks the row under this lock
+    synchronized boolean setGrade(Enrollment enrollment, Grade grade) {
+        checkNotRetired();
+        int row = enrollment.rowOf(this);
+        if (row < 0) {
+            return false; // Not a view of this student's rows
+        }
+        preserveForSnapshots();
+        EnrollmentTable.getInstance().setGrade(row, grade);
+        return true;
+    }
+
+    // A copy of this student and their enrollments as they are now
+    public synchronized StudentSnapshot snapshot() {
+        if (retired != null) {
+            return retired;
+        }
+        EnrollmentTable table = EnrollmentTable.getInstance();
+        List<StudentSnapshot.EnrolledCourse> enrollments = new ArrayList<>(enrollmentCount);
+        for (int row = firstRow; row >= 0; row = table.next(row)) {
+            enrollments.add(new StudentSnapshot.EnrolledCourse(table.courseCode(row), table.grade(row),
+                    LocalDate.ofEpochDay(table.epochDay(row))));
+        }
+        return new StudentSnapshot(getId(), regNo, getFullName(), getEmail(), status, registrationDate,
+                enrollments);
+    }
+
+    // This student as they were at the given store snapshot version
+    public synchronized StudentSnapshot snapshotAt(long version) {
+        if (history != null && history.changedSince(version)) {
+            return history.at(version, null);
+        }
+        return snapshot();
+    }
 
-        long gradedCoursesCount = enrolledCourses.stream()
-                .filter(e -> e.getGrade() != null)
-                .count();
+    // Keeps a copy of the current state for open snapshots the coming change must not show; called under the lock
+    private void preserveForSnapshots() {
+        VersionClock clock = VersionClock.global();
+        long version = clock.current();
+        long newestOlder = clock.newestOpenBefore(version);
+        if (newestOlder < 0) {
+            return; // No snapshot needs the current state: the common case
+        }
+        if (history == null) {
+            history = new VersionHistory<>();
+        }
+        history.record(this::snapshot, version, newestOlder);
+    }
+
+    /**
+     * Takes this student's rows out of the EnrollmentTable when they leave the
+     * store, e.g. when paged out or replaced. From then on this object is a
+     * read-only copy of the state they left with: reads, including those of
+     * enrollment views obtained earlier, return that state, and setters throw
+     * IllegalStateException. Look the student up again to change them.
+     */
+    public void retire() {
+        EnrollmentTable table = EnrollmentTable.getInstance();
+        synchronized (this) {
+            if (retired != null) {
+                return;
+            }
+            StudentSnapshot state = snapshot();
+            cachedGpa = state.getGpa();
+            retired = state; // Set before any row is freed: a view that reads a freed row then sees it
+            for (int row = firstRow; row >= 0;) {
+                int next = table.next(row);
+                table.remove(row);
+                row = next;
+            }
+            firstRow = -1;
+            lastRow = -1;
+        }
+    }
+
+    /**
+     * A read-only copy of an archived student, already retired, e.g. to list
+     * or export them without paging them in. Their semester credits are not
+     * restored.
+     */
+    public static Student retiredCopy(StudentSnapshot state) {
+        Student copy = new Student(state.getId(), state.getFullName(), state.getEmail(), state.getRegNo(),
+                state.getStatus(), state.getRegistrationDate());
+        copy.enrollmentCount = state.getEnrollments().size();
+        copy.cachedGpa = state.getGpa();
+        copy.retired = state;
+        return copy;
+    }
+
+    public boolean isRetired() {
+        return retired != null;
+    }
+
+    // The enrollment in the course as the student was retired with, or null if they are not retired or had none
+    StudentSnapshot.EnrolledCourse retiredEnrollment(String courseCode) {
+        StudentSnapshot state = retired;
+        if (state != null) {
+            for (StudentSnapshot.EnrolledCourse enrolled : state.getEnrollments()) {
+                if (enrolled.getCourseCode().equals(courseCode)) {
+                    return enrolled;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Enrollment copyOf(StudentSnapshot.EnrolledCourse enrolled) {
+        Enrollment copy = new Enrollment(getId(), enrolled.getCourseCode(), enrolled.getEnrollmentDate());
+        copy.setGrade(enrolled.getGrade());
+        return copy;
+    }
+
+    // Must be called while holding this student's lock
+    private void checkNotRetired() {
+        if (retired != null) {
+            throw new IllegalStateException("Student " + regNo + " is no longer in the store; look them up again");
+        }
+    }
+
+    int getTableId() {
+        return tableId;
+    }
+
+    void setTableId(int tableId) {
+        this.tableId = tableId;
+    }
+
+    public void setGpaListener(Consumer<Student> gpaListener) {
+        this.gpaListener = gpaListener;
+    }
+
+    // Called when an enrollment is added or removed, or one of this student's grades changes
+    void invalidateGpa() {
+        synchronized (this) {
+            cachedGpa = Double.NaN;
+        }
+        Consumer<Student> listener = gpaListener;
+        if (listener != null) {
+            listener.accept(this); // Outside the lock, since the listener calls back into calculateGpa
+        }
+    }
+
+    // Served from the cache; only recomputed after this student's enrollments or grades change
+    public synchronized double calculateGpa() {
+        if (Double.isNaN(cachedGpa)) {
+            cachedGpa = computeGpa();
+        }
+        return cachedGpa;
+    }
+
+    private double computeGpa() {
+        EnrollmentTable table = EnrollmentTable.getInstance();
+        double totalPoints = 0.0;
+        long gradedCoursesCount = 0;
+        for (int row = firstRow; row >= 0; row = table.next(row)) {
+            double points = table.grade(row).getGradePoints();
+            if (points >= 0) { // NOT_GRADED courses do not count, as on the transcript
+                totalPoints += points;
+                gradedCoursesCount++;
+            }
+        }
 
         if (gradedCoursesCount == 0) {
             return 0.0;
@@ -72,9 +340,9 @@ public class Student extends Person {
     }
 
     @Override
-    public String getProfileSummary() {
+    public synchronized String getProfileSummary() {
         return String.format("Student Profile | RegNo: %s | Name: %s | Status: %s | Enrolled Courses: %d",
-                regNo, getFullName(), status, enrolledCourses.size());
+                regNo, getFullName(), status, enrollmentCount);
     }
 
     @Override
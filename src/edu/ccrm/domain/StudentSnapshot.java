@@ -0,0 +1,104 @@
+package edu.ccrm.domain;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of one student and their enrollments as they were at one
+ * moment, as read by reports from a store snapshot or from the archive of
+ * paged-out students. The GPA is computed the same way as
+ * {@link Student#calculateGpa()}.
+ */
+public final class StudentSnapshot {
+
+    private final long id;
+    private final String regNo;
+    private final String fullName;
+    private final String email;
+    private final Student.Status status;
+    private final LocalDate registrationDate;
+    private final List<EnrolledCourse> enrollments;
+    private final double gpa;
+
+    public StudentSnapshot(long id, String regNo, String fullName, String email, Student.Status status,
+            LocalDate registrationDate, List<EnrolledCourse> enrollments) {
+        this.id = id;
+        this.regNo = regNo;
+        this.fullName = fullName;
+        this.email = email;
+        this.status = status;
+        this.registrationDate = registrationDate;
+        this.enrollments = Collections.unmodifiableList(enrollments);
+        double totalPoints = 0.0;
+        int graded = 0;
+        for (EnrolledCourse enrollment : enrollments) {
+            double points = enrollment.getGrade().getGradePoints();
+            if (points >= 0) {
+                totalPoints += points;
+                graded++;
+            }
+        }
+        this.gpa = graded == 0 ? 0.0 : Math.round((totalPoints / graded) * 100.0) / 100.0;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getRegNo() {
+        return regNo;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public Student.Status getStatus() {
+        return status;
+    }
+
+    public LocalDate getRegistrationDate() {
+        return registrationDate;
+    }
+
+    // In enrollment order
+    public List<EnrolledCourse> getEnrollments() {
+        return enrollments;
+    }
+
+    public double getGpa() {
+        return gpa;
+    }
+
+    /**
+     * One enrollment of the student at that moment.
+     */
+    public static final class EnrolledCourse {
+        private final String courseCode;
+        private final Grade grade;
+        private final LocalDate enrollmentDate;
+
+        public EnrolledCourse(String courseCode, Grade grade, LocalDate enrollmentDate) {
+            this.courseCode = courseCode;
+            this.grade = grade;
+            this.enrollmentDate = enrollmentDate;
+        }
+
+        public String getCourseCode() {
+            return courseCode;
+        }
+
+        public Grade getGrade() {
+            return grade;
+        }
+
+        public LocalDate getEnrollmentDate() {
+            return enrollmentDate;
+        }
+    }
+}
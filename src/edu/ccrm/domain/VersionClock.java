@@ -0,0 +1,97 @@
+package edu.ccrm.domain;
+
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versions for point-in-time snapshots of the store (MVCC). Opening a
+ * snapshot registers the current version and moves the clock on. A write
+ * reads the clock first, and only if a snapshot older than that version is
+ * still open does it keep a copy of what it is about to change, in a
+ * {@link VersionHistory}. A snapshot at version v therefore sees every write
+ * that read a version up to v, and the kept copies of whatever was changed
+ * after it. Writes never wait for snapshots, and snapshots never wait for
+ * writes.
+ *
+ * Closing a snapshot drops every copy that no snapshot still open can need.
+ */
+public final class VersionClock {
+
+    private static final VersionClock GLOBAL = new VersionClock();
+
+    private final AtomicLong clock = new AtomicLong(1);
+    private final NavigableSet<Long> open = new ConcurrentSkipListSet<>();
+    // Histories holding at least one copy, so closing a snapshot can prune them
+    private final Queue<VersionHistory<?>> histories = new ConcurrentLinkedQueue<>();
+
+    private VersionClock() {
+    }
+
+    // The clock shared by the DataStore and everything in it
+    public static VersionClock global() {
+        return GLOBAL;
+    }
+
+    // The version a write happening now belongs to
+    public long current() {
+        return clock.get();
+    }
+
+    /**
+     * The newest open snapshot that must not see a write of the given
+     * version, or -1 if there is none and the write needs no copy.
+     */
+    public long newestOpenBefore(long version) {
+        Long newest = open.lower(version);
+        return newest == null ? -1 : newest;
+    }
+
+    /**
+     * Registers a new snapshot. The version is registered before the clock
+     * moves on, so any write that reads the new clock value also sees the
+     * snapshot as open.
+     *
+     * @return The snapshot's version; pass it to {@link #close(long)} when done.
+     */
+    public synchronized long open() {
+        long version = clock.get();
+        open.add(version);
+        clock.set(version + 1);
+        return version;
+    }
+
+    // Ends a snapshot and prunes the copies that only it could still need
+    public void close(long version) {
+        if (open.remove(version)) {
+            Long oldest = open.ceiling(Long.MIN_VALUE);
+            prune(oldest == null ? Long.MAX_VALUE : oldest);
+        }
+    }
+
+    public int openSnapshots() {
+        return open.size();
+    }
+
+    // Number of histories currently holding copies
+    public int retainedHistories() {
+        return histories.size();
+    }
+
+    // Called by a history when it keeps its first copy
+    void track(VersionHistory<?> history) {
+        histories.add(history);
+    }
+
+    private void prune(long oldestOpen) {
+        Iterator<VersionHistory<?>> it = histories.iterator();
+        while (it.hasNext()) {
+            if (it.next().prune(oldestOpen)) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package edu.ccrm.domain;
+
+import java.util.function.Supplier;
+
+/**
+ * Earlier values of one changing thing (a student's state, one entry of a
+ * map), kept only while open snapshots may still need them. Each copy is the
+ * value as it was just before a write of some version; a snapshot at version
+ * v uses the copy taken by the first write after v, or the current value if
+ * there was no such write.
+ *
+ * Writes to the same thing must be serialized by the caller, with
+ * {@link #record} called before the change is made.
+ */
+public final class VersionHistory<V> {
+
+    // One kept value; newest first
+    private static final class Copy<V> {
+        final V value;
+        final long version; // The write that replaced this value
+        Copy<V> next;
+
+        Copy(V value, long version, Copy<V> next) {
+            this.value = value;
+            this.version = version;
+            this.next = next;
+        }
+    }
+
+    private Copy<V> newest;
+    private boolean tracked; // Whether the clock knows to prune this history
+
+    /**
+     * Keeps the current value for the open snapshots older than the given
+     * write, unless a copy taken since the newest of them already serves them.
+     *
+     * @param current             Supplies the value about to be replaced; only called if a copy is kept.
+     * @param version             The write's version, from {@link VersionClock#current()}.
+     * @param newestOlderSnapshot From {@link VersionClock#newestOpenBefore(long)}; nothing is kept if negative.
+     * @return True if a copy was kept.
+     */
+    public synchronized boolean record(Supplier<V> current, long version, long newestOlderSnapshot) {
+        if (newestOlderSnapshot < 0 || (newest != null && newest.version > newestOlderSnapshot)) {
+            return false;
+        }
+        newest = new Copy<>(current.get(), version, newest);
+        if (!tracked) {
+            tracked = true;
+            VersionClock.global().track(this);
+        }
+        return true;
+    }
+
+    // True once every copy was pruned
+    public synchronized boolean isEmpty() {
+        return newest == null;
+    }
+
+    // Whether the value was changed after the given snapshot version
+    public synchronized boolean changedSince(long version) {
+        return newest != null && newest.version > version;
+    }
+
+    // The value as of the given snapshot version, or current if it has not changed since
+    public synchronized V at(long version, V current) {
+        Copy<V> found = null;
+        for (Copy<V> copy = newest; copy != null && copy.version > version; copy = copy.next) {
+            found = copy;
+        }
+        return found == null ? current : found.value;
+    }
+
+    // Drops copies no snapshot at or after oldestOpen can need; true if none are left
+    synchronized boolean prune(long oldestOpen) {
+        if (newest == null || newest.version <= oldestOpen) {
+            newest = null;
+        } else {
+            Copy<V> copy = newest;
+            while (copy.next != null && copy.next.version > oldestOpen) {
+                copy = copy.next;
+            }
+            copy.next = null;
+        }
+        tracked = newest != null;
+        return !tracked;
+    }
+}
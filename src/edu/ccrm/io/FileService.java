@@ -1,23 +1,43 @@
 package edu.ccrm.io;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * A generic service for file I/O operations using NIO.2 and Streams.
- * 
+ *
  * @param <T> The type of data to be handled.
  */
 public class FileService<T> {
 
-    private static final String DATA_DIRECTORY = "data";
+    private static final String DATA_DIRECTORY = System.getProperty("ccrm.data.dir", "data");
+    // Target size of one parallel parse chunk; each chunk is memory-mapped on its own.
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+    // Size of the reusable buffer that streaming exports encode into
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
     private final Path filePath;
+    private ByteBuffer writeBuffer;
 
     public FileService(String fileName) {
         Path dataDir = Paths.get(DATA_DIRECTORY);
@@ -41,7 +61,252 @@ public class FileService<T> {
         }
     }
 
+    /**
+     * Loads the file in parallel: it is split into newline-aligned chunks, each
+     * chunk is memory-mapped and parsed on the common fork-join pool, and parsed
+     * rows are put straight into {@code target}. A line that the mapper rejects
+     * is counted as a parse error for its chunk instead of aborting the load.
+     *
+     * @param lineMapper Parses one line into a record.
+     * @param keyMapper  Extracts the map key from a parsed record.
+     * @param target     The concurrent map receiving the records.
+     * @return Throughput and per-chunk row/error counts.
+     * @throws IOException If the file cannot be read.
+     */
+    public <K> ParallelLoadReport readDataParallel(Function<String, T> lineMapper, Function<T, K> keyMapper,
+            ConcurrentMap<K, ? super T> target) throws IOException {
+        long start = System.nanoTime();
+        if (!Files.exists(filePath)) {
+            return new ParallelLoadReport(filePath.getFileName().toString(), List.of(), 0);
+        }
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            List<long[]> bounds = splitIntoChunks(channel);
+            ChunkTask<K, T> task = new ChunkTask<>(channel, bounds, 0, bounds.size(), lineMapper, keyMapper, target);
+            List<ParallelLoadReport.ChunkStats> stats = ForkJoinPool.commonPool().invoke(task);
+            return new ParallelLoadReport(filePath.getFileName().toString(), stats, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Replaces the file's contents. The lines are written to a temporary file
+     * next to the target, which is then renamed over it, so a crash leaves
+     * either the old or the new file but never a half-written one.
+     */
     public void writeData(List<String> lines) throws IOException {
-        Files.write(filePath, lines);
+        Path tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        Files.write(tempPath, lines);
+        replaceAtomically(tempPath);
+    }
+
+    /**
+     * Streams records straight to the file without building a list of lines
+     * first. Each record is formatted into one reused StringBuilder and encoded
+     * into one reused direct buffer that is drained to the channel whenever it
+     * fills, so memory use stays flat regardless of how many records there are.
+     * Like {@link #writeData(List)}, the file is replaced atomically.
+     *
+     * @param records   The records to write, typically a DataStore map's values().
+     * @param formatter Appends one record's line (without the newline) to the builder.
+     * @return The number of records written.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized long writeRecords(Iterable<? extends T> records, BiConsumer<T, StringBuilder> formatter)
+            throws IOException {
+        if (writeBuffer == null) {
+            writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        }
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        StringBuilder line = new StringBuilder(256);
+        long count = 0;
+        Path tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeBuffer.clear();
+            for (T record : records) {
+                line.setLength(0);
+                formatter.accept(record, line);
+                line.append(System.lineSeparator());
+                CharBuffer chars = CharBuffer.wrap(line);
+                while (true) {
+                    CoderResult result = encoder.encode(chars, writeBuffer, true);
+                    if (result.isOverflow()) {
+                        drain(channel);
+                    } else if (result.isError()) {
+                        result.throwException();
+                    } else {
+                        break;
+                    }
+                }
+                encoder.reset();
+                count++;
+            }
+            drain(channel);
+        }
+        replaceAtomically(tempPath); // Forces the temporary file once, before the rename
+        return count;
+    }
+
+    private void drain(FileChannel channel) throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    private void replaceAtomically(Path tempPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+            channel.force(true); // Make the contents durable before the rename makes them visible
+        }
+        try {
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(filePath.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Forces a directory's entries to disk, so a file just created or renamed
+     * in it survives a crash. Some platforms (Windows) cannot open a
+     * directory; there the rename is left to the file system.
+     */
+    static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Computes [start, end) byte ranges of roughly CHUNK_SIZE, moving each
+     * boundary forward to just past the next newline so no line is split.
+     */
+    private List<long[]> splitIntoChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> bounds = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long chunkStart = 0;
+        while (chunkStart < size) {
+            long chunkEnd = Math.min(chunkStart + CHUNK_SIZE, size);
+            while (chunkEnd < size) {
+                probe.clear();
+                int read = channel.read(probe, chunkEnd);
+                if (read <= 0) {
+                    chunkEnd = size;
+                    break;
+                }
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    chunkEnd += newline + 1;
+                    break;
+                }
+                chunkEnd += read;
+            }
+            bounds.add(new long[] { chunkStart, chunkEnd });
+            chunkStart = chunkEnd;
+        }
+        return bounds;
+    }
+
+    // Splits the chunk list in halves until a single chunk remains, then parses it.
+    private static class ChunkTask<K, T> extends RecursiveTask<List<ParallelLoadReport.ChunkStats>> {
+        private static final long serialVersionUID = 1L;
+
+        // Tasks only ever run in this process, so none of their state is serialized
+        private final transient FileChannel channel;
+        private final transient List<long[]> bounds;
+        private final int from;
+        private final int to;
+        private final transient Function<String, T> lineMapper;
+        private final transient Function<T, K> keyMapper;
+        private final transient ConcurrentMap<K, ? super T> target;
+
+        ChunkTask(FileChannel channel, List<long[]> bounds, int from, int to, Function<String, T> lineMapper,
+                Function<T, K> keyMapper, ConcurrentMap<K, ? super T> target) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.lineMapper = lineMapper;
+            this.keyMapper = keyMapper;
+            this.target = target;
+        }
+
+        @Override
+        protected List<ParallelLoadReport.ChunkStats> compute() {
+            if (to - from == 0) {
+                return new ArrayList<>();
+            }
+            if (to - from == 1) {
+                List<ParallelLoadReport.ChunkStats> single = new ArrayList<>();
+                single.add(parseChunk(from));
+                return single;
+            }
+            int mid = (from + to) >>> 1;
+            ChunkTask<K, T> left = new ChunkTask<>(channel, bounds, from, mid, lineMapper, keyMapper, target);
+            ChunkTask<K, T> right = new ChunkTask<>(channel, bounds, mid, to, lineMapper, keyMapper, target);
+            left.fork();
+            List<ParallelLoadReport.ChunkStats> result = right.compute();
+            result.addAll(0, left.join());
+            return result;
+        }
+
+        private ParallelLoadReport.ChunkStats parseChunk(int index) {
+            long start = bounds.get(index)[0];
+            long end = bounds.get(index)[1];
+            long rows = 0;
+            long errors = 0;
+            String firstError = null;
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException e) {
+                return new ParallelLoadReport.ChunkStats(index, start, end, 0, 1, e.getMessage());
+            }
+
+            byte[] line = new byte[256];
+            int length = 0;
+            int limit = buffer.limit();
+            for (int i = 0; i <= limit; i++) {
+                byte b = i < limit ? buffer.get(i) : (byte) '\n';
+                if (b != '\n') {
+                    if (length == line.length) {
+                        byte[] grown = new byte[line.length * 2];
+                        System.arraycopy(line, 0, grown, 0, length);
+                        line = grown;
+                    }
+                    line[length++] = b;
+                    continue;
+                }
+                int textLength = (length > 0 && line[length - 1] == '\r') ? length - 1 : length;
+                length = 0;
+                if (textLength == 0) {
+                    continue; // Skip blank lines, including the one after a trailing newline
+                }
+                try {
+                    T record = lineMapper.apply(new String(line, 0, textLength, StandardCharsets.UTF_8));
+                    target.put(keyMapper.apply(record), record);
+                    rows++;
+                } catch (RuntimeException e) {
+                    if (firstError == null) {
+                        firstError = e.getClass().getSimpleName() + ": " + e.getMessage();
+                    }
+                    errors++;
+                }
+            }
+            return new ParallelLoadReport.ChunkStats(index, start, end, rows, errors, firstError);
+        }
     }
-}
\ No newline at end of file
+}
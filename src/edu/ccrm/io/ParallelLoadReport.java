@@ -0,0 +1,105 @@
+package edu.ccrm.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summary of a parallel, chunked file load: overall throughput plus the
+ * row and parse-error counts of each newline-aligned chunk.
+ */
+public class ParallelLoadReport {
+
+    private final String fileName;
+    private final List<ChunkStats> chunks;
+    private final long elapsedNanos;
+
+    public ParallelLoadReport(String fileName, List<ChunkStats> chunks, long elapsedNanos) {
+        this.fileName = fileName;
+        this.chunks = Collections.unmodifiableList(new ArrayList<>(chunks));
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public List<ChunkStats> getChunks() {
+        return chunks;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getTotalRows() {
+        return chunks.stream().mapToLong(ChunkStats::getRows).sum();
+    }
+
+    public long getTotalErrors() {
+        return chunks.stream().mapToLong(ChunkStats::getErrors).sum();
+    }
+
+    public double getRowsPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0.0;
+        }
+        return getTotalRows() / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    public void print() {
+        System.out.printf("%s: %d rows, %d parse errors in %.1f ms (%.0f rows/sec, %d chunks)\n",
+                fileName, getTotalRows(), getTotalErrors(), elapsedNanos / 1_000_000.0, getRowsPerSecond(),
+                chunks.size());
+        chunks.stream()
+                .filter(c -> c.getErrors() > 0)
+                .forEach(c -> System.out.printf("  chunk %d [%d..%d): %d rows, %d errors, first: %s\n",
+                        c.getIndex(), c.getStartOffset(), c.getEndOffset(), c.getRows(), c.getErrors(),
+                        c.getFirstError()));
+    }
+
+    /**
+     * Per-chunk counters. Offsets are byte positions within the file.
+     */
+    public static class ChunkStats {
+        private final int index;
+        private final long startOffset;
+        private final long endOffset;
+        private final long rows;
+        private final long errors;
+        private final String firstError;
+
+        public ChunkStats(int index, long startOffset, long endOffset, long rows, long errors, String firstError) {
+            this.index = index;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.rows = rows;
+            this.errors = errors;
+            this.firstError = firstError;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getStartOffset() {
+            return startOffset;
+        }
+
+        public long getEndOffset() {
+            return endOffset;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public String getFirstError() {
+            return firstError;
+        }
+    }
+}
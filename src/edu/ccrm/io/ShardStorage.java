@@ -0,0 +1,250 @@
+package edu.ccrm.io;
+
+import edu.ccrm.config.CourseShard;
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Instructor;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.Student;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Saves and loads the sharded store one shard at a time. Every shard has its
+ * own directory, data/shards/&lt;shard name&gt;/, holding
+ * <pre>
+ * courses.csv      code,title,credits,department,semester[,instructorId]
+ * enrollments.csv  regNo,courseCode,grade,enrollmentEpochDay
+ * </pre>
+ * so one department can be saved, loaded or backed up on its own. The
+ * methods covering every shard process the shards in parallel.
+ *
+ * Loading merges into the store: courses are put (replacing the same code),
+ * enrollments are added or get their grade updated, and rows referring to
+ * unknown students or courses are skipped. Students are not sharded and must
+ * be loaded first.
+ */
+public class ShardStorage {
+
+    private static final String DATA_DIRECTORY = System.getProperty("ccrm.data.dir", "data");
+    public static final String SHARDS_DIRECTORY = "shards";
+    private static final String COURSES_FILE = "courses.csv";
+    private static final String ENROLLMENTS_FILE = "enrollments.csv";
+
+    private final Path shardsDirectory = Paths.get(DATA_DIRECTORY, SHARDS_DIRECTORY);
+    // One FileService per file, so each keeps reusing its write buffer
+    private final Map<String, FileService<String[]>> files = new ConcurrentHashMap<>();
+
+    public Path directoryOf(String shardName) {
+        return shardsDirectory.resolve(shardName);
+    }
+
+    // Names of the shards that have files on disk, sorted
+    public List<String> listShards() throws IOException {
+        if (Files.notExists(shardsDirectory)) {
+            return List.of();
+        }
+        try (Stream<Path> listing = Files.list(shardsDirectory)) {
+            return listing.filter(Files::isDirectory)
+                    .map(p -> p.getFileName().toString())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // Writes one shard's courses and enrollments, each file replaced atomically
+    public Result save(CourseShard shard) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directoryOf(shard.getName()));
+        long courses = file(shard.getName(), COURSES_FILE).writeRecords(
+                shard.getCourses().values().stream().map(ShardStorage::courseFields).collect(Collectors.toList()),
+                ShardStorage::appendCsv);
+        Stream<String[]> enrollments = shard.enrollments()
+                .filter(e -> e.getStudent() != null) // Removed while the shard was being written
+                .map(ShardStorage::enrollmentFields);
+        long enrollmentCount = file(shard.getName(), ENROLLMENTS_FILE).writeRecords(enrollments::iterator,
+                ShardStorage::appendCsv);
+        return new Result(shard.getName(), courses, enrollmentCount, 0, System.nanoTime() - start);
+    }
+
+    // Saves every shard of the store, in parallel; results are in shard name order
+    public List<Result> saveAll(DataStore dataStore) throws IOException {
+        return inParallel(dataStore.shards(), this::save);
+    }
+
+    /**
+     * Loads one shard's files into the store.
+     *
+     * @param shardName A name from {@link #listShards()}.
+     * @throws IOException If a file exists but cannot be read.
+     */
+    public Result load(DataStore dataStore, String shardName) throws IOException {
+        long start = System.nanoTime();
+        long skipped = 0;
+        List<String[]> courseRows = file(shardName, COURSES_FILE).readData(line -> line.split(","));
+        long courses = 0;
+        for (String[] fields : courseRows) {
+            try {
+                dataStore.putCourse(parseCourse(fields, dataStore));
+                courses++;
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                skipped++;
+            }
+        }
+
+        long enrollments = 0;
+        for (String[] fields : file(shardName, ENROLLMENTS_FILE).readData(line -> line.split(","))) {
+            try {
+                if (applyEnrollment(fields, dataStore)) {
+                    enrollments++;
+                } else {
+                    skipped++;
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                skipped++;
+            }
+        }
+        return new Result(shardName, courses, enrollments, skipped, System.nanoTime() - start);
+    }
+
+    // Loads every shard found on disk, in parallel
+    public List<Result> loadAll(DataStore dataStore) throws IOException {
+        return inParallel(listShards(), name -> load(dataStore, name));
+    }
+
+    private boolean applyEnrollment(String[] fields, DataStore dataStore) {
+        Student student = dataStore.students.get(fields[0]);
+        Course course = dataStore.courses.get(fields[1]);
+        if (student == null || course == null) {
+            return false;
+        }
+        Grade grade = Grade.valueOf(fields[2]);
+        Optional<Enrollment> existing = student.findEnrollment(course.getCode());
+        if (existing.isPresent()) {
+            existing.get().setGrade(grade);
+        } else {
+            Enrollment enrollment = new Enrollment(student.getId(), course.getCode(),
+                    LocalDate.ofEpochDay(Long.parseLong(fields[3])));
+            enrollment.setGrade(grade);
+            student.addEnrollment(enrollment, course);
+        }
+        return true;
+    }
+
+    private static Course parseCourse(String[] fields, DataStore dataStore) {
+        Course course = new Course.Builder(fields[0], fields[1], Integer.parseInt(fields[2]))
+                .department(fields[3])
+                .semester(Semester.valueOf(fields[4].toUpperCase()))
+                .build();
+        if (fields.length > 5 && !fields[5].isEmpty()) {
+            Instructor instructor = dataStore.instructors.get(Long.parseLong(fields[5]));
+            if (instructor != null) {
+                course.assignInstructor(instructor);
+            }
+        }
+        return course;
+    }
+
+    private static String[] courseFields(Course c) {
+        String[] fields = { c.getCode(), c.getTitle(), String.valueOf(c.getCredits()), c.getDepartment(),
+                c.getSemester().name() };
+        if (c.getInstructor() == null) {
+            return fields;
+        }
+        String[] withInstructor = Arrays.copyOf(fields, 6);
+        withInstructor[5] = String.valueOf(c.getInstructor().getId());
+        return withInstructor;
+    }
+
+    private static String[] enrollmentFields(Enrollment e) {
+        return new String[] { e.getStudent().getRegNo(), e.getCourseCode(), e.getGrade().name(),
+                String.valueOf(e.getEnrollmentDate().toEpochDay()) };
+    }
+
+    private static void appendCsv(String[] fields, StringBuilder line) {
+        for (int i = 0; i < fields.length; i++) {
+            line.append(i == 0 ? "" : ",").append(fields[i]);
+        }
+    }
+
+    private FileService<String[]> file(String shardName, String fileName) {
+        String relative = SHARDS_DIRECTORY + "/" + shardName + "/" + fileName;
+        return files.computeIfAbsent(relative, FileService::new);
+    }
+
+    private interface ShardTask<T> {
+        Result run(T shard) throws IOException;
+    }
+
+    // Runs the task for every shard on the common pool and returns the results in the given order
+    private static <T> List<Result> inParallel(List<T> shards, ShardTask<T> task) throws IOException {
+        Function<T, Result> unchecked = shard -> {
+            try {
+                return task.run(shard);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            return shards.parallelStream().map(unchecked).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * What saving or loading one shard did.
+     */
+    public static final class Result {
+        private final String shard;
+        private final long courses;
+        private final long enrollments;
+        private final long skipped;
+        private final long nanos;
+
+        Result(String shard, long courses, long enrollments, long skipped, long nanos) {
+            this.shard = shard;
+            this.courses = courses;
+            this.enrollments = enrollments;
+            this.skipped = skipped;
+            this.nanos = nanos;
+        }
+
+        public String getShard() {
+            return shard;
+        }
+
+        public long getCourses() {
+            return courses;
+        }
+
+        public long getEnrollments() {
+            return enrollments;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %5d courses, %8d enrollments%s in %.1f ms", shard, courses, enrollments,
+                    skipped > 0 ? " (" + skipped + " rows skipped)" : "", nanos / 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package edu.ccrm.io;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.config.StoreSnapshot;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.IdSequence;
+import edu.ccrm.domain.Instructor;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.Student;
+import edu.ccrm.domain.StudentSnapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Saves and restores the whole DataStore as one compact binary file.
+ *
+ * Layout (fixed-width integers are big-endian; lengths, string indexes,
+ * credits and person ids are unsigned varints):
+ * <pre>
+ * magic "CCRM", version
+ * string table: count, then (byte length, UTF-8 bytes) per string
+ * instructors, students, courses, enrollments: count, then (record length, record) each
+ * </pre>
+ * Records refer to strings by their index in the table, so repeated values
+ * such as department names are stored once. The record length lets a reader
+ * skip fields added by a newer version. Version 1 stored person ids as
+ * (UUID) strings; such people get new numeric ids when loaded.
+ */
+public class SnapshotService {
+
+    private static final String DATA_DIRECTORY = System.getProperty("ccrm.data.dir", "data");
+    private static final String SNAPSHOT_FILE = "datastore.snap";
+    private static final int MAGIC = 0x4343524D; // "CCRM"
+    private static final int VERSION = 2;
+
+    private final Path snapshotPath = Paths.get(DATA_DIRECTORY, SNAPSHOT_FILE);
+
+    public boolean snapshotExists() {
+        return Files.exists(snapshotPath);
+    }
+
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    /**
+     * Writes the store to the snapshot file. Students and their enrollments
+     * are read from one point-in-time {@link DataStore#snapshot()}, so
+     * enrollments and grades changed while it is written (by the API server,
+     * say) cannot make the enrollment section disagree with its count.
+     */
+    public void saveSnapshot(DataStore dataStore) throws IOException {
+        // 1. Collect every distinct string so records can refer to them by index
+        StringTable strings = new StringTable();
+        List<Instructor> instructors = new ArrayList<>(dataStore.instructors.values());
+        List<StudentSnapshot> students;
+        try (StoreSnapshot store = dataStore.snapshot()) {
+            students = store.students().collect(Collectors.toList());
+        }
+        List<Course> courses = new ArrayList<>(dataStore.courses.values());
+
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(1024 * 1024);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        // 2. Encode the record sections; the string table is filled in as a side effect
+        body.writeInt(instructors.size());
+        for (Instructor i : instructors) {
+            writeVarLong(record, i.getId());
+            writeVarInt(record, strings.indexOf(i.getFullName()));
+            writeVarInt(record, strings.indexOf(i.getEmail()));
+            writeVarInt(record, strings.indexOf(i.getDepartment()));
+            record.writeInt((int) i.getHireDate().toEpochDay());
+            flushRecord(recordBytes, body);
+        }
+
+        body.writeInt(students.size());
+        int enrollmentCount = 0;
+        for (StudentSnapshot s : students) {
+            writeVarLong(record, s.getId());
+            writeVarInt(record, strings.indexOf(s.getFullName()));
+            writeVarInt(record, strings.indexOf(s.getEmail()));
+            writeVarInt(record, strings.indexOf(s.getRegNo()));
+            record.writeByte(s.getStatus().ordinal());
+            record.writeInt((int) s.getRegistrationDate().toEpochDay());
+            flushRecord(recordBytes, body);
+            enrollmentCount += s.getEnrollments().size();
+        }
+
+        body.writeInt(courses.size());
+        for (Course c : courses) {
+            writeVarInt(record, strings.indexOf(c.getCode()));
+            writeVarInt(record, strings.indexOf(c.getTitle()));
+            writeVarInt(record, c.getCredits());
+            writeVarInt(record, strings.indexOf(c.getDepartment()));
+            record.writeByte(c.getSemester().ordinal());
+            writeVarLong(record, c.getInstructor() == null ? 0 : c.getInstructor().getId()); // Ids start at 1
+            flushRecord(recordBytes, body);
+        }
+
+        body.writeInt(enrollmentCount);
+        for (StudentSnapshot s : students) {
+            for (StudentSnapshot.EnrolledCourse e : s.getEnrollments()) {
+                writeVarInt(record, strings.indexOf(s.getRegNo()));
+                writeVarInt(record, strings.indexOf(e.getCourseCode()));
+                record.writeByte(e.getGrade().ordinal());
+                record.writeInt((int) e.getEnrollmentDate().toEpochDay());
+                flushRecord(recordBytes, body);
+            }
+        }
+        body.flush();
+
+        // 3. Write header, string table and body to a temp file, then swap it in
+        Files.createDirectories(snapshotPath.getParent());
+        Path tempPath = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.values.size());
+            for (String value : strings.values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+            bodyBytes.writeTo(out);
+            out.flush();
+            // Callers truncate the write-ahead log next, so the snapshot must be on disk before it replaces the old one
+            channel.force(true);
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileService.forceDirectory(snapshotPath.toAbsolutePath().getParent()); // And so must the rename
+        System.out.println("Saved snapshot: " + students.size() + " students, " + courses.size() + " courses, "
+                + instructors.size() + " instructors, " + enrollmentCount + " enrollments.");
+    }
+
+    /**
+     * Replaces the contents of the DataStore with the snapshot, reading the
+     * file through a memory-mapped buffer.
+     */
+    public void loadSnapshot(DataStore dataStore) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a CCRM snapshot: " + snapshotPath);
+            }
+            int version = buffer.getInt();
+            if (version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+
+            String[] strings = readStringTable(buffer);
+            dataStore.clearAll();
+
+            Map<String, Instructor> legacyInstructors = new HashMap<>(); // Version 1: by old string id
+            int count = buffer.getInt();
+            for (int n = 0; n < count; n++) {
+                int end = recordEnd(buffer);
+                String legacyId = version == 1 ? strings[readVarInt(buffer)] : null;
+                long id = legacyId != null ? IdSequence.persons().next() : readVarLong(buffer);
+                Instructor instructor = new Instructor(id, strings[readVarInt(buffer)], strings[readVarInt(buffer)],
+                        strings[readVarInt(buffer)], LocalDate.ofEpochDay(buffer.getInt()));
+                dataStore.instructors.put(instructor.getId(), instructor);
+                if (legacyId != null) {
+                    legacyInstructors.put(legacyId, instructor);
+                }
+                buffer.position(end);
+            }
+
+            Student.Status[] statuses = Student.Status.values();
+            count = buffer.getInt();
+            for (int n = 0; n < count; n++) {
+                int end = recordEnd(buffer);
+                long id = version == 1 ? skipLegacyId(buffer) : readVarLong(buffer);
+                Student student = new Student(id, strings[readVarInt(buffer)], strings[readVarInt(buffer)],
+                        strings[readVarInt(buffer)], statuses[buffer.get()], LocalDate.ofEpochDay(buffer.getInt()));
+                dataStore.students.put(student.getRegNo(), student); // Indexed once all grades are in
+                buffer.position(end);
+            }
+
+            Semester[] semesters = Semester.values();
+            count = buffer.getInt();
+            for (int n = 0; n < count; n++) {
+                int end = recordEnd(buffer);
+                Course course = new Course.Builder(strings[readVarInt(buffer)], strings[readVarInt(buffer)],
+                        readVarInt(buffer))
+                        .department(strings[readVarInt(buffer)])
+                        .semester(semesters[buffer.get()])
+                        .build();
+                if (version == 1) {
+                    int instructorRef = readVarInt(buffer); // 0 means no instructor, otherwise string index + 1
+                    if (instructorRef != 0) {
+                        course.assignInstructor(legacyInstructors.get(strings[instructorRef - 1]));
+                    }
+                } else {
+                    long instructorId = readVarLong(buffer); // 0 means no instructor
+                    if (instructorId != 0) {
+                        course.assignInstructor(dataStore.instructors.get(instructorId));
+                    }
+                }
+                dataStore.putCourse(course);
+                buffer.position(end);
+            }
+
+            Grade[] grades = Grade.values();
+            count = buffer.getInt();
+            for (int n = 0; n < count; n++) {
+                int end = recordEnd(buffer);
+                Student student = dataStore.students.get(strings[readVarInt(buffer)]);
+                String courseCode = strings[readVarInt(buffer)];
+                Grade grade = grades[buffer.get()];
+                LocalDate date = LocalDate.ofEpochDay(buffer.getInt());
+                if (student != null) {
+                    Enrollment enrollment = new Enrollment(student.getId(), courseCode, date);
+                    enrollment.setGrade(grade);
+                    student.addEnrollment(enrollment, dataStore.courses.get(courseCode));
+                }
+                buffer.position(end);
+            }
+        }
+        dataStore.rebuildStudentIndexes();
+        System.out.println("Loaded snapshot: " + dataStore.students.size() + " students, "
+                + dataStore.courses.size() + " courses, " + dataStore.enrollmentTable.size() + " enrollments.");
+    }
+
+    private String[] readStringTable(ByteBuffer buffer) {
+        String[] strings = new String[buffer.getInt()];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < strings.length; i++) {
+            int length = readVarInt(buffer);
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    // Reads a record's length prefix and returns the position just past the record
+    private int recordEnd(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        return buffer.position() + length;
+    }
+
+    // Unsigned LEB128: 7 bits per byte, high bit set on every byte but the last
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    // Skips a version 1 UUID string id and allocates a numeric id in its place
+    private static long skipLegacyId(ByteBuffer buffer) {
+        readVarInt(buffer);
+        return IdSequence.persons().next();
+    }
+
+    private void flushRecord(ByteArrayOutputStream recordBytes, DataOutputStream body) throws IOException {
+        writeVarInt(body, recordBytes.size());
+        recordBytes.writeTo(body);
+        recordBytes.reset();
+    }
+
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int indexOf(String value) {
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = values.size();
+                indexes.put(value, index);
+                values.add(value);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package edu.ccrm.io;
+
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Student;
+import edu.ccrm.domain.StudentSnapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * The cold tier of the student store: students paged out of memory, kept as
+ * records in data/students.cold and found through a sorted offset index in
+ * data/students.cold.idx. Both files are memory-mapped, so an archived
+ * student costs no heap; only records appended since the index was last
+ * rewritten are looked up through a small in-memory map.
+ *
+ * Layout (fixed-width integers are big-endian; lengths, counts and person ids
+ * are unsigned varints; strings are a varint byte length and UTF-8 bytes):
+ * <pre>
+ * students.cold      magic "CCRC", version, then (record length, record) per record
+ *   record           regNo, id, fullName, email, status, registration epoch day,
+ *                    enrollment count, then (courseCode, grade, epoch day) per enrollment
+ * students.cold.idx  magic "CCRX", version, length of students.cold it covers, count,
+ *                    then the offset of each student's newest record, sorted by regNo
+ * </pre>
+ * Records are only ever appended; a student archived again gets a new record
+ * that supersedes the old one. Once RECENT_LIMIT students were appended
+ * since the index was written, it is rewritten in one merge pass. On open,
+ * records past the length the index covers are read back into the in-memory
+ * map, so a crash between an append and a merge loses nothing. No record
+ * crosses a 1 GiB boundary (the gap is zero-filled), so every segment of the
+ * data file maps into one buffer.
+ */
+public class StudentArchive {
+
+    private static final String DATA_DIRECTORY = System.getProperty("ccrm.data.dir", "data");
+    private static final String DATA_FILE = "students.cold";
+    private static final String INDEX_FILE = "students.cold.idx";
+    private static final int DATA_MAGIC = 0x43435243; // "CCRC"
+    private static final int INDEX_MAGIC = 0x43435258; // "CCRX"
+    private static final int VERSION = 1;
+    private static final int DATA_HEADER_BYTES = 8;
+    private static final int INDEX_HEADER_BYTES = 20;
+    private static final long SEGMENT_BYTES = 1L << 30;
+    private static final int RECENT_LIMIT = 4096;
+    private static final Student.Status[] STATUSES = Student.Status.values();
+    private static final Grade[] GRADES = Grade.values();
+    private static StudentArchive instance;
+
+    private final Path dataPath;
+    private final Path indexPath;
+    private FileChannel data; // Null until the first append, or opening an existing file
+    private long dataLength;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long mappedLength; // Bytes of the data file the segments cover
+    private MappedByteBuffer index; // Null while there is no index file
+    private int indexCount;
+    // Newest offset per regNo of the records past the index; sorted, ready to merge
+    private final TreeMap<String, Long> recent = new TreeMap<>();
+    private int studentCount; // Distinct students in the archive
+
+    private StudentArchive(Path directory) throws IOException {
+        this.dataPath = directory.resolve(DATA_FILE);
+        this.indexPath = directory.resolve(INDEX_FILE);
+        if (Files.exists(dataPath)) {
+            open();
+        }
+    }
+
+    public static synchronized StudentArchive getInstance() {
+        if (instance == null) {
+            try {
+                instance = new StudentArchive(Paths.get(DATA_DIRECTORY));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open the student archive", e);
+            }
+        }
+        return instance;
+    }
+
+    // Number of distinct students archived
+    public synchronized int size() {
+        return studentCount;
+    }
+
+    // Bytes on disk, data and index together
+    public synchronized long fileBytes() {
+        return dataLength + (index == null ? 0 : index.capacity());
+    }
+
+    public synchronized boolean contains(String regNo) {
+        return find(regNo) >= 0;
+    }
+
+    /**
+     * The newest archived record of a student, decoded from the mapped file.
+     *
+     * @throws UncheckedIOException If the file cannot be mapped.
+     */
+    public synchronized Optional<StudentSnapshot> read(String regNo) {
+        long offset = find(regNo);
+        return offset < 0 ? Optional.empty() : Optional.of(decode(record(offset)));
+    }
+
+    /**
+     * Every archived student's newest record, in regNo order. Which records
+     * are read is fixed when this is called; records are never moved, so each
+     * is decoded only when the iteration reaches it, and nothing but their
+     * offsets is held in memory.
+     */
+    public synchronized Iterable<StudentSnapshot> records() {
+        long[] offsets = newestOffsets();
+        return () -> new Iterator<>() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < offsets.length;
+            }
+
+            @Override
+            public StudentSnapshot next() {
+                if (position >= offsets.length) {
+                    throw new NoSuchElementException();
+                }
+                return readAt(offsets[position++]);
+            }
+        };
+    }
+
+    private synchronized StudentSnapshot readAt(long offset) {
+        return decode(record(offset));
+    }
+
+    // Whether the student's newest record holds exactly this state, so paging them out again can be skipped
+    public synchronized boolean isArchivedAs(StudentSnapshot student) {
+        long offset = find(student.getRegNo());
+        if (offset < 0) {
+            return false;
+        }
+        ByteBuffer stored = record(offset);
+        byte[] encoded = encode(student);
+        return stored.remaining() == encoded.length && stored.equals(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Appends one record per student and forces them to disk, so the caller
+     * may drop the students from memory once this returns.
+     *
+     * @return The number of bytes written.
+     * @throws IOException If the file cannot be written; nothing is indexed then.
+     */
+    public synchronized long append(List<StudentSnapshot> students) throws IOException {
+        if (students.isEmpty()) {
+            return 0;
+        }
+        if (data == null) {
+            Files.createDirectories(dataPath.getParent());
+            data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_BYTES).putInt(DATA_MAGIC).putInt(VERSION).flip();
+            writeFully(header, 0);
+            dataLength = DATA_HEADER_BYTES;
+        }
+        long start = dataLength;
+        long position = dataLength;
+        Map<String, Long> offsets = new TreeMap<>();
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(framed);
+        for (StudentSnapshot student : students) {
+            byte[] record = encode(student);
+            framed.reset();
+            writeVarInt(out, record.length);
+            out.write(record);
+            long segmentEnd = (position / SEGMENT_BYTES + 1) * SEGMENT_BYTES;
+            if (position + framed.size() > segmentEnd) {
+                writeFully(ByteBuffer.allocate((int) (segmentEnd - position)), position); // Zeros: a gap
+                position = segmentEnd;
+            }
+            writeFully(ByteBuffer.wrap(framed.toByteArray()), position);
+            offsets.put(student.getRegNo(), position);
+            position += framed.size();
+        }
+        data.force(false);
+        dataLength = position;
+        for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+            if (find(entry.getKey()) < 0) {
+                studentCount++;
+            }
+            recent.put(entry.getKey(), entry.getValue());
+        }
+        if (recent.size() >= RECENT_LIMIT) {
+            mergeIndex();
+        }
+        return dataLength - start;
+    }
+
+    /**
+     * Rewrites the index to cover every record, merging the sorted index with
+     * the records appended since it was written, and empties the in-memory map.
+     */
+    public synchronized void mergeIndex() throws IOException {
+        if (recent.isEmpty()) {
+            return;
+        }
+        Path tempPath = indexPath.resolveSibling(INDEX_FILE + ".tmp");
+        long[] offsets = newestOffsets();
+        if (offsets.length != studentCount) {
+            throw new IOException("Student archive index is inconsistent: " + offsets.length + " != " + studentCount);
+        }
+        try (OutputStream fileOut = Files.newOutputStream(tempPath);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(dataLength);
+            out.writeInt(studentCount);
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+        }
+        Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapIndex();
+        recent.clear();
+    }
+
+    // The offset of every student's newest record, in regNo order: the sorted index merged with the recent map
+    private long[] newestOffsets() {
+        long[] offsets = new long[indexCount + recent.size()];
+        int count = 0;
+        Iterator<Map.Entry<String, Long>> added = recent.entrySet().iterator();
+        Map.Entry<String, Long> next = added.hasNext() ? added.next() : null;
+        for (int i = 0; i < indexCount; i++) {
+            long offset = indexedOffset(i);
+            String regNo = regNoAt(offset);
+            while (next != null && next.getKey().compareTo(regNo) < 0) {
+                offsets[count++] = next.getValue();
+                next = added.hasNext() ? added.next() : null;
+            }
+            if (next != null && next.getKey().equals(regNo)) {
+                offset = next.getValue(); // Archived again since: the newer record wins
+                next = added.hasNext() ? added.next() : null;
+            }
+            offsets[count++] = offset;
+        }
+        while (next != null) {
+            offsets[count++] = next.getValue();
+            next = added.hasNext() ? added.next() : null;
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    // Reads the headers, maps the index and re-reads the records written after it
+    private void open() throws IOException {
+        data = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dataLength = data.size();
+        ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_BYTES);
+        data.read(header, 0);
+        if (dataLength < DATA_HEADER_BYTES || header.getInt(0) != DATA_MAGIC) {
+            throw new IOException("Not a CCRM student archive: " + dataPath);
+        }
+        if (header.getInt(4) > VERSION) {
+            throw new IOException("Unsupported student archive version " + header.getInt(4));
+        }
+        long covered = DATA_HEADER_BYTES;
+        if (Files.exists(indexPath)) {
+            covered = mapIndex();
+        }
+        studentCount = indexCount;
+        // Records appended after the index was written, up to the last complete one
+        long position = covered;
+        while (position < dataLength) {
+            ByteBuffer segment = segmentFor(position).duplicate();
+            segment.position((int) (position % SEGMENT_BYTES));
+            int length;
+            try {
+                length = readVarInt(segment);
+            } catch (BufferUnderflowException e) {
+                break; // Torn length of the last record
+            }
+            if (length == 0) {
+                position = (position / SEGMENT_BYTES + 1) * SEGMENT_BYTES; // Gap up to the next segment
+                continue;
+            }
+            long end = position + (segment.position() - position % SEGMENT_BYTES) + length;
+            if (end > dataLength) {
+                break; // Torn last record: cut off below
+            }
+            String regNo = readString(segment);
+            if (!recent.containsKey(regNo) && indexedFind(regNo) < 0) {
+                studentCount++;
+            }
+            recent.put(regNo, position);
+            position = end;
+        }
+        if (position < dataLength) {
+            data.truncate(position);
+            dataLength = position;
+            segments = new MappedByteBuffer[0];
+            mappedLength = 0;
+        }
+    }
+
+    // Maps the index file; returns the length of the data file it covers
+    private long mapIndex() throws IOException {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt(0) != INDEX_MAGIC) {
+                throw new IOException("Not a CCRM student archive index: " + indexPath);
+            }
+            index = mapped;
+            indexCount = mapped.getInt(16);
+            return mapped.getLong(8);
+        }
+    }
+
+    // Offset of the student's newest record, or -1
+    private long find(String regNo) {
+        Long offset = recent.get(regNo);
+        return offset != null ? offset : indexedFind(regNo);
+    }
+
+    // Binary search of the sorted index, reading each probed regNo from its record
+    private long indexedFind(String regNo) {
+        int low = 0;
+        int high = indexCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long offset = indexedOffset(middle);
+            int order = regNoAt(offset).compareTo(regNo);
+            if (order == 0) {
+                return offset;
+            } else if (order < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return -1;
+    }
+
+    private long indexedOffset(int position) {
+        return index.getLong(INDEX_HEADER_BYTES + position * Long.BYTES);
+    }
+
+    private String regNoAt(long offset) {
+        return readString(record(offset));
+    }
+
+    // The record at the offset, as a buffer positioned at its first field and limited to its end
+    private ByteBuffer record(long offset) {
+        ByteBuffer buffer = segmentFor(offset).duplicate();
+        buffer.position((int) (offset % SEGMENT_BYTES));
+        int length = readVarInt(buffer);
+        buffer.limit(buffer.position() + length);
+        return buffer;
+    }
+
+    // The mapped segment holding the offset, remapping the end of the file if it has grown
+    private MappedByteBuffer segmentFor(long offset) {
+        if (offset >= mappedLength) {
+            try {
+                int count = (int) ((dataLength + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+                MappedByteBuffer[] remapped = Arrays.copyOf(segments, count);
+                for (int s = Math.max(0, segments.length - 1); s < count; s++) {
+                    long start = s * SEGMENT_BYTES;
+                    remapped[s] = data.map(FileChannel.MapMode.READ_ONLY, start,
+                            Math.min(SEGMENT_BYTES, dataLength - start));
+                }
+                segments = remapped;
+                mappedLength = dataLength;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map the student archive", e);
+            }
+        }
+        return segments[(int) (offset / SEGMENT_BYTES)];
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += data.write(buffer, position);
+        }
+    }
+
+    private static byte[] encode(StudentSnapshot student) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, student.getRegNo());
+            writeVarLong(out, student.getId());
+            writeString(out, student.getFullName());
+            writeString(out, student.getEmail());
+            out.writeByte(student.getStatus().ordinal());
+            out.writeInt((int) student.getRegistrationDate().toEpochDay());
+            writeVarInt(out, student.getEnrollments().size());
+            for (StudentSnapshot.EnrolledCourse enrollment : student.getEnrollments()) {
+                writeString(out, enrollment.getCourseCode());
+                out.writeByte(enrollment.getGrade().ordinal());
+                out.writeInt((int) enrollment.getEnrollmentDate().toEpochDay());
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by a ByteArrayOutputStream
+        }
+    }
+
+    private static StudentSnapshot decode(ByteBuffer record) {
+        String regNo = readString(record);
+        long id = readVarLong(record);
+        String fullName = readString(record);
+        String email = readString(record);
+        Student.Status status = STATUSES[record.get()];
+        LocalDate registrationDate = LocalDate.ofEpochDay(record.getInt());
+        int count = readVarInt(record);
+        List<StudentSnapshot.EnrolledCourse> enrollments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            enrollments.add(new StudentSnapshot.EnrolledCourse(readString(record), GRADES[record.get()],
+                    LocalDate.ofEpochDay(record.getInt())));
+        }
+        return new StudentSnapshot(id, regNo, fullName, email, status, registrationDate, enrollments);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Unsigned LEB128, as in SnapshotService
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,287 @@
+package edu.ccrm.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * An append-only log of the changes made since the last snapshot, as written
+ * by the WriteBehindPersister (students, courses, enrollments and grades).
+ * Each record is one comma-separated line.
+ *
+ * Appends use group commit: callers copy their record into a shared buffer and
+ * wait, while a single flusher thread writes everything buffered so far and
+ * issues one fsync for the whole batch. Concurrent callers therefore share the
+ * cost of a single fsync instead of paying for one each.
+ *
+ * A failed write fails every append waiting for it, and may leave a torn
+ * record behind. The next append, or truncate(), first cuts the file back to
+ * its last durable size (reopening it if the channel was closed), so the log
+ * can be written again once the cause is gone.
+ */
+public class WriteAheadLog {
+
+    private static final String DATA_DIRECTORY = System.getProperty("ccrm.data.dir", "data");
+    private static final String LOG_FILE = "enrollments.wal";
+    private static WriteAheadLog instance;
+
+    private final Path logPath;
+    private FileChannel channel; // Replaced if a failed write closed it; guarded by the lock
+    // A ReentrantLock rather than a monitor, so waiting virtual threads do not pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasPending = lock.newCondition(); // The flusher waits on this
+    private final Condition flushed = lock.newCondition(); // Appenders wait on this
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private long appendedSeq = 0;
+    private long durableSeq = 0;
+    private long durableBytes; // File size after the last successful fsync
+    private long failedSeq = 0; // Appends up to this one were lost by a failed write
+    private boolean closed = false;
+    private IOException failure; // The last failed write; the file needs recovering while it is set
+
+    private WriteAheadLog(Path logPath) throws IOException {
+        Files.createDirectories(logPath.getParent());
+        this.logPath = logPath;
+        this.channel = open(logPath);
+        this.durableBytes = channel.size();
+        Thread flusher = new Thread(this::flushLoop, "ccrm-wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public static synchronized WriteAheadLog getInstance() {
+        if (instance == null) {
+            try {
+                instance = new WriteAheadLog(Paths.get(DATA_DIRECTORY, LOG_FILE));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open write-ahead log", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Appends one record and returns once it has been fsynced.
+     *
+     * @param fields The record's fields; must not contain commas or newlines.
+     * @throws UncheckedIOException If the log could not be written.
+     */
+    public void append(String... fields) {
+        appendAll(List.<String[]>of(fields));
+    }
+
+    /**
+     * Appends several records as one unit and waits for a single fsync that
+     * covers all of them.
+     *
+     * @param records The records, each given as its fields.
+     * @throws UncheckedIOException If the log could not be written.
+     */
+    public void appendAll(List<String[]> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder(records.size() * 32);
+        for (String[] fields : records) {
+            text.append(String.join(",", fields)).append('\n');
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            if (failure != null) {
+                recover();
+            }
+            if (pending.remaining() < bytes.length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+                        pending.position() + bytes.length));
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            pending.put(bytes);
+            long seq = ++appendedSeq;
+            hasPending.signal();
+            awaitDurable(seq);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads every complete record in the log, oldest first. A torn last line
+     * (from a crash in the middle of a write) is ignored.
+     */
+    public void replay(Consumer<String[]> handler) throws IOException {
+        if (!Files.exists(logPath)) {
+            return;
+        }
+        long size = Files.size(logPath);
+        try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+            long consumed = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                consumed += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (consumed > size) {
+                    break; // Last line had no newline, so it was never fully written
+                }
+                if (!line.isEmpty()) {
+                    handler.accept(line.split(","));
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards every record in the log, and with them any torn record left by
+     * a failed write. Call this right after a snapshot that already contains
+     * all logged mutations has been made durable.
+     */
+    public void truncate() throws IOException {
+        lock.lock();
+        try {
+            awaitSettled(appendedSeq);
+            if (!channel.isOpen()) {
+                channel = open(logPath);
+            }
+            channel.truncate(0);
+            channel.force(true);
+            durableBytes = 0;
+            failure = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Flushes what is buffered and stops the flusher thread.
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            hasPending.signal();
+            awaitDurable(appendedSeq);
+        } finally {
+            lock.unlock();
+        }
+        channel.close();
+    }
+
+    // Must be called while holding the lock.
+    private void awaitDurable(long seq) {
+        awaitSettled(seq);
+        if (durableSeq < seq) {
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+        }
+    }
+
+    // Waits until the append is either on disk or lost to a failed write; must be called while holding the lock.
+    private void awaitSettled(long seq) {
+        boolean interrupted = false;
+        while (durableSeq < seq && failedSeq < seq) {
+            try {
+                flushed.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Cuts off whatever a failed write left after the last durable record; must be called while holding the lock
+    private void recover() {
+        try {
+            if (!channel.isOpen()) {
+                channel = open(logPath);
+            }
+            channel.truncate(durableBytes);
+            channel.force(true);
+            failure = null;
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException("Write-ahead log failed and could not be recovered", e);
+        }
+    }
+
+    private static FileChannel open(Path logPath) throws IOException {
+        return FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchSeq;
+            FileChannel out;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        hasPending.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                // Swap buffers so appenders can keep filling the next batch during the fsync
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                batchSeq = appendedSeq;
+                out = channel;
+            } finally {
+                lock.unlock();
+            }
+
+            int bytes;
+            try {
+                batch.flip();
+                bytes = batch.remaining();
+                while (batch.hasRemaining()) {
+                    out.write(batch);
+                }
+                out.force(false);
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    // This batch and everything appended behind it is lost; the next append recovers the file
+                    failure = e;
+                    failedSeq = appendedSeq;
+                    pending.clear();
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                continue;
+            } finally {
+                batch.clear();
+            }
+
+            lock.lock();
+            try {
+                durableSeq = batchSeq;
+                durableBytes += bytes;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
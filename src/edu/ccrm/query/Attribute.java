@@ -0,0 +1,89 @@
+package edu.ccrm.query;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * A named, typed property of an entity that conditions and sort keys can
+ * refer to. Literal values from a query are converted to the attribute's
+ * type once, when the query is built, so rows are compared without parsing.
+ */
+final class Attribute<T> {
+
+    private final String name;
+    private final Class<?> type;
+    private final Function<T, ?> getter;
+    private final boolean ignoreCase;
+
+    Attribute(String name, Class<?> type, Function<T, ?> getter) {
+        this(name, type, getter, false);
+    }
+
+    Attribute(String name, Class<?> type, Function<T, ?> getter, boolean ignoreCase) {
+        this.name = name;
+        this.type = type;
+        this.getter = getter;
+        this.ignoreCase = ignoreCase;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isText() {
+        return type == String.class;
+    }
+
+    // The attribute's value for the item, lower-cased if the attribute ignores case; may be null
+    Object valueOf(T item) {
+        Object value = getter.apply(item);
+        return ignoreCase && value != null ? value.toString().toLowerCase(Locale.ROOT) : value;
+    }
+
+    /**
+     * Converts a literal (a String from the text syntax, or an already typed
+     * value from the builder) to this attribute's type.
+     *
+     * @throws IllegalArgumentException If the literal is not a valid value.
+     */
+    Object coerce(Object literal) {
+        if (literal == null) {
+            throw new IllegalArgumentException("Missing value for " + name + ".");
+        }
+        Object value;
+        if (type.isInstance(literal)) {
+            value = literal;
+        } else {
+            value = parse(literal.toString().trim());
+        }
+        return ignoreCase ? value.toString().toLowerCase(Locale.ROOT) : value;
+    }
+
+    private Object parse(String text) {
+        try {
+            if (type == String.class) {
+                return text;
+            } else if (type == Integer.class) {
+                return Integer.valueOf(text);
+            } else if (type == Long.class) {
+                return Long.valueOf(text);
+            } else if (type == Double.class) {
+                return Double.valueOf(text);
+            } else if (type == LocalDate.class) {
+                return LocalDate.parse(text);
+            } else if (type.isEnum()) {
+                return enumValue(type.asSubclass(Enum.class), text.toUpperCase(Locale.ROOT));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid value for " + name + ": " + text);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(Class<? extends Enum> type, String name) {
+        return Enum.valueOf((Class) type, name);
+    }
+}
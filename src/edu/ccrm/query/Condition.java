@@ -0,0 +1,81 @@
+package edu.ccrm.query;
+
+import java.util.Locale;
+import java.util.function.Predicate;
+
+// One "attribute operator value" test of a query; all conditions of a query must hold
+final class Condition<T> implements Predicate<T> {
+
+    private final Attribute<T> attribute;
+    private final Operator operator;
+    private final Object value;
+    private final Object upper; // Only used by BETWEEN
+
+    Condition(Attribute<T> attribute, Operator operator, Object value, Object upper) {
+        if (operator == Operator.CONTAINS && !attribute.isText()) {
+            throw new IllegalArgumentException("contains only applies to text attributes, not " + attribute.getName());
+        }
+        this.attribute = attribute;
+        this.operator = operator;
+        this.value = operator == Operator.CONTAINS
+                ? attribute.coerce(value).toString().toLowerCase(Locale.ROOT)
+                : attribute.coerce(value);
+        this.upper = operator == Operator.BETWEEN ? attribute.coerce(upper) : null;
+    }
+
+    Attribute<T> getAttribute() {
+        return attribute;
+    }
+
+    Operator getOperator() {
+        return operator;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean test(T item) {
+        Object actual = attribute.valueOf(item);
+        if (actual == null) {
+            return false; // Missing values (e.g. a course without an instructor) match nothing
+        }
+        switch (operator) {
+            case EQ:
+                return compare(actual, value) == 0;
+            case NE:
+                return compare(actual, value) != 0;
+            case LT:
+                return compare(actual, value) < 0;
+            case LE:
+                return compare(actual, value) <= 0;
+            case GT:
+                return compare(actual, value) > 0;
+            case GE:
+                return compare(actual, value) >= 0;
+            case BETWEEN:
+                return compare(actual, value) >= 0 && compare(actual, upper) <= 0;
+            case CONTAINS:
+                return actual.toString().toLowerCase(Locale.ROOT).contains((String) value);
+            default:
+                throw new IllegalStateException("Unhandled operator " + operator);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compare(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    @Override
+    public String toString() {
+        String text = attribute.getName() + " " + operator.getSymbol() + " " + literal(value);
+        return operator == Operator.BETWEEN ? text + " and " + literal(upper) : text;
+    }
+
+    private static String literal(Object value) {
+        String text = String.valueOf(value);
+        return value instanceof String && !text.matches("[\\w.@-]+") ? '"' + text + '"' : text;
+    }
+}
@@ -0,0 +1,109 @@
+package edu.ccrm.query;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.Student;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The kinds of record a query can return, and the attributes each one can
+ * be filtered and sorted by.
+ */
+public final class Entity<T> {
+
+    public static final Entity<Student> STUDENTS = new Entity<>("students", List.of(
+            new Attribute<Student>("regNo", String.class, Student::getRegNo),
+            new Attribute<Student>("id", Long.class, Student::getId),
+            new Attribute<Student>("name", String.class, Student::getFullName),
+            new Attribute<Student>("email", String.class, Student::getEmail),
+            new Attribute<Student>("status", Student.Status.class, Student::getStatus),
+            new Attribute<Student>("gpa", Double.class, Student::calculateGpa),
+            new Attribute<Student>("enrollments", Integer.class, Student::getEnrollmentCount),
+            new Attribute<Student>("registered", LocalDate.class, Student::getRegistrationDate)));
+
+    public static final Entity<Course> COURSES = new Entity<>("courses", List.of(
+            new Attribute<Course>("code", String.class, Course::getCode),
+            new Attribute<Course>("title", String.class, Course::getTitle),
+            new Attribute<Course>("credits", Integer.class, Course::getCredits),
+            new Attribute<Course>("department", String.class, Course::getDepartment, true),
+            new Attribute<Course>("semester", Semester.class, Course::getSemester),
+            new Attribute<Course>("instructor", Long.class,
+                    c -> c.getInstructor() == null ? null : c.getInstructor().getId())));
+
+    // Course attributes of an enrollment are read from the course it refers to
+    public static final Entity<Enrollment> ENROLLMENTS = new Entity<>("enrollments", List.of(
+            new Attribute<Enrollment>("regNo", String.class,
+                    e -> e.getStudent() == null ? null : e.getStudent().getRegNo()),
+            new Attribute<Enrollment>("course", String.class, Enrollment::getCourseCode),
+            new Attribute<Enrollment>("grade", Grade.class, Enrollment::getGrade),
+            new Attribute<Enrollment>("date", LocalDate.class, Enrollment::getEnrollmentDate),
+            new Attribute<Enrollment>("credits", Integer.class,
+                    e -> courseOf(e) == null ? null : courseOf(e).getCredits()),
+            new Attribute<Enrollment>("department", String.class,
+                    e -> courseOf(e) == null ? null : courseOf(e).getDepartment(), true),
+            new Attribute<Enrollment>("semester", Semester.class,
+                    e -> courseOf(e) == null ? null : courseOf(e).getSemester())));
+
+    private static final List<Entity<?>> ALL = List.of(STUDENTS, COURSES, ENROLLMENTS);
+
+    private final String name;
+    private final Map<String, Attribute<T>> attributes = new LinkedHashMap<>(); // Key: lower-cased name
+
+    private Entity(String name, List<Attribute<T>> attributes) {
+        this.name = name;
+        for (Attribute<T> attribute : attributes) {
+            this.attributes.put(attribute.getName().toLowerCase(Locale.ROOT), attribute);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getAttributeNames() {
+        List<String> names = new ArrayList<>();
+        attributes.values().forEach(a -> names.add(a.getName()));
+        return names;
+    }
+
+    public static List<Entity<?>> all() {
+        return ALL;
+    }
+
+    // The entity with the given name (case-insensitive), or null
+    static Entity<?> forName(String name) {
+        for (Entity<?> entity : ALL) {
+            if (entity.name.equalsIgnoreCase(name)) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    Attribute<T> attribute(String attributeName) {
+        Attribute<T> attribute = attributes.get(attributeName.toLowerCase(Locale.ROOT));
+        if (attribute == null) {
+            throw new IllegalArgumentException("Unknown attribute of " + name + ": " + attributeName
+                    + " (one of " + String.join(", ", getAttributeNames()) + ")");
+        }
+        return attribute;
+    }
+
+    private static Course courseOf(Enrollment enrollment) {
+        return DataStore.getInstance().courses.get(enrollment.getCourseCode());
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
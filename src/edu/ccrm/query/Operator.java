@@ -0,0 +1,33 @@
+package edu.ccrm.query;
+
+// Comparison operators of a query condition, with their spelling in the text syntax
+public enum Operator {
+    EQ("="),
+    NE("!="),
+    LT("<"),
+    LE("<="),
+    GT(">"),
+    GE(">="),
+    BETWEEN("between"),
+    CONTAINS("contains");
+
+    private final String symbol;
+
+    Operator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    // The operator written as the given symbol or keyword, or null
+    static Operator fromSymbol(String symbol) {
+        for (Operator operator : values()) {
+            if (operator.symbol.equalsIgnoreCase(symbol)) {
+                return operator;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,228 @@
+package edu.ccrm.query;
+
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Student;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An ad-hoc query over one entity: conditions that must all hold, an
+ * optional sort order and an optional page (offset and limit). Queries are
+ * immutable; build them with {@link #students()}, {@link #courses()} or
+ * {@link #enrollments()}, or parse the text syntax with {@link #parse(String)}:
+ * <pre>
+ * courses where department = CS and credits between 3 and 4 order by code limit 10
+ * students where status = ACTIVE order by gpa desc limit 20 page 2
+ * enrollments where course = CSE101 and grade = A
+ * </pre>
+ * Run them with a {@link QueryEngine}.
+ */
+public final class Query<T> {
+
+    private final Entity<T> entity;
+    private final List<Condition<T>> conditions;
+    private final List<Order<T>> ordering;
+    private final long offset;
+    private final long limit; // -1 means no limit
+
+    private Query(Builder<T> builder) {
+        this.entity = builder.entity;
+        this.conditions = Collections.unmodifiableList(new ArrayList<>(builder.conditions));
+        this.ordering = Collections.unmodifiableList(new ArrayList<>(builder.ordering));
+        this.offset = builder.offset;
+        this.limit = builder.limit;
+    }
+
+    public static Builder<Student> students() {
+        return new Builder<>(Entity.STUDENTS);
+    }
+
+    public static Builder<Course> courses() {
+        return new Builder<>(Entity.COURSES);
+    }
+
+    public static Builder<Enrollment> enrollments() {
+        return new Builder<>(Entity.ENROLLMENTS);
+    }
+
+    /**
+     * Parses a query written in the text syntax.
+     *
+     * @param text E.g. "courses where semester = FALL order by credits desc limit 5".
+     * @return The query; its entity decides the type of the results.
+     * @throws QueryException If the text is not a valid query.
+     */
+    public static Query<?> parse(String text) throws QueryException {
+        return new QueryParser(text).parse();
+    }
+
+    public Entity<T> getEntity() {
+        return entity;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    List<Condition<T>> getConditions() {
+        return conditions;
+    }
+
+    List<Order<T>> getOrdering() {
+        return ordering;
+    }
+
+    // The value of the first "attribute = value" condition, or null if there is none
+    Object equalityValue(String attributeName) {
+        for (Condition<T> condition : conditions) {
+            if (condition.getOperator() == Operator.EQ
+                    && condition.getAttribute().getName().equalsIgnoreCase(attributeName)) {
+                return condition.getValue();
+            }
+        }
+        return null;
+    }
+
+    Comparator<T> comparator() {
+        Comparator<T> comparator = null;
+        for (Order<T> order : ordering) {
+            comparator = comparator == null ? order.comparator() : comparator.thenComparing(order.comparator());
+        }
+        return comparator;
+    }
+
+    // The query in the text syntax
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(entity.getName());
+        for (int i = 0; i < conditions.size(); i++) {
+            text.append(i == 0 ? " where " : " and ").append(conditions.get(i));
+        }
+        for (int i = 0; i < ordering.size(); i++) {
+            text.append(i == 0 ? " order by " : ", ").append(ordering.get(i));
+        }
+        if (limit >= 0) {
+            text.append(" limit ").append(limit);
+        }
+        if (offset > 0) {
+            text.append(" offset ").append(offset);
+        }
+        return text.toString();
+    }
+
+    // One sort key
+    static final class Order<T> {
+        private final Attribute<T> attribute;
+        private final boolean ascending;
+
+        Order(Attribute<T> attribute, boolean ascending) {
+            this.attribute = attribute;
+            this.ascending = ascending;
+        }
+
+        Attribute<T> getAttribute() {
+            return attribute;
+        }
+
+        boolean isAscending() {
+            return ascending;
+        }
+
+        // Missing values sort last in either direction
+        Comparator<T> comparator() {
+            Comparator<Object> values = ascending ? Condition::compare : (a, b) -> Condition.compare(b, a);
+            return Comparator.comparing(attribute::valueOf, Comparator.nullsLast(values));
+        }
+
+        @Override
+        public String toString() {
+            return attribute.getName() + (ascending ? " asc" : " desc");
+        }
+    }
+
+    /**
+     * Builds a query step by step. Attribute names are those of the entity
+     * (see {@link Entity#getAttributeNames()}); values may be given typed or
+     * as text, and are checked when they are added.
+     */
+    public static final class Builder<T> {
+        private final Entity<T> entity;
+        private final List<Condition<T>> conditions = new ArrayList<>();
+        private final List<Order<T>> ordering = new ArrayList<>();
+        private long offset = 0;
+        private long limit = -1;
+
+        Builder(Entity<T> entity) {
+            this.entity = entity;
+        }
+
+        /**
+         * Adds a condition.
+         *
+         * @throws IllegalArgumentException If the attribute is unknown or the value invalid.
+         */
+        public Builder<T> where(String attribute, Operator operator, Object value) {
+            if (operator == Operator.BETWEEN) {
+                throw new IllegalArgumentException("Use between(attribute, low, high) for a range.");
+            }
+            conditions.add(new Condition<>(entity.attribute(attribute), operator, value, null));
+            return this;
+        }
+
+        public Builder<T> eq(String attribute, Object value) {
+            return where(attribute, Operator.EQ, value);
+        }
+
+        // Both bounds are inclusive
+        public Builder<T> between(String attribute, Object low, Object high) {
+            conditions.add(new Condition<>(entity.attribute(attribute), Operator.BETWEEN, low, high));
+            return this;
+        }
+
+        public Builder<T> orderBy(String attribute) {
+            return orderBy(attribute, true);
+        }
+
+        // Later keys break ties of earlier ones
+        public Builder<T> orderBy(String attribute, boolean ascending) {
+            ordering.add(new Order<>(entity.attribute(attribute), ascending));
+            return this;
+        }
+
+        public Builder<T> limit(long limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("Limit must not be negative.");
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public Builder<T> offset(long offset) {
+            if (offset < 0) {
+                throw new IllegalArgumentException("Offset must not be negative.");
+            }
+            this.offset = offset;
+            return this;
+        }
+
+        // Pages are numbered from 1
+        public Builder<T> page(long page, long size) {
+            if (page < 1) {
+                throw new IllegalArgumentException("Pages are numbered from 1.");
+            }
+            return limit(size).offset((page - 1) * size);
+        }
+
+        public Query<T> build() {
+            return new Query<>(this);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package edu.ccrm.query;
+
+import edu.ccrm.config.CourseShard;
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Instructor;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.Student;
+import edu.ccrm.service.StudentPager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs queries against the DataStore. A simple planner picks where the rows
+ * come from: a direct key lookup, the most selective course index, the GPA
+ * ranking (already in sort order), a course-restricted enrollment table scan,
+ * or, when nothing better applies, a full scan. The grade counters can also
+ * show that an enrollment query has no matches at all.
+ *
+ * When the store is sharded, a condition on the shard key (e.g. department =
+ * CS) reads only that shard, and an enrollment query that would otherwise
+ * scan every enrollment runs on all shards in parallel instead: each shard is
+ * filtered, sorted and cut to offset + limit on its own, and the partial
+ * results are merged.
+ *
+ * Results are streamed: conditions, offset and limit are applied lazily as
+ * rows are read, and only a sort that the source does not already provide
+ * collects the matching rows.
+ *
+ * Students paged out of memory ({@link StudentPager}) are found too: a key
+ * lookup goes through the pager, and any other student or enrollment query
+ * also reads the archive, keeping its matching rows, while the pager holds
+ * everybody in place. The indexes, the ranking and the grade counters only
+ * cover the students in memory, so they then serve only that part.
+ */
+public class QueryEngine {
+
+    private final DataStore dataStore = DataStore.getInstance();
+    private final StudentPager pager = StudentPager.getInstance();
+
+    public <T> Stream<T> stream(Query<T> query) {
+        return plan(query).stream();
+    }
+
+    /**
+     * Chooses how to execute the query without running it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Plan<T> plan(Query<T> query) {
+        Entity<T> entity = query.getEntity();
+        if (entity == Entity.STUDENTS) {
+            return (Plan<T>) planStudents((Query<Student>) query);
+        } else if (entity == Entity.COURSES) {
+            return (Plan<T>) planCourses((Query<Course>) query);
+        } else {
+            return (Plan<T>) planEnrollments((Query<Enrollment>) query);
+        }
+    }
+
+    private Plan<Student> planStudents(Query<Student> query) {
+        Object regNo = query.equalityValue("regNo");
+        if (regNo != null) {
+            return new Plan<>(query, "key lookup students[regNo = " + regNo + "]", false,
+                    () -> Stream.ofNullable(pager.find((String) regNo)));
+        }
+        Plan<Student> resident = planResidentStudents(query);
+        return pager.hasArchived() ? withArchived(query, resident, Stream::of) : resident;
+    }
+
+    private Plan<Student> planResidentStudents(Query<Student> query) {
+        // The ranking is kept in GPA order, so sorting by GPA alone needs no sort step and stops at the limit
+        if (query.getOrdering().size() == 1 && query.getOrdering().get(0).getAttribute().getName().equals("gpa")) {
+            boolean highestFirst = !query.getOrdering().get(0).isAscending();
+            return new Plan<>(query, "ordered index gpaRanking (" + (highestFirst ? "highest" : "lowest") + " first)",
+                    true, () -> dataStore.gpaRanking.stream(highestFirst));
+        }
+        return new Plan<>(query, "full scan of " + dataStore.students.size() + " students", false,
+                () -> dataStore.students.values().stream());
+    }
+
+    private Plan<Course> planCourses(Query<Course> query) {
+        Object code = query.equalityValue("code");
+        if (code != null) {
+            return new Plan<>(query, "key lookup courses[code = " + code + "]", false,
+                    () -> Stream.ofNullable(dataStore.courses.get((String) code)));
+        }
+
+        // Of the indexed conditions, use the one with the fewest matches
+        int total = dataStore.courses.size();
+        String access = "full scan of " + total + " courses";
+        Supplier<Stream<Course>> source = () -> dataStore.courses.values().stream();
+        int best = total;
+        Object department = query.equalityValue("department");
+        if (department != null && dataStore.courseIndex.countByDepartment((String) department) <= best) {
+            best = dataStore.courseIndex.countByDepartment((String) department);
+            access = "index courseIndex.department = " + department;
+            source = () -> dataStore.courseIndex.findByDepartment((String) department).stream();
+        }
+        Object semester = query.equalityValue("semester");
+        if (semester != null && dataStore.courseIndex.countBySemester((Semester) semester) < best) {
+            best = dataStore.courseIndex.countBySemester((Semester) semester);
+            access = "index courseIndex.semester = " + semester;
+            source = () -> dataStore.courseIndex.findBySemester((Semester) semester).stream();
+        }
+        Object instructorId = query.equalityValue("instructor");
+        if (instructorId != null) {
+            Instructor instructor = dataStore.instructors.get((Long) instructorId);
+            if (dataStore.courseIndex.countByInstructor(instructor) < best) {
+                best = dataStore.courseIndex.countByInstructor(instructor);
+                access = "index courseIndex.instructor = " + instructorId;
+                source = () -> dataStore.courseIndex.findByInstructor(instructor).stream();
+            }
+        }
+        // A shard holds the same courses as the index on its key, and is preferred on a tie
+        CourseShard shard = shardOf(query);
+        if (shard != null && shard.courseCount() <= best) {
+            best = shard.courseCount();
+            access = "shard " + shard.getName();
+            source = () -> shard.getCourses().values().stream();
+        }
+        if (best < total) {
+            access += " (" + best + " of " + total + " courses)";
+        }
+        return new Plan<>(query, access, false, source);
+    }
+
+    private Plan<Enrollment> planEnrollments(Query<Enrollment> query) {
+        Object courseCode = query.equalityValue("course");
+        Object grade = query.equalityValue("grade");
+        if (grade != null && !pager.hasArchived()) {
+            // The live grade counters answer "are there any?" without touching a row
+            Object semester = query.equalityValue("semester");
+            Map<Grade, Long> counts;
+            String scope;
+            if (courseCode != null) {
+                counts = dataStore.enrollmentTable.gradeCounts((String) courseCode);
+                scope = "course " + courseCode;
+            } else if (semester != null) {
+                counts = dataStore.enrollmentTable.gradeCounts((Semester) semester);
+                scope = "semester " + semester;
+            } else {
+                counts = dataStore.enrollmentTable.gradeCounts();
+                scope = "any course";
+            }
+            if (!counts.containsKey((Grade) grade)) {
+                return new Plan<>(query, "none: grade counters show no " + grade + " grades in " + scope, false,
+                        Stream::empty);
+            }
+        }
+        Object regNo = query.equalityValue("regNo");
+        if (regNo != null) {
+            return new Plan<>(query, "key lookup students[regNo = " + regNo + "].enrollments", false, () -> {
+                Student student = pager.find((String) regNo);
+                return student == null ? Stream.empty() : student.getEnrolledCourses().stream();
+            });
+        }
+        Plan<Enrollment> resident = planResidentEnrollments(query, courseCode);
+        return pager.hasArchived() ? withArchived(query, resident, s -> s.getEnrolledCourses().stream()) : resident;
+    }
+
+    private Plan<Enrollment> planResidentEnrollments(Query<Enrollment> query, Object courseCode) {
+        int total = dataStore.enrollmentTable.size();
+        if (courseCode != null) {
+            return new Plan<>(query, "row list of course " + courseCode + " ("
+                    + dataStore.enrollmentTable.count((String) courseCode) + " of " + total + " enrollments)",
+                    false, () -> dataStore.enrollmentTable.stream((String) courseCode));
+        }
+        if (dataStore.isSharded()) {
+            CourseShard shard = shardOf(query);
+            if (shard != null) {
+                return new Plan<>(query, "shard " + shard.getName() + " (" + shard.enrollmentCount() + " of "
+                        + total + " enrollments)", false, shard::enrollments);
+            }
+            if (query.equalityValue(dataStore.shardKey.getAttribute()) != null) {
+                return new Plan<>(query, "none: no shard for " + dataStore.shardKey.getAttribute() + " = "
+                        + query.equalityValue(dataStore.shardKey.getAttribute()), false, Stream::empty);
+            }
+            List<CourseShard> shards = dataStore.shards();
+            List<Supplier<Stream<Enrollment>>> parts = shards.stream()
+                    .map(s -> (Supplier<Stream<Enrollment>>) s::enrollments)
+                    .collect(Collectors.toList());
+            return new Plan<>(query, "parallel scan of " + shards.size() + " shards (" + total + " enrollments)",
+                    parts);
+        }
+        return new Plan<>(query, "full scan of " + total + " enrollments", false,
+                () -> dataStore.enrollmentTable.stream());
+    }
+
+    /**
+     * Adds the rows of the paged-out students to a plan over the students in
+     * memory. Both parts are read while the pager holds everybody in place,
+     * so each student is seen once; only the matching rows are kept.
+     */
+    private <T> Plan<T> withArchived(Query<T> query, Plan<T> resident, Function<Student, Stream<T>> rowsOf) {
+        String access = resident.access + " + scan of " + pager.getStats().getArchived() + " archived students";
+        return new Plan<>(query, access, false, () -> {
+            try {
+                return pager.archivedStudents(archived -> resident.filter(Stream.concat(resident.rows(),
+                        StreamSupport.stream(archived.spliterator(), false).flatMap(rowsOf)))
+                        .collect(Collectors.toList())).stream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Not thrown: the action does no I/O
+            }
+        });
+    }
+
+    // The shard named by an equality condition on the shard key, or null
+    private CourseShard shardOf(Query<?> query) {
+        if (!dataStore.isSharded()) {
+            return null;
+        }
+        Object keyValue = query.equalityValue(dataStore.shardKey.getAttribute());
+        return keyValue == null ? null : dataStore.shardFor(keyValue);
+    }
+
+    /**
+     * How a query will be executed: where its rows come from, and which
+     * filter, sort and paging steps follow.
+     */
+    public static final class Plan<T> {
+        private final Query<T> query;
+        private final String access;
+        private final boolean sortNeeded;
+        private final Supplier<Stream<T>> source;
+        private final List<Supplier<Stream<T>>> parts; // Shards read in parallel, or null
+
+        Plan(Query<T> query, String access, boolean sourceIsSorted, Supplier<Stream<T>> source) {
+            this.query = query;
+            this.access = access;
+            this.sortNeeded = !sourceIsSorted && !query.getOrdering().isEmpty();
+            this.source = source;
+            this.parts = null;
+        }
+
+        // A fan-out plan over several independent sources
+        Plan(Query<T> query, String access, List<Supplier<Stream<T>>> parts) {
+            this.query = query;
+            this.access = access;
+            this.sortNeeded = !query.getOrdering().isEmpty();
+            this.source = null;
+            this.parts = parts;
+        }
+
+        // The rows of the source before any step; the parts of a fan-out plan are read one after another
+        private Stream<T> rows() {
+            return parts != null ? parts.stream().flatMap(Supplier::get) : source.get();
+        }
+
+        // Runs the plan; nothing is read until the stream is consumed, except the parts of a fan-out plan
+        public Stream<T> stream() {
+            Stream<T> rows = parts != null ? fanOut() : filter(source.get());
+            if (sortNeeded) {
+                rows = rows.sorted(query.comparator());
+            }
+            return page(rows);
+        }
+
+        // Reads every part in parallel, keeping only the rows that can make it into the page
+        private Stream<T> fanOut() {
+            long keep = query.getLimit() >= 0 ? query.getOffset() + query.getLimit() : -1;
+            List<List<T>> partial = parts.parallelStream().map(part -> {
+                Stream<T> rows = filter(part.get());
+                if (sortNeeded) {
+                    rows = rows.sorted(query.comparator());
+                }
+                if (keep >= 0) {
+                    rows = rows.limit(keep);
+                }
+                return rows.collect(Collectors.toList());
+            }).collect(Collectors.toList());
+            return partial.stream().flatMap(List::stream);
+        }
+
+        private Stream<T> filter(Stream<T> rows) {
+            for (Condition<T> condition : query.getConditions()) {
+                rows = rows.filter(condition);
+            }
+            return rows;
+        }
+
+        private Stream<T> page(Stream<T> rows) {
+            if (query.getOffset() > 0) {
+                rows = rows.skip(query.getOffset());
+            }
+            if (query.getLimit() >= 0) {
+                rows = rows.limit(query.getLimit());
+            }
+            return rows;
+        }
+
+        public String describe() {
+            StringBuilder text = new StringBuilder(access);
+            if (!query.getConditions().isEmpty()) {
+                text.append(" -> filter ");
+                for (int i = 0; i < query.getConditions().size(); i++) {
+                    text.append(i == 0 ? "" : " and ").append(query.getConditions().get(i));
+                }
+            }
+            if (sortNeeded) {
+                text.append(" -> sort by ");
+                for (int i = 0; i < query.getOrdering().size(); i++) {
+                    text.append(i == 0 ? "" : ", ").append(query.getOrdering().get(i));
+                }
+            }
+            if (query.getOffset() > 0) {
+                text.append(" -> skip ").append(query.getOffset());
+            }
+            if (query.getLimit() >= 0) {
+                text.append(" -> limit ").append(query.getLimit());
+            }
+            return text.toString();
+        }
+
+        @Override
+        public String toString() {
+            return describe();
+        }
+    }
+}
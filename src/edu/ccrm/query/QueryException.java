@@ -0,0 +1,13 @@
+package edu.ccrm.query;
+
+/**
+ * Thrown when a query is malformed: unknown entity or attribute, a value of
+ * the wrong type, or text that does not follow the query syntax.
+ */
+public class QueryException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public QueryException(String message) {
+        super(message);
+    }
+}
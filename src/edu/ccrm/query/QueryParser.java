@@ -0,0 +1,173 @@
+package edu.ccrm.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the query text syntax (keywords are case-insensitive):
+ * <pre>
+ * entity [where condition (and condition)*]
+ *        [order by attribute [asc|desc] (, attribute [asc|desc])*]
+ *        [limit n] [offset n | page n]
+ *
+ * condition: attribute (= | != | &lt; | &lt;= | &gt; | &gt;= | contains) value
+ *          | attribute between value and value
+ * </pre>
+ * Values containing spaces are written in double quotes. "page n" needs a
+ * limit, which is then the page size.
+ */
+final class QueryParser {
+
+    private final String text;
+    private final List<String> tokens = new ArrayList<>();
+    private final List<Boolean> quoted = new ArrayList<>();
+    private int position = 0;
+
+    QueryParser(String text) {
+        this.text = text;
+    }
+
+    Query<?> parse() throws QueryException {
+        tokenize();
+        String entityName = next("an entity (students, courses or enrollments)");
+        Entity<?> entity = Entity.forName(entityName);
+        if (entity == null) {
+            throw new QueryException("Unknown entity: " + entityName + " (use students, courses or enrollments)");
+        }
+        try {
+            return parse(new Query.Builder<>(entity));
+        } catch (IllegalArgumentException e) {
+            throw new QueryException(e.getMessage());
+        }
+    }
+
+    private <T> Query<T> parse(Query.Builder<T> builder) throws QueryException {
+        if (accept("where")) {
+            do {
+                String attribute = next("an attribute");
+                String operatorText = next("an operator");
+                Operator operator = Operator.fromSymbol(operatorText);
+                if (operator == null) {
+                    throw new QueryException("Unknown operator: " + operatorText);
+                }
+                if (operator == Operator.BETWEEN) {
+                    String low = next("a lower bound");
+                    expectKeyword("and");
+                    builder.between(attribute, low, next("an upper bound"));
+                } else {
+                    builder.where(attribute, operator, next("a value"));
+                }
+            } while (accept("and"));
+        }
+        if (accept("order")) {
+            expectKeyword("by");
+            do {
+                String attribute = next("an attribute to sort by");
+                boolean ascending = !accept("desc");
+                if (ascending) {
+                    accept("asc");
+                }
+                builder.orderBy(attribute, ascending);
+            } while (accept(","));
+        }
+        long limit = -1;
+        long offset = -1;
+        long page = -1;
+        while (position < tokens.size()) {
+            if (accept("limit")) {
+                limit = number("limit");
+            } else if (accept("offset")) {
+                offset = number("offset");
+            } else if (accept("page")) {
+                page = number("page");
+            } else {
+                throw new QueryException("Unexpected '" + tokens.get(position) + "' in: " + text);
+            }
+        }
+        if (page >= 0 && (limit < 0 || offset >= 0)) {
+            throw new QueryException("page needs a limit (the page size) and cannot be combined with offset.");
+        }
+        if (page >= 0) {
+            builder.page(page, limit);
+        } else {
+            if (limit >= 0) {
+                builder.limit(limit);
+            }
+            if (offset >= 0) {
+                builder.offset(offset);
+            }
+        }
+        return builder.build();
+    }
+
+    // Splits into words, "quoted values" and the symbols = != < <= > >= and ,
+    private void tokenize() throws QueryException {
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = text.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new QueryException("Unterminated quoted value in: " + text);
+                }
+                add(text.substring(i + 1, end), true);
+                i = end + 1;
+            } else if (c == ',' || c == '=') {
+                add(String.valueOf(c), false);
+                i++;
+            } else if (c == '<' || c == '>' || c == '!') {
+                boolean withEquals = i + 1 < text.length() && text.charAt(i + 1) == '=';
+                if (c == '!' && !withEquals) {
+                    throw new QueryException("Expected '!=' in: " + text);
+                }
+                add(text.substring(i, withEquals ? i + 2 : i + 1), false);
+                i += withEquals ? 2 : 1;
+            } else {
+                int start = i;
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                        && "\",=<>!".indexOf(text.charAt(i)) < 0) {
+                    i++;
+                }
+                add(text.substring(start, i), false);
+            }
+        }
+    }
+
+    private void add(String token, boolean isQuoted) {
+        tokens.add(token);
+        quoted.add(isQuoted);
+    }
+
+    private String next(String expected) throws QueryException {
+        if (position >= tokens.size()) {
+            throw new QueryException("Expected " + expected + " at the end of: " + text);
+        }
+        return tokens.get(position++);
+    }
+
+    private long number(String keyword) throws QueryException {
+        String value = next("a number after " + keyword);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new QueryException("Expected a number after " + keyword + " but got: " + value);
+        }
+    }
+
+    // Quoted tokens are values, never keywords or symbols
+    private boolean accept(String symbol) {
+        if (position < tokens.size() && !quoted.get(position) && tokens.get(position).equalsIgnoreCase(symbol)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectKeyword(String keyword) throws QueryException {
+        if (!accept(keyword)) {
+            throw new QueryException("Expected '" + keyword + "' in: " + text);
+        }
+    }
+}
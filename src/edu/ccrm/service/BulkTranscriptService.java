@@ -0,0 +1,178 @@
+package edu.ccrm.service;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.config.StoreSnapshot;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.StudentSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Renders transcripts for many students at once, e.g. for every student at
+ * the end of a term. Students are rendered in parallel in chunks, each chunk
+ * into one buffer, and the result is streamed either to one combined file
+ * (in registration number order) or to one file per student.
+ *
+ * The export reads a store snapshot taken when it starts, so every
+ * transcript shows the same moment even while grades are being assigned,
+ * and writers are not held up however long the export takes.
+ */
+public class BulkTranscriptService {
+
+    public enum Output {
+        COMBINED, PER_STUDENT
+    }
+
+    // Students rendered into one buffer by one task
+    private static final int CHUNK_SIZE = 256;
+
+    private final DataStore dataStore = DataStore.getInstance();
+
+    /**
+     * Writes the transcripts of every student accepted by the filter.
+     *
+     * @param filter Which students to include; use {@code s -> true} for all.
+     * @param target The combined file, or the directory for per-student files.
+     * @param output Whether to write one combined file or one file per student.
+     * @return How many transcripts and bytes were written, and how long it took.
+     * @throws IOException If a file cannot be written.
+     */
+    public Report exportTranscripts(Predicate<StudentSnapshot> filter, Path target, Output output)
+            throws IOException {
+        long start = System.nanoTime();
+        try (StoreSnapshot snapshot = dataStore.snapshot()) {
+            // 1. Select and order the students
+            List<StudentSnapshot> students = snapshot.studentsByRegNo(filter);
+            int chunkCount = (students.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+            // 2. Render and write
+            long bytes;
+            try {
+                if (output == Output.COMBINED) {
+                    bytes = writeCombined(students, snapshot::course, chunkCount, target);
+                } else {
+                    bytes = writePerStudent(students, snapshot::course, chunkCount, target);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return new Report(students.size(), bytes, System.nanoTime() - start, target);
+        }
+    }
+
+    // Renders a window of chunks in parallel, then appends them in order, so memory stays bounded
+    private long writeCombined(List<StudentSnapshot> students, Function<String, Course> courses, int chunkCount,
+            Path file) throws IOException {
+        int window = ForkJoinPool.commonPool().getParallelism() * 4;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Path tempPath = file.resolveSibling(file.getFileName() + ".tmp");
+        long bytes = 0;
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int first = 0; first < chunkCount; first += window) {
+                List<byte[]> rendered = IntStream.range(first, Math.min(first + window, chunkCount))
+                        .parallel()
+                        .mapToObj(chunk -> renderChunk(students, courses, chunk))
+                        .collect(Collectors.toList());
+                for (byte[] chunkBytes : rendered) {
+                    ByteBuffer buffer = ByteBuffer.wrap(chunkBytes);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    bytes += chunkBytes.length;
+                }
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(tempPath, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return bytes;
+    }
+
+    private long writePerStudent(List<StudentSnapshot> students, Function<String, Course> courses, int chunkCount,
+            Path directory) throws IOException {
+        Files.createDirectories(directory);
+        AtomicLong bytes = new AtomicLong();
+        IntStream.range(0, chunkCount).parallel().forEach(chunk -> {
+            StringBuilder text = new StringBuilder(1024);
+            int end = Math.min((chunk + 1) * CHUNK_SIZE, students.size());
+            for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                StudentSnapshot student = students.get(i);
+                text.setLength(0);
+                TranscriptRenderer.render(student, courses, text);
+                byte[] encoded = text.toString().getBytes(StandardCharsets.UTF_8);
+                try {
+                    Files.write(directory.resolve(student.getRegNo() + ".txt"), encoded);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not write transcript for " + student.getRegNo(), e);
+                }
+                bytes.addAndGet(encoded.length);
+            }
+        });
+        return bytes.get();
+    }
+
+    private byte[] renderChunk(List<StudentSnapshot> students, Function<String, Course> courses, int chunk) {
+        int end = Math.min((chunk + 1) * CHUNK_SIZE, students.size());
+        StringBuilder text = new StringBuilder(CHUNK_SIZE * 640);
+        for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+            TranscriptRenderer.render(students.get(i), courses, text);
+            text.append('\n'); // Blank line between transcripts
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // The outcome of one export
+    public static final class Report {
+        private final int transcripts;
+        private final long bytes;
+        private final long nanos;
+        private final Path target;
+
+        Report(int transcripts, long bytes, long nanos, Path target) {
+            this.transcripts = transcripts;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.target = target;
+        }
+
+        public int getTranscripts() {
+            return transcripts;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getTranscriptsPerSecond() {
+            return nanos == 0 ? 0.0 : transcripts / (nanos / 1_000_000_000.0);
+        }
+
+        public void print() {
+            System.out.printf("Wrote %d transcript(s), %d KB, to %s in %.1f ms (%.0f transcripts/s, %.1f MB/s)\n",
+                    transcripts, bytes / 1024, target, nanos / 1_000_000.0, getTranscriptsPerSecond(),
+                    nanos == 0 ? 0.0 : (bytes / 1_048_576.0) / (nanos / 1_000_000_000.0));
+        }
+    }
+}
@@ -13,4 +13,5 @@ public interface CourseService extends Persistable {
     List<Course> findCoursesByDepartment(String department);
     List<Course> findCoursesByInstructor(Instructor instructor);
     List<Course> findCoursesBySemester(Semester semester);
+    List<Course> searchCourses(String text, int limit);
 }
\ No newline at end of file
@@ -5,17 +5,25 @@ import edu.ccrm.domain.Course;
 import edu.ccrm.domain.Instructor;
 import edu.ccrm.domain.Semester;
 import edu.ccrm.io.FileService;
+import edu.ccrm.io.ParallelLoadReport;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class CourseServiceImpl implements CourseService {
 
     private final DataStore dataStore = DataStore.getInstance();
     private final FileService<Course> fileService = new FileService<>("courses.csv");
+    private final WriteBehindPersister persister = WriteBehindPersister.getInstance();
+    // Course codes changed since courses.csv was last loaded or saved
+    private final Set<String> dirtyCodes = ConcurrentHashMap.newKeySet();
+    // False until a load or save has made the file match memory (e.g. after a snapshot startup)
+    private volatile boolean fileInSync = false;
 
     @Override
     public void addCourse(Course course) {
@@ -23,7 +31,9 @@ public class CourseServiceImpl implements CourseService {
             System.out.println("Error: Course with code " + course.getCode() + " already exists.");
             return;
         }
-        dataStore.courses.put(course.getCode(), course);
+        dataStore.putCourse(course);
+        dirtyCodes.add(course.getCode());
+        persister.courseChanged(course.getCode());
         System.out.println("Successfully added course: " + course.getTitle());
     }
 
@@ -37,48 +47,111 @@ public class CourseServiceImpl implements CourseService {
         return new ArrayList<>(dataStore.courses.values());
     }
 
-    // Demonstrates Stream API and lambdas for filtering
+    // Served from the DataStore's course indexes rather than a catalogue scan
     @Override
     public List<Course> findCoursesByDepartment(String department) {
-        return dataStore.courses.values().stream()
-                .filter(course -> course.getDepartment().equalsIgnoreCase(department))
-                .collect(Collectors.toList());
+        return dataStore.courseIndex.findByDepartment(department);
     }
 
     @Override
     public List<Course> findCoursesByInstructor(Instructor instructor) {
-        return dataStore.courses.values().stream()
-                .filter(course -> course.getInstructor() != null && course.getInstructor().equals(instructor))
-                .collect(Collectors.toList());
+        return dataStore.courseIndex.findByInstructor(instructor);
     }
 
     @Override
     public List<Course> findCoursesBySemester(Semester semester) {
-        return dataStore.courses.values().stream()
-                .filter(course -> course.getSemester() == semester)
-                .collect(Collectors.toList());
+        return dataStore.courseIndex.findBySemester(semester);
+    }
+
+    // Ranked prefix search over titles and codes, e.g. "intro prog" or "cs1"
+    @Override
+    public List<Course> searchCourses(String text, int limit) {
+        return dataStore.courseSearch.search(text, limit);
     }
 
     @Override
     public void loadData() throws IOException {
-        List<Course> loadedCourses = fileService.readData(line -> {
-            String[] parts = line.split(",");
-            return new Course.Builder(parts[0], parts[1], Integer.parseInt(parts[2]))
-                    .department(parts[3])
-                    .semester(Semester.valueOf(parts[4].toUpperCase()))
-                    .build();
-        });
-        loadedCourses.forEach(c -> dataStore.courses.put(c.getCode(), c));
+        boolean wasEmpty = dataStore.courses.isEmpty();
+        List<Course> loadedCourses = fileService.readData(this::parseCourse);
+        loadedCourses.forEach(this::merge);
+        markInSync(wasEmpty);
         System.out.println("Loaded " + loadedCourses.size() + " courses.");
     }
 
+    @Override
+    public void loadDataParallel() throws IOException {
+        boolean wasEmpty = dataStore.courses.isEmpty();
+        if (wasEmpty) {
+            ParallelLoadReport report = fileService.readDataParallel(this::parseCourse, Course::getCode,
+                    dataStore.courses);
+            // Rows went straight into the map, so the indexes are rebuilt in one pass afterwards
+            dataStore.rebuildCourseIndexes();
+            markInSync(true);
+            System.out.println("Loaded " + report.getTotalRows() + " courses.");
+            report.print();
+            return;
+        }
+        // Courses already in memory may be read by open store snapshots, so rows are parsed in parallel but merged
+        // one by one through putCourse, which versions what it replaces and keeps the indexes in step
+        ConcurrentMap<String, Course> loaded = new ConcurrentHashMap<>();
+        ParallelLoadReport report = fileService.readDataParallel(this::parseCourse, Course::getCode, loaded);
+        loaded.values().forEach(this::merge);
+        markInSync(false);
+        System.out.println("Loaded " + report.getTotalRows() + " courses.");
+        report.print();
+    }
+
+    // Adds a loaded course, or replaces one whose row changed; the file has no instructors, so theirs is kept
+    private void merge(Course loaded) {
+        Course existing = dataStore.courses.get(loaded.getCode());
+        if (existing != null) {
+            if (sameRow(loaded, existing)) {
+                return;
+            }
+            if (existing.getInstructor() != null) {
+                loaded.assignInstructor(existing.getInstructor());
+            }
+        }
+        dataStore.putCourse(loaded);
+    }
+
+    private static boolean sameRow(Course a, Course b) {
+        return a.getTitle().equals(b.getTitle()) && a.getCredits() == b.getCredits()
+                && a.getDepartment().equals(b.getDepartment()) && a.getSemester() == b.getSemester();
+    }
+
+    private Course parseCourse(String line) {
+        String[] parts = line.split(",");
+        return new Course.Builder(parts[0], parts[1], Integer.parseInt(parts[2]))
+                .department(parts[3])
+                .semester(Semester.valueOf(parts[4].toUpperCase()))
+                .build();
+    }
+
     @Override
     public void saveData() throws IOException {
-        List<String> lines = dataStore.courses.values().stream()
-                .map(c -> String.join(",", c.getCode(), c.getTitle(), String.valueOf(c.getCredits()), c.getDepartment(),
-                        c.getSemester().name()))
-                .collect(Collectors.toList());
-        fileService.writeData(lines);
-        System.out.println("Saved " + lines.size() + " courses.");
+        if (fileInSync && dirtyCodes.isEmpty()) {
+            System.out.println("No course changes since last save; courses.csv left untouched.");
+            return;
+        }
+        // Only clear the changes this save covers; later edits stay dirty for the next save
+        List<String> savedChanges = new ArrayList<>(dirtyCodes);
+        long saved = fileService.writeRecords(dataStore.courses.values(), (c, line) -> line
+                .append(c.getCode()).append(',')
+                .append(c.getTitle()).append(',')
+                .append(c.getCredits()).append(',')
+                .append(c.getDepartment()).append(',')
+                .append(c.getSemester().name()));
+        dirtyCodes.removeAll(savedChanges);
+        fileInSync = true;
+        System.out.println("Saved " + saved + " courses (" + savedChanges.size() + " changed).");
+    }
+
+    // A load only merges the file into memory: courses it did not contain stay unsaved unless there were none
+    private void markInSync(boolean wasEmpty) {
+        if (wasEmpty) {
+            dirtyCodes.clear();
+        }
+        fileInSync = wasEmpty;
     }
 }
\ No newline at end of file
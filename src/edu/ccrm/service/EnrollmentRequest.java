@@ -0,0 +1,26 @@
+package edu.ccrm.service;
+
+// One (student, course) pair submitted to EnrollmentService.enrollBatch
+public final class EnrollmentRequest {
+
+    private final String regNo;
+    private final String courseCode;
+
+    public EnrollmentRequest(String regNo, String courseCode) {
+        this.regNo = regNo;
+        this.courseCode = courseCode;
+    }
+
+    public String getRegNo() {
+        return regNo;
+    }
+
+    public String getCourseCode() {
+        return courseCode;
+    }
+
+    @Override
+    public String toString() {
+        return regNo + " -> " + courseCode;
+    }
+}
@@ -0,0 +1,34 @@
+package edu.ccrm.service;
+
+// The outcome of one EnrollmentRequest, reported instead of printing or throwing
+public final class EnrollmentResult {
+
+    public enum Outcome {
+        ENROLLED, DUPLICATE, CREDIT_LIMIT_EXCEEDED, STUDENT_NOT_FOUND, COURSE_NOT_FOUND
+    }
+
+    private final EnrollmentRequest request;
+    private final Outcome outcome;
+
+    public EnrollmentResult(EnrollmentRequest request, Outcome outcome) {
+        this.request = request;
+        this.outcome = outcome;
+    }
+
+    public EnrollmentRequest getRequest() {
+        return request;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public boolean isSuccess() {
+        return outcome == Outcome.ENROLLED;
+    }
+
+    @Override
+    public String toString() {
+        return request + ": " + outcome;
+    }
+}
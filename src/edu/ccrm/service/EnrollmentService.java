@@ -2,65 +2,196 @@ package edu.ccrm.service;
 
 import edu.ccrm.config.DataStore;
 import edu.ccrm.domain.*;
+import edu.ccrm.io.WriteAheadLog;
+import edu.ccrm.util.StripedLocks;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class EnrollmentService {
 
     private static final int MAX_CREDITS_PER_SEMESTER = 18;
+
+    // Serialises check-then-act sequences per student across all EnrollmentService instances; the pager's,
+    // so a student is never paged out in the middle of one
+    private static final StripedLocks STUDENT_LOCKS = StudentPager.STUDENT_LOCKS;
+
     private final DataStore dataStore = DataStore.getInstance();
+    private final StudentPager pager = StudentPager.getInstance(); // Pages cold students back in on demand
+    private final WriteAheadLog wal = WriteAheadLog.getInstance();
+    private final WriteBehindPersister persister = WriteBehindPersister.getInstance();
+    private final TranscriptRenderer transcriptRenderer = new TranscriptRenderer(dataStore.courses);
 
     public void enrollStudent(String regNo, String courseCode)
             throws MaxCreditLimitExceededException, DuplicateEnrollmentException {
 
-        Student student = dataStore.students.get(regNo);
         Course course = dataStore.courses.get(courseCode);
+        // The checks and the update must be atomic, or two concurrent requests could both pass them
+        Student student = course == null ? null : pager.findLocked(regNo);
 
         if (student == null || course == null) {
             System.out.println("Error: Invalid student registration number or course code.");
             return;
         }
 
-        // Rule 1: Check for duplicate enrollment
-        boolean alreadyEnrolled = student.getEnrolledCourses().stream()
-                .anyMatch(e -> e.getCourseCode().equals(courseCode));
-        if (alreadyEnrolled) {
-            throw new DuplicateEnrollmentException("Student " + regNo + " is already enrolled in course " + courseCode);
+        ReentrantLock lock = STUDENT_LOCKS.lockFor(regNo); // Taken by findLocked
+        try {
+            switch (checkEnrollment(student, course, 0, false)) {
+                case DUPLICATE:
+                    throw new DuplicateEnrollmentException(
+                            "Student " + regNo + " is already enrolled in course " + courseCode);
+                case CREDIT_LIMIT_EXCEEDED:
+                    throw new MaxCreditLimitExceededException("Enrollment failed. Exceeds max credit limit of "
+                            + MAX_CREDITS_PER_SEMESTER + " for the semester.");
+                default:
+                    break;
+            }
+
+            applyEnrollment(student, course, new Enrollment(student.getId(), course.getCode()));
+        } finally {
+            lock.unlock();
+        }
+        persister.enrollmentChanged(regNo, courseCode); // Outside the lock: in sync mode this waits for the disk
+        System.out.println("Enrollment successful.");
+    }
+
+    /**
+     * Enrolls many (student, course) pairs at once. Requests are grouped by
+     * student and the groups are validated in parallel; within a group they are
+     * checked in submission order, so earlier requests count towards the credit
+     * limit of later ones. All accepted enrollments are then applied in bulk
+     * and handed to the persister as one commit. Nothing is printed and no
+     * exception is thrown for rejected requests.
+     *
+     * @param requests The requests to process.
+     * @return One result per request, in the same order as the requests.
+     */
+    public List<EnrollmentResult> enrollBatch(Collection<EnrollmentRequest> requests) {
+        List<EnrollmentRequest> ordered = new ArrayList<>(requests);
+        EnrollmentResult[] results = new EnrollmentResult[ordered.size()];
+
+        // 1. Group request positions by student, keeping submission order within each group
+        Map<String, List<Integer>> byStudent = new HashMap<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            byStudent.computeIfAbsent(ordered.get(i).getRegNo(), k -> new ArrayList<>()).add(i);
+        }
+
+        // The batch holds every involved student's lock from validation until it has been applied
+        List<ReentrantLock> locks = STUDENT_LOCKS.lockAll(byStudent.keySet());
+        try {
+            // 2. Validate each student's group independently, in parallel
+            List<AcceptedGroup> groups = byStudent.values().parallelStream()
+                    .map(positions -> validateGroup(ordered, positions, results))
+                    .filter(group -> !group.enrollments.isEmpty())
+                    .collect(Collectors.toList());
+
+            // 3. Apply every accepted enrollment
+            groups.parallelStream().forEach(group -> {
+                for (int i = 0; i < group.courses.size(); i++) {
+                    applyEnrollment(group.student, group.courses.get(i), group.enrollments.get(i));
+                }
+            });
+        } finally {
+            STUDENT_LOCKS.unlockAll(locks);
+        }
+        // 4. Persist them all as one change set, so sync mode pays for a single flush
+        List<EnrollmentRequest> accepted = new ArrayList<>();
+        for (EnrollmentResult result : results) {
+            if (result.getOutcome() == EnrollmentResult.Outcome.ENROLLED) {
+                accepted.add(result.getRequest());
+            }
+        }
+        persister.enrollmentsChanged(accepted);
+        return Arrays.asList(results);
+    }
+
+    public List<EnrollmentResult> enrollBatch(Stream<EnrollmentRequest> requests) {
+        return enrollBatch(requests.collect(Collectors.toList()));
+    }
+
+    // Checks one student's requests in order and records each outcome in results
+    private AcceptedGroup validateGroup(List<EnrollmentRequest> ordered, List<Integer> positions,
+            EnrollmentResult[] results) {
+        Student student = pager.find(ordered.get(positions.get(0)).getRegNo());
+        AcceptedGroup group = new AcceptedGroup(student);
+        int[] pendingCredits = new int[Semester.values().length];
+        Set<String> pendingCodes = new HashSet<>();
+
+        for (int position : positions) {
+            EnrollmentRequest request = ordered.get(position);
+            Course course = dataStore.courses.get(request.getCourseCode());
+            EnrollmentResult.Outcome outcome;
+            if (student == null) {
+                outcome = EnrollmentResult.Outcome.STUDENT_NOT_FOUND;
+            } else if (course == null) {
+                outcome = EnrollmentResult.Outcome.COURSE_NOT_FOUND;
+            } else {
+                outcome = checkEnrollment(student, course, pendingCredits[course.getSemester().ordinal()],
+                        pendingCodes.contains(course.getCode()));
+            }
+            if (outcome == EnrollmentResult.Outcome.ENROLLED) {
+                pendingCredits[course.getSemester().ordinal()] += course.getCredits();
+                pendingCodes.add(course.getCode());
+                group.courses.add(course);
+                group.enrollments.add(new Enrollment(student.getId(), course.getCode()));
+            }
+            results[position] = new EnrollmentResult(request, outcome);
         }
+        return group;
+    }
 
-        // Rule 2: Check for max credit limit
-        int currentCredits = student.getEnrolledCourses().stream()
-                .map(e -> dataStore.courses.get(e.getCourseCode()))
-                .filter(c -> c != null && c.getSemester() == course.getSemester())
-                .mapToInt(Course::getCredits)
-                .sum();
+    // Business rules shared by single and batch enrollment. pendingCredits and alreadyPending
+    // describe enrollments accepted earlier in the same batch but not yet applied.
+    private EnrollmentResult.Outcome checkEnrollment(Student student, Course course, int pendingCredits,
+            boolean alreadyPending) {
+        // Rule 1: Check for duplicate enrollment
+        if (alreadyPending || student.isEnrolledIn(course.getCode())) {
+            return EnrollmentResult.Outcome.DUPLICATE;
+        }
 
+        // Rule 2: Check for max credit limit (the student keeps a running total per semester)
+        int currentCredits = student.getSemesterCredits(course.getSemester()) + pendingCredits;
         if (currentCredits + course.getCredits() > MAX_CREDITS_PER_SEMESTER) {
-            throw new MaxCreditLimitExceededException("Enrollment failed. Exceeds max credit limit of "
-                    + MAX_CREDITS_PER_SEMESTER + " for the semester.");
+            return EnrollmentResult.Outcome.CREDIT_LIMIT_EXCEEDED;
         }
+        return EnrollmentResult.Outcome.ENROLLED;
+    }
 
-        Enrollment enrollment = new Enrollment(student.getId(), course.getCode());
-        student.addEnrollment(enrollment);
-        dataStore.enrollments.put(student.getId() + "_" + course.getCode(), enrollment);
-        System.out.println("Enrollment successful.");
+    private void applyEnrollment(Student student, Course course, Enrollment enrollment) {
+        student.addEnrollment(enrollment, course);
     }
 
     public void assignGrade(String regNo, String courseCode, Grade grade) {
-        Student student = dataStore.students.get(regNo);
+        Student student = pager.findLocked(regNo);
         if (student == null) {
             System.out.println("Error: Student not found.");
             return;
         }
 
-        Optional<Enrollment> enrollmentOpt = student.getEnrolledCourses().stream()
-                .filter(e -> e.getCourseCode().equals(courseCode))
-                .findFirst();
+        Optional<Enrollment> enrollmentOpt;
+        ReentrantLock lock = STUDENT_LOCKS.lockFor(regNo); // Taken by findLocked
+        try {
+            enrollmentOpt = student.findEnrollment(courseCode);
+            enrollmentOpt.ifPresent(enrollment -> enrollment.setGrade(grade));
+        } finally {
+            lock.unlock();
+        }
 
         if (enrollmentOpt.isPresent()) {
-            enrollmentOpt.get().setGrade(grade);
+            // The persister logs the grade the enrollment has when it flushes, so the latest one always wins
+            persister.enrollmentChanged(regNo, courseCode);
             System.out.println("Grade assigned successfully.");
         } else {
             System.out.println("Error: Student is not enrolled in this course.");
@@ -74,12 +205,123 @@ public class EnrollmentService {
     // Existing methods and fields
 
     public void recordGrade(String regNo, String courseCode, Grade grade) {
-
+        assignGrade(regNo, courseCode, grade);
         System.out.println("Grade " + grade + " recorded for student " + regNo + " in course " + courseCode);
     }
 
+    /**
+     * Re-applies the changes in the write-ahead log (students, courses,
+     * enrollments and grades, as written by the {@link WriteBehindPersister})
+     * on top of the students and courses currently loaded. Records that refer
+     * to unknown students or courses, or that are already reflected in
+     * memory, are skipped. Replayed records are not logged again.
+     */
+    public void replayLog() throws IOException {
+        int[] counts = new int[2]; // applied, skipped
+        wal.replay(fields -> {
+            if (applyLogRecord(fields)) {
+                counts[0]++;
+            } else {
+                counts[1]++;
+            }
+        });
+        System.out.println("Replayed " + counts[0] + " logged changes"
+                + (counts[1] > 0 ? " (" + counts[1] + " skipped)." : "."));
+    }
+
+    private boolean applyLogRecord(String[] fields) {
+        if (fields.length < 4) {
+            return false;
+        }
+        try {
+            switch (fields[0]) {
+                case WriteBehindPersister.STUDENT_RECORD:
+                    return fields.length == 7 && applyStudentRecord(fields);
+                case WriteBehindPersister.COURSE_RECORD:
+                    return fields.length == 7 && applyCourseRecord(fields);
+                default:
+                    break;
+            }
+            Student student = pager.findLocked(fields[1]);
+            if (student == null) {
+                return false;
+            }
+            try {
+                Optional<Enrollment> existing = student.findEnrollment(fields[2]);
+                switch (fields[0]) {
+                    case WriteBehindPersister.ENROLL_RECORD:
+                        Course course = dataStore.courses.get(fields[2]);
+                        if (existing.isPresent() || course == null) {
+                            return false;
+                        }
+                        applyEnrollment(student, course, new Enrollment(student.getId(), fields[2],
+                                LocalDate.ofEpochDay(Long.parseLong(fields[3]))));
+                        return true;
+                    case WriteBehindPersister.GRADE_RECORD:
+                        Grade grade = Grade.valueOf(fields[3]);
+                        if (existing.isEmpty() || existing.get().getGrade() == grade) {
+                            return false;
+                        }
+                        existing.get().setGrade(grade);
+                        return true;
+                    default:
+                        return false;
+                }
+            } finally {
+                STUDENT_LOCKS.lockFor(fields[1]).unlock();
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // S,regNo,id,fullName,email,status,registrationEpochDay: adds the student, or brings them up to date
+    private boolean applyStudentRecord(String[] fields) {
+        String fullName = WriteBehindPersister.unescape(fields[3]);
+        String email = WriteBehindPersister.unescape(fields[4]);
+        Student.Status status = Student.Status.valueOf(fields[5]);
+        Student student = pager.findLocked(fields[1]);
+        if (student == null) {
+            dataStore.putStudent(new Student(Long.parseLong(fields[2]), fullName, email, fields[1], status,
+                    LocalDate.ofEpochDay(Long.parseLong(fields[6]))));
+            return true;
+        }
+        try {
+            boolean changed = false;
+            if (!fullName.equals(student.getFullName()) || !email.equals(student.getEmail())) {
+                dataStore.studentSearch.update(student, () -> {
+                    student.setFullName(fullName);
+                    student.setEmail(email);
+                });
+                changed = true;
+            }
+            if (student.getStatus() != status) {
+                student.setStatus(status);
+                changed = true;
+            }
+            return changed;
+        } finally {
+            STUDENT_LOCKS.lockFor(fields[1]).unlock();
+        }
+    }
+
+    // C,code,title,credits,department,semester,instructorId: adds the course if it is missing
+    private boolean applyCourseRecord(String[] fields) {
+        if (dataStore.courses.containsKey(fields[1])) {
+            return false;
+        }
+        long instructorId = Long.parseLong(fields[6]);
+        dataStore.putCourse(new Course.Builder(fields[1], WriteBehindPersister.unescape(fields[2]),
+                Integer.parseInt(fields[3]))
+                .department(WriteBehindPersister.unescape(fields[4]))
+                .semester(Semester.valueOf(fields[5]))
+                .instructor(instructorId < 0 ? null : dataStore.instructors.get(instructorId))
+                .build());
+        return true;
+    }
+
     public double calculateGpa(String regNo) {
-        Student student = dataStore.students.get(regNo);
+        Student student = pager.find(regNo);
         if (student == null)
             return 0.0;
 
@@ -105,39 +347,37 @@ public class EnrollmentService {
     }
 
     public String generateTranscript(String regNo) {
-        Optional<Student> studentOpt = Optional.ofNullable(dataStore.students.get(regNo));
+        Optional<Student> studentOpt = Optional.ofNullable(pager.find(regNo));
         if (studentOpt.isEmpty()) {
             return "Transcript Generation Failed: Student not found.";
         }
 
-        Student student = studentOpt.get();
-        StringBuilder transcript = new StringBuilder();
-        transcript.append("========================================\n");
-        transcript.append("      ACADEMIC TRANSCRIPT\n");
-        transcript.append("========================================\n");
-        transcript.append(String.format("Student Name: %s\n", student.getFullName()));
-        transcript.append(String.format("Reg. Number: %s\n", student.getRegNo()));
-        transcript.append("----------------------------------------\n");
-        transcript.append(String.format("%-10s %-30s %-8s %-5s\n", "Code", "Course Title", "Credits", "Grade"));
-        transcript.append("----------------------------------------\n");
-
-        // This loop demonstrates polymorphism. The `toString()` method of each object
-        // (Course, Grade) is called implicitly to build the string.
-        for (Enrollment enrollment : student.getEnrolledCourses()) {
-            Course course = dataStore.courses.get(enrollment.getCourseCode());
-            if (course != null) {
-                transcript.append(String.format("%-10s %-30s %-8d %-5s\n",
-                        course.getCode(),
-                        course.getTitle(),
-                        course.getCredits(),
-                        enrollment.getGrade().name()));
-            }
-        }
+        StringBuilder transcript = new StringBuilder(512);
+        transcriptRenderer.render(studentOpt.get(), transcript);
+        return transcript.toString();
+    }
 
-        transcript.append("----------------------------------------\n");
-        transcript.append(String.format("Cumulative GPA: %.2f\n", calculateGpa(regNo)));
-        transcript.append("========================================\n");
+    // Number of enrollments per grade; read from live counters, so the cost does not grow with enrollments
+    public Map<Grade, Long> getGradeDistribution() {
+        return dataStore.enrollmentTable.gradeCounts();
+    }
 
-        return transcript.toString();
+    public Map<Grade, Long> getGradeDistribution(Semester semester) {
+        return dataStore.enrollmentTable.gradeCounts(semester);
+    }
+
+    public Map<Grade, Long> getCourseGradeDistribution(String courseCode) {
+        return dataStore.enrollmentTable.gradeCounts(courseCode);
+    }
+
+    // Enrollments accepted for one student during a batch, not yet applied
+    private static class AcceptedGroup {
+        private final Student student;
+        private final List<Course> courses = new ArrayList<>();
+        private final List<Enrollment> enrollments = new ArrayList<>();
+
+        AcceptedGroup(Student student) {
+            this.student = student;
+        }
     }
 }
\ No newline at end of file
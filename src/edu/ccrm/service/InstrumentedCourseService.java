@@ -0,0 +1,74 @@
+package edu.ccrm.service;
+
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Instructor;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.util.OperationMetrics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Wraps a CourseService and records the latency and error count of every
+ * call in {@link OperationMetrics} under "course.&lt;method&gt;".
+ */
+public class InstrumentedCourseService implements CourseService {
+
+    private final CourseService delegate;
+    private final OperationMetrics metrics = OperationMetrics.getInstance();
+
+    public InstrumentedCourseService(CourseService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void addCourse(Course course) {
+        metrics.run("course.addCourse", () -> delegate.addCourse(course));
+    }
+
+    @Override
+    public Optional<Course> findCourseByCode(String code) {
+        return metrics.time("course.findCourseByCode", () -> delegate.findCourseByCode(code));
+    }
+
+    @Override
+    public List<Course> getAllCourses() {
+        return metrics.time("course.getAllCourses", delegate::getAllCourses);
+    }
+
+    @Override
+    public List<Course> findCoursesByDepartment(String department) {
+        return metrics.time("course.findCoursesByDepartment", () -> delegate.findCoursesByDepartment(department));
+    }
+
+    @Override
+    public List<Course> findCoursesByInstructor(Instructor instructor) {
+        return metrics.time("course.findCoursesByInstructor", () -> delegate.findCoursesByInstructor(instructor));
+    }
+
+    @Override
+    public List<Course> findCoursesBySemester(Semester semester) {
+        return metrics.time("course.findCoursesBySemester", () -> delegate.findCoursesBySemester(semester));
+    }
+
+    @Override
+    public List<Course> searchCourses(String text, int limit) {
+        return metrics.time("course.searchCourses", () -> delegate.searchCourses(text, limit));
+    }
+
+    @Override
+    public void loadData() throws IOException {
+        metrics.run("course.loadData", delegate::loadData);
+    }
+
+    @Override
+    public void loadDataParallel() throws IOException {
+        metrics.run("course.loadDataParallel", delegate::loadDataParallel);
+    }
+
+    @Override
+    public void saveData() throws IOException {
+        metrics.run("course.saveData", delegate::saveData);
+    }
+}
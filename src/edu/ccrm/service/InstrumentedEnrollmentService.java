@@ -0,0 +1,94 @@
+package edu.ccrm.service;
+
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.util.OperationMetrics;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * An EnrollmentService that records the latency and error count of every
+ * public call in {@link OperationMetrics} under "enrollment.&lt;method&gt;".
+ * EnrollmentService is a class rather than an interface, so this extends it
+ * instead of wrapping it; calls one method makes to another are counted for both.
+ */
+public class InstrumentedEnrollmentService extends EnrollmentService {
+
+    private final OperationMetrics metrics = OperationMetrics.getInstance();
+
+    @Override
+    public void enrollStudent(String regNo, String courseCode)
+            throws MaxCreditLimitExceededException, DuplicateEnrollmentException {
+        // Two checked exceptions cannot be carried through one generic parameter, so time this one by hand
+        OperationMetrics.Stats stats = metrics.statsFor("enrollment.enrollStudent");
+        long start = System.nanoTime();
+        try {
+            super.enrollStudent(regNo, courseCode);
+        } catch (MaxCreditLimitExceededException | DuplicateEnrollmentException | RuntimeException e) {
+            stats.recordError();
+            throw e;
+        } finally {
+            stats.getLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<EnrollmentResult> enrollBatch(Collection<EnrollmentRequest> requests) {
+        return metrics.time("enrollment.enrollBatch", () -> super.enrollBatch(requests));
+    }
+
+    @Override
+    public List<EnrollmentResult> enrollBatch(Stream<EnrollmentRequest> requests) {
+        return metrics.time("enrollment.enrollBatchStream", () -> super.enrollBatch(requests));
+    }
+
+    @Override
+    public void assignGrade(String regNo, String courseCode, Grade grade) {
+        metrics.run("enrollment.assignGrade", () -> super.assignGrade(regNo, courseCode, grade));
+    }
+
+    @Override
+    public void recordGrade(String regNo, String courseCode, Grade grade) {
+        metrics.run("enrollment.recordGrade", () -> super.recordGrade(regNo, courseCode, grade));
+    }
+
+    @Override
+    public void printTranscript(String regNo) {
+        metrics.run("enrollment.printTranscript", () -> super.printTranscript(regNo));
+    }
+
+    @Override
+    public void replayLog() throws IOException {
+        metrics.run("enrollment.replayLog", super::replayLog);
+    }
+
+    @Override
+    public double calculateGpa(String regNo) {
+        return metrics.time("enrollment.calculateGpa", () -> super.calculateGpa(regNo));
+    }
+
+    @Override
+    public String generateTranscript(String regNo) {
+        return metrics.time("enrollment.generateTranscript", () -> super.generateTranscript(regNo));
+    }
+
+    @Override
+    public Map<Grade, Long> getGradeDistribution() {
+        return metrics.time("enrollment.getGradeDistribution", () -> super.getGradeDistribution());
+    }
+
+    @Override
+    public Map<Grade, Long> getGradeDistribution(Semester semester) {
+        return metrics.time("enrollment.getGradeDistributionBySemester", () -> super.getGradeDistribution(semester));
+    }
+
+    @Override
+    public Map<Grade, Long> getCourseGradeDistribution(String courseCode) {
+        return metrics.time("enrollment.getCourseGradeDistribution",
+                () -> super.getCourseGradeDistribution(courseCode));
+    }
+}
@@ -0,0 +1,72 @@
+package edu.ccrm.service;
+
+import edu.ccrm.domain.Student;
+import edu.ccrm.util.OperationMetrics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Wraps a StudentService and records the latency and error count of every
+ * call in {@link OperationMetrics} under "student.&lt;method&gt;".
+ */
+public class InstrumentedStudentService implements StudentService {
+
+    private final StudentService delegate;
+    private final OperationMetrics metrics = OperationMetrics.getInstance();
+
+    public InstrumentedStudentService(StudentService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void addStudent(String fullName, String email, String regNo) {
+        metrics.run("student.addStudent", () -> delegate.addStudent(fullName, email, regNo));
+    }
+
+    @Override
+    public Optional<Student> findStudentByRegNo(String regNo) {
+        return metrics.time("student.findStudentByRegNo", () -> delegate.findStudentByRegNo(regNo));
+    }
+
+    @Override
+    public List<Student> getAllStudents() {
+        return metrics.time("student.getAllStudents", delegate::getAllStudents);
+    }
+
+    @Override
+    public List<Student> getTopStudents(int count) {
+        return metrics.time("student.getTopStudents", () -> delegate.getTopStudents(count));
+    }
+
+    @Override
+    public List<Student> searchStudents(String text, int limit) {
+        return metrics.time("student.searchStudents", () -> delegate.searchStudents(text, limit));
+    }
+
+    @Override
+    public boolean updateStudent(String regNo, String newFullName, String newEmail) {
+        return metrics.time("student.updateStudent", () -> delegate.updateStudent(regNo, newFullName, newEmail));
+    }
+
+    @Override
+    public void deactivateStudent(String regNo) {
+        metrics.run("student.deactivateStudent", () -> delegate.deactivateStudent(regNo));
+    }
+
+    @Override
+    public void loadData() throws IOException {
+        metrics.run("student.loadData", delegate::loadData);
+    }
+
+    @Override
+    public void loadDataParallel() throws IOException {
+        metrics.run("student.loadDataParallel", delegate::loadDataParallel);
+    }
+
+    @Override
+    public void saveData() throws IOException {
+        metrics.run("student.saveData", delegate::saveData);
+    }
+}
@@ -5,4 +5,9 @@ import java.io.IOException;
 public interface Persistable {
     void loadData() throws IOException;
     void saveData() throws IOException;
+
+    // Bulk-import variant for large files; falls back to the regular loader.
+    default void loadDataParallel() throws IOException {
+        loadData();
+    }
 }
\ No newline at end of file
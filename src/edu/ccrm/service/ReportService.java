@@ -0,0 +1,102 @@
+package edu.ccrm.service;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.config.StoreSnapshot;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Semester;
+import edu.ccrm.domain.StudentSnapshot;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Campus-wide reports, each read from its own store snapshot: every number
+ * in a report belongs to the same moment, however long the report takes,
+ * and enrollments and grades can keep changing while it runs.
+ */
+public class ReportService {
+
+    private final DataStore dataStore = DataStore.getInstance();
+
+    // The students with the highest GPA, highest first; the GPAs and the order are from one moment
+    public List<StudentSnapshot> getTopStudents(int count) {
+        try (StoreSnapshot snapshot = dataStore.snapshot()) {
+            return snapshot.topStudents(count);
+        }
+    }
+
+    // Enrollments per grade, over all courses and per semester, counted in one pass over one snapshot
+    public GradeReport getGradeReport() {
+        try (StoreSnapshot snapshot = dataStore.snapshot()) {
+            long[][] counts = snapshot.students().parallel().collect(
+                    () -> new long[Semester.values().length + 1][Grade.values().length],
+                    (c, student) -> count(c, student, snapshot),
+                    (a, b) -> {
+                        for (int i = 0; i < a.length; i++) {
+                            for (int g = 0; g < a[i].length; g++) {
+                                a[i][g] += b[i][g];
+                            }
+                        }
+                    });
+            Map<Semester, Map<Grade, Long>> bySemester = new EnumMap<>(Semester.class);
+            for (Semester semester : Semester.values()) {
+                bySemester.put(semester, toMap(counts[semester.ordinal() + 1]));
+            }
+            return new GradeReport(snapshot.getVersion(), toMap(counts[0]), bySemester);
+        }
+    }
+
+    // Row 0 counts every enrollment; row ordinal + 1 those in courses of that semester
+    private static void count(long[][] counts, StudentSnapshot student, StoreSnapshot snapshot) {
+        for (StudentSnapshot.EnrolledCourse enrollment : student.getEnrollments()) {
+            int grade = enrollment.getGrade().ordinal();
+            counts[0][grade]++;
+            Course course = snapshot.course(enrollment.getCourseCode());
+            if (course != null) {
+                counts[course.getSemester().ordinal() + 1][grade]++;
+            }
+        }
+    }
+
+    // Only grades that occur, like the grade counters of the EnrollmentTable
+    private static Map<Grade, Long> toMap(long[] counts) {
+        Map<Grade, Long> map = new EnumMap<>(Grade.class);
+        for (Grade grade : Grade.values()) {
+            if (counts[grade.ordinal()] > 0) {
+                map.put(grade, counts[grade.ordinal()]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Grade distributions taken from one snapshot.
+     */
+    public static final class GradeReport {
+        private final long version;
+        private final Map<Grade, Long> overall;
+        private final Map<Semester, Map<Grade, Long>> bySemester;
+
+        GradeReport(long version, Map<Grade, Long> overall, Map<Semester, Map<Grade, Long>> bySemester) {
+            this.version = version;
+            this.overall = overall;
+            this.bySemester = bySemester;
+        }
+
+        // The store snapshot version the counts were read at
+        public long getVersion() {
+            return version;
+        }
+
+        public Map<Grade, Long> getOverall() {
+            return overall;
+        }
+
+        // Empty for a semester without enrollments
+        public Map<Grade, Long> getSemester(Semester semester) {
+            return bySemester.get(semester);
+        }
+    }
+}
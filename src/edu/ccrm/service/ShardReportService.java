@@ -0,0 +1,141 @@
+package edu.ccrm.service;
+
+import edu.ccrm.config.CourseShard;
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Student;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Reports over the sharded store. Campus-wide reports run on every shard in
+ * parallel and merge the per-shard results; a report for one shard (e.g. one
+ * department) reads only that shard.
+ */
+public class ShardReportService {
+
+    private final DataStore dataStore = DataStore.getInstance();
+
+    // One summary per shard, in shard name order, computed in parallel
+    public List<ShardSummary> summarizeShards() {
+        return new ArrayList<>(dataStore.perShard(this::summarize).values());
+    }
+
+    // The summary of the shard holding the given key value (e.g. a department), if there is one
+    public Optional<ShardSummary> summarizeShard(Object keyValue) {
+        return Optional.ofNullable(dataStore.shardFor(keyValue)).map(this::summarize);
+    }
+
+    // Number of enrollments per grade over all shards, merged from the per-shard counts
+    public Map<Grade, Long> getGradeDistribution() {
+        return dataStore.acrossShards(CourseShard::gradeCounts, new EnumMap<>(Grade.class), (a, b) -> {
+            Map<Grade, Long> merged = new EnumMap<>(Grade.class);
+            merged.putAll(a);
+            b.forEach((grade, count) -> merged.merge(grade, count, Long::sum));
+            return merged;
+        });
+    }
+
+    private ShardSummary summarize(CourseShard shard) {
+        // Grade points are weighted by credits, like a GPA; read from the per-course counters
+        double points = 0;
+        long gradedCredits = 0;
+        Course busiest = null;
+        long busiestCount = -1;
+        for (Course course : shard.getCourses().values()) {
+            long enrolled = dataStore.enrollmentTable.count(course.getCode());
+            if (enrolled > busiestCount) {
+                busiest = course;
+                busiestCount = enrolled;
+            }
+            for (Map.Entry<Grade, Long> entry : dataStore.enrollmentTable.gradeCounts(course.getCode()).entrySet()) {
+                if (entry.getKey().getGradePoints() >= 0) {
+                    points += entry.getKey().getGradePoints() * course.getCredits() * entry.getValue();
+                    gradedCredits += (long) course.getCredits() * entry.getValue();
+                }
+            }
+        }
+        // Distinct students need the rows themselves, but only this shard's
+        Set<Student> students = Collections.newSetFromMap(new IdentityHashMap<>());
+        shard.enrollments().map(Enrollment::getStudent).forEach(s -> {
+            if (s != null) {
+                students.add(s);
+            }
+        });
+        return new ShardSummary(shard.getName(), shard.courseCount(), students.size(), shard.enrollmentCount(),
+                shard.gradeCounts(), gradedCredits == 0 ? Double.NaN : points / gradedCredits,
+                busiest == null ? null : busiest.getCode());
+    }
+
+    /**
+     * Course, student and enrollment counts of one shard.
+     */
+    public static final class ShardSummary {
+        private final String shard;
+        private final int courses;
+        private final int students;
+        private final long enrollments;
+        private final Map<Grade, Long> gradeCounts;
+        private final double averageGradePoints;
+        private final String busiestCourse;
+
+        ShardSummary(String shard, int courses, int students, long enrollments, Map<Grade, Long> gradeCounts,
+                double averageGradePoints, String busiestCourse) {
+            this.shard = shard;
+            this.courses = courses;
+            this.students = students;
+            this.enrollments = enrollments;
+            this.gradeCounts = gradeCounts;
+            this.averageGradePoints = averageGradePoints;
+            this.busiestCourse = busiestCourse;
+        }
+
+        public String getShard() {
+            return shard;
+        }
+
+        public int getCourses() {
+            return courses;
+        }
+
+        // Distinct students enrolled in at least one of the shard's courses
+        public int getStudents() {
+            return students;
+        }
+
+        public long getEnrollments() {
+            return enrollments;
+        }
+
+        public Map<Grade, Long> getGradeCounts() {
+            return gradeCounts;
+        }
+
+        // Credit-weighted average grade points of the graded enrollments, NaN if none are graded
+        public double getAverageGradePoints() {
+            return averageGradePoints;
+        }
+
+        // Code of the course with the most enrollments, or null for an empty shard
+        public String getBusiestCourse() {
+            return busiestCourse;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %4d courses | %6d students | %8d enrollments | avg %s | busiest %s",
+                    shard, courses, students, enrollments,
+                    Double.isNaN(averageGradePoints) ? "  -  " : String.format("%.2f", averageGradePoints),
+                    busiestCourse == null ? "-" : busiestCourse);
+        }
+    }
+}
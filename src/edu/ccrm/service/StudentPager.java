@@ -0,0 +1,516 @@
+package edu.ccrm.service;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.config.SearchIndex;
+import edu.ccrm.domain.Enrollment;
+import edu.ccrm.domain.Student;
+import edu.ccrm.domain.StudentSnapshot;
+import edu.ccrm.io.StudentArchive;
+import edu.ccrm.util.StripedLocks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Keeps students in two tiers: the hot tier is the DataStore (students in
+ * heap, indexed and counted), the cold tier is the {@link StudentArchive} on
+ * disk. {@link #pageOutInactive()} moves every INACTIVE and GRADUATED student
+ * to the archive and out of memory, so the heap only scales with the active
+ * students. {@link #find(String)} loads a cold student back on demand.
+ *
+ * Students loaded back are kept in a bounded cache (-Dccrm.cold.cache,
+ * default 1000). Once it overflows, a background thread pages the least
+ * recently used of them out again, which costs no write if they did not
+ * change; one that was made ACTIVE meanwhile just leaves the cache and stays
+ * in memory. Lookups never page anybody out themselves.
+ *
+ * While a student is cold, lookups by registration number, the query engine,
+ * the CSV export and {@link #allStudents(StudentsAction)} still find them, and
+ * {@link #searchArchived(String, int)} finds them by name or email through a
+ * small index of just those fields, the only part of a cold student kept in
+ * heap. The GPA ranking, the live grade counters and the reports cover the
+ * students in memory.
+ *
+ * A student is only paged out while holding their stripe of
+ * {@link #STUDENT_LOCKS}, and a student someone holds it for is skipped.
+ * Every change to a student takes that lock through
+ * {@link #findLocked(String)}, so no change is ever made to a student who is
+ * being paged out. A Student object obtained before its student was paged out
+ * is retired ({@link Student#retire()}): it and its enrollment views keep
+ * reading the state that was archived, and changing it throws.
+ */
+public class StudentPager {
+
+    // Taken by every change to a student, and while paging one out; shared with EnrollmentService
+    static final StripedLocks STUDENT_LOCKS = new StripedLocks(256);
+    private static final int CACHE_CAPACITY = Math.max(1, Integer.getInteger("ccrm.cold.cache", 1000));
+    private static StudentPager instance;
+
+    private final DataStore dataStore = DataStore.getInstance();
+    private final StudentArchive archive = StudentArchive.getInstance();
+    // Students paged in from the archive, by regNo; touched on every lookup
+    private final ConcurrentMap<String, CachedStudent> cache = new ConcurrentHashMap<>();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicBoolean trimScheduled = new AtomicBoolean();
+    private final LongAdder pageIns = new LongAdder();
+    private final LongAdder pageOuts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder failedTrims = new LongAdder();
+    // Names and emails of the students paged out, by regNo; one that is paged in again is skipped by the index
+    private final ConcurrentMap<String, ArchivedName> archivedNames = new ConcurrentHashMap<>();
+    private volatile SearchIndex<ArchivedName> archivedSearch; // Built from the archive on first search
+
+    private StudentPager() {
+    }
+
+    public static synchronized StudentPager getInstance() {
+        if (instance == null) {
+            instance = new StudentPager();
+        }
+        return instance;
+    }
+
+    /**
+     * The student with the given registration number, from memory or, if they
+     * were paged out, read back from the archive and put into the store again.
+     * To change the student, use {@link #findLocked(String)} instead.
+     *
+     * @return The student, or null if there is none in either tier.
+     * @throws UncheckedIOException If the archive cannot be read.
+     */
+    public Student find(String regNo) {
+        Student student = dataStore.students.get(regNo);
+        if (student != null) {
+            CachedStudent cached = cache.get(regNo);
+            if (cached != null) {
+                cached.lastUsed = ticks.incrementAndGet();
+            }
+            return student;
+        }
+        student = pageIn(regNo);
+        if (cache.size() > CACHE_CAPACITY) {
+            scheduleTrim();
+        }
+        return student;
+    }
+
+    /**
+     * Like {@link #find(String)}, but also locks the student's stripe of
+     * {@link #STUDENT_LOCKS}, so they stay in memory until the caller unlocks
+     * it. If the student is paged out between the lookup and the lock, they
+     * are looked up again.
+     *
+     * @return The student in the store, or null (and nothing locked) if there is none.
+     */
+    Student findLocked(String regNo) {
+        ReentrantLock lock = STUDENT_LOCKS.lockFor(regNo);
+        while (true) {
+            Student student = find(regNo);
+            if (student == null) {
+                return null;
+            }
+            lock.lock();
+            if (dataStore.students.get(regNo) == student) {
+                return student;
+            }
+            lock.unlock(); // Paged out meanwhile
+        }
+    }
+
+    // Whether there is a student with this registration number in either tier
+    public boolean exists(String regNo) {
+        return dataStore.students.containsKey(regNo) || archive.contains(regNo);
+    }
+
+    // The archived record of a student who is not in memory, without paging them in
+    public Optional<StudentSnapshot> findCold(String regNo) {
+        return dataStore.students.containsKey(regNo) ? Optional.empty() : archive.read(regNo);
+    }
+
+    // Whether any student has ever been paged out; if not, the store holds every student
+    public boolean hasArchived() {
+        return archive.size() > 0;
+    }
+
+    /**
+     * Runs the action over every student in either tier: the ones in memory,
+     * then read-only copies of the ones paged out ({@link Student#retiredCopy}),
+     * read from the archive one at a time. Nobody is paged in or out while it
+     * runs, so each student is seen exactly once.
+     */
+    public synchronized <R> R allStudents(StudentsAction<R> action) throws IOException {
+        return archivedStudents(cold -> action.run(() -> Stream.concat(dataStore.students.values().stream(),
+                StreamSupport.stream(cold.spliterator(), false)).iterator()));
+    }
+
+    /**
+     * Runs the action over read-only copies of the students paged out, read
+     * from the archive one at a time. Nobody is paged in or out while it runs,
+     * so the action can read the students in memory alongside them and see
+     * each student exactly once.
+     */
+    public synchronized <R> R archivedStudents(StudentsAction<R> action) throws IOException {
+        return action.run(() -> StreamSupport.stream(archive.records().spliterator(), false)
+                .filter(stored -> !dataStore.students.containsKey(stored.getRegNo()))
+                .map(Student::retiredCopy)
+                .iterator());
+    }
+
+    /**
+     * Finds the paged-out students whose name or email matches, best first,
+     * ranked like {@link DataStore#studentSearch}. They are returned as
+     * read-only copies ({@link Student#retiredCopy}), or as the student in
+     * memory if they were paged in meanwhile; nobody is paged in.
+     *
+     * @throws UncheckedIOException If the archive cannot be read.
+     */
+    public List<Student> searchArchived(String text, int limit) {
+        List<Student> found = new ArrayList<>();
+        for (ArchivedName hit : archivedSearch().search(text, limit)) {
+            Student student = dataStore.students.get(hit.regNo);
+            if (student == null) {
+                student = archive.read(hit.regNo).map(Student::retiredCopy).orElse(null);
+            }
+            if (student != null) {
+                found.add(student);
+            }
+        }
+        return found;
+    }
+
+    private SearchIndex<ArchivedName> archivedSearch() {
+        SearchIndex<ArchivedName> index = archivedSearch;
+        if (index == null) {
+            synchronized (this) { // Page-outs add to the index under this lock, so none is missed
+                if (archivedSearch == null) {
+                    SearchIndex<ArchivedName> built = new SearchIndex<>(
+                            name -> archivedNames.get(name.regNo) == name
+                                    && !dataStore.students.containsKey(name.regNo),
+                            name -> name.fullName, name -> name.email);
+                    for (StudentSnapshot stored : archive.records()) {
+                        archivedNames.put(stored.getRegNo(), new ArchivedName(stored));
+                    }
+                    built.rebuild(archivedNames.values());
+                    archivedSearch = built;
+                }
+                index = archivedSearch;
+            }
+        }
+        return index;
+    }
+
+    // Records the name and email of a student just paged out for searchArchived; under this pager's lock
+    private void nameArchived(StudentSnapshot archived) {
+        ArchivedName previous = archivedNames.get(archived.getRegNo());
+        if (previous != null && Objects.equals(previous.fullName, archived.getFullName())
+                && Objects.equals(previous.email, archived.getEmail())) {
+            return; // Still indexed as it is
+        }
+        ArchivedName name = new ArchivedName(archived);
+        archivedNames.put(name.regNo, name);
+        SearchIndex<ArchivedName> index = archivedSearch;
+        if (index != null) { // Otherwise it is read from the archive when the index is built
+            if (previous != null) {
+                index.remove(previous);
+            }
+            index.add(name);
+        }
+    }
+
+    /**
+     * Pages out every student who is not ACTIVE: their records are appended to
+     * the archive with one forced write, then they are removed from the store
+     * along with their enrollments. Students already archived in the same
+     * state are not written again; students being changed right now stay in
+     * memory.
+     *
+     * @throws IOException If the archive cannot be written; nobody is removed then.
+     */
+    public synchronized PageOutResult pageOutInactive() throws IOException {
+        long start = System.nanoTime();
+        List<Student> inactive = new ArrayList<>();
+        for (Student student : dataStore.students.values()) {
+            if (student.getStatus() != Student.Status.ACTIVE) {
+                inactive.add(student);
+            }
+        }
+        long pagedOutBefore = pageOuts.sum(); // Only changed while holding this lock
+        long bytes = pageOut(inactive);
+        dataStore.studentSearch.purge(); // Its stale entries would keep the paged-out students in memory
+        if (archivedSearch != null) {
+            archivedSearch.purge();
+        }
+        return new PageOutResult((int) (pageOuts.sum() - pagedOutBefore), bytes,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Resident, cached and archived counts and the paging counters, for display
+    public Stats getStats() {
+        return new Stats(dataStore.students.size(), archive.size(), cache.size(), CACHE_CAPACITY, pageIns.sum(),
+                pageOuts.sum(), evictions.sum(), failedTrims.sum(), archive.fileBytes());
+    }
+
+    private synchronized Student pageIn(String regNo) {
+        Student student = dataStore.students.get(regNo);
+        if (student != null) {
+            return student; // Paged in by another thread while this one waited
+        }
+        StudentSnapshot stored = archive.read(regNo).orElse(null);
+        if (stored == null) {
+            return null;
+        }
+        student = new Student(stored.getId(), stored.getFullName(), stored.getEmail(), stored.getRegNo(),
+                stored.getStatus(), stored.getRegistrationDate());
+        for (StudentSnapshot.EnrolledCourse enrolled : stored.getEnrollments()) {
+            Enrollment enrollment = new Enrollment(student.getId(), enrolled.getCourseCode(),
+                    enrolled.getEnrollmentDate());
+            enrollment.setGrade(enrolled.getGrade());
+            student.addEnrollment(enrollment, dataStore.courses.get(enrolled.getCourseCode()));
+        }
+        dataStore.putStudent(student);
+        cache.put(regNo, new CachedStudent(student, ticks.incrementAndGet()));
+        pageIns.increment();
+        return student;
+    }
+
+    private void scheduleTrim() {
+        if (trimScheduled.compareAndSet(false, true)) {
+            Thread trimmer = new Thread(this::trimCache, "ccrm-cold-cache-trim");
+            trimmer.setDaemon(true);
+            trimmer.start();
+        }
+    }
+
+    // Pages the least recently used cached students out again until the cache fits; runs on its own thread
+    private synchronized void trimCache() {
+        trimScheduled.set(false); // Overflowing again from here on schedules another trim
+        int excess = cache.size() - CACHE_CAPACITY;
+        if (excess <= 0) {
+            return;
+        }
+        List<CachedStudent> byAge = new ArrayList<>(cache.values());
+        byAge.sort(Comparator.comparingLong(cached -> cached.lastUsed));
+        List<Student> evicted = new ArrayList<>(excess);
+        for (CachedStudent cached : byAge.subList(0, Math.min(excess, byAge.size()))) {
+            cache.remove(cached.student.getRegNo());
+            evictions.increment();
+            if (cached.student.getStatus() != Student.Status.ACTIVE) {
+                evicted.add(cached.student);
+            }
+        }
+        try {
+            pageOut(evicted);
+        } catch (IOException | UncheckedIOException e) {
+            failedTrims.increment(); // They stay in memory, until the next sweep pages them out
+        }
+    }
+
+    /**
+     * Archives the students, then takes those whose archived record is
+     * current out of memory; must be called while holding this pager's lock.
+     * A student changed between the two steps is archived again once; one
+     * whose lock is held by a writer is skipped and stays in memory.
+     */
+    private long pageOut(List<Student> students) throws IOException {
+        long bytes = archive.append(changedSinceArchived(students));
+        List<Student> changed = new ArrayList<>();
+        int removed = removeArchived(students, changed);
+        if (!changed.isEmpty()) {
+            bytes += archive.append(changedSinceArchived(changed));
+            removed += removeArchived(changed, null);
+        }
+        pageOuts.add(removed);
+        return bytes;
+    }
+
+    // Removes each student whose newest archived record holds their current state; the others go to changed
+    private int removeArchived(List<Student> students, List<Student> changed) {
+        int removed = 0;
+        for (Student student : students) {
+            ReentrantLock lock = STUDENT_LOCKS.lockFor(student.getRegNo());
+            if (!lock.tryLock()) {
+                continue; // Being changed right now
+            }
+            try {
+                // Replaced, removed or reactivated meanwhile (e.g. by an import): then it is not this pager's to drop
+                if (dataStore.students.get(student.getRegNo()) != student
+                        || student.getStatus() == Student.Status.ACTIVE) {
+                    continue;
+                }
+                if (!archive.isArchivedAs(student.snapshot())) {
+                    if (changed != null) {
+                        changed.add(student);
+                    }
+                    continue;
+                }
+                cache.remove(student.getRegNo());
+                if (dataStore.removeStudent(student)) {
+                    dataStore.dropEnrollments(student); // Retires the object under its own lock
+                    nameArchived(student.snapshot());
+                    removed++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return removed;
+    }
+
+    private List<StudentSnapshot> changedSinceArchived(List<Student> students) {
+        List<StudentSnapshot> changed = new ArrayList<>();
+        for (Student student : students) {
+            StudentSnapshot snapshot = student.snapshot();
+            if (!archive.isArchivedAs(snapshot)) {
+                changed.add(snapshot);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Work over every student in both tiers; see {@link #allStudents(StudentsAction)}.
+     */
+    @FunctionalInterface
+    public interface StudentsAction<R> {
+        R run(Iterable<Student> students) throws IOException;
+    }
+
+    // What searchArchived indexes of a paged-out student
+    private static final class ArchivedName {
+        private final String regNo;
+        private final String fullName;
+        private final String email;
+
+        ArchivedName(StudentSnapshot archived) {
+            this.regNo = archived.getRegNo();
+            this.fullName = archived.getFullName();
+            this.email = archived.getEmail();
+        }
+    }
+
+    private static final class CachedStudent {
+        private final Student student;
+        private volatile long lastUsed;
+
+        CachedStudent(Student student, long lastUsed) {
+            this.student = student;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * What one sweep paged out.
+     */
+    public static final class PageOutResult {
+        private final int students;
+        private final long bytesWritten;
+        private final long millis;
+
+        PageOutResult(int students, long bytesWritten, long millis) {
+            this.students = students;
+            this.bytesWritten = bytesWritten;
+            this.millis = millis;
+        }
+
+        public int getStudents() {
+            return students;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Paged out %d students (%,d bytes written) in %d ms", students, bytesWritten,
+                    millis);
+        }
+    }
+
+    /**
+     * Sizes of the two tiers and the paging counters at one moment.
+     */
+    public static final class Stats {
+        private final int resident;
+        private final int archived;
+        private final int cached;
+        private final int cacheCapacity;
+        private final long pageIns;
+        private final long pageOuts;
+        private final long evictions;
+        private final long failedTrims;
+        private final long archiveBytes;
+
+        Stats(int resident, int archived, int cached, int cacheCapacity, long pageIns, long pageOuts,
+                long evictions, long failedTrims, long archiveBytes) {
+            this.resident = resident;
+            this.archived = archived;
+            this.cached = cached;
+            this.cacheCapacity = cacheCapacity;
+            this.pageIns = pageIns;
+            this.pageOuts = pageOuts;
+            this.evictions = evictions;
+            this.failedTrims = failedTrims;
+            this.archiveBytes = archiveBytes;
+        }
+
+        // Students in memory, including the ones paged in and cached
+        public int getResident() {
+            return resident;
+        }
+
+        // Distinct students in the archive; a student paged in is still counted here
+        public int getArchived() {
+            return archived;
+        }
+
+        public int getCached() {
+            return cached;
+        }
+
+        public long getPageIns() {
+            return pageIns;
+        }
+
+        public long getPageOuts() {
+            return pageOuts;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        // Cache trims whose page-out failed; the students they evicted stayed in memory
+        public long getFailedTrims() {
+            return failedTrims;
+        }
+
+        public long getArchiveBytes() {
+            return archiveBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Students in memory: %,d | archived: %,d (%,d bytes) | cache: %d/%d%n"
+                    + "Page-ins: %,d | page-outs: %,d | cache evictions: %,d | failed trims: %,d", resident, archived,
+                    archiveBytes, cached, cacheCapacity, pageIns, pageOuts, evictions, failedTrims);
+        }
+    }
+}
@@ -9,6 +9,7 @@ public interface StudentService extends Persistable {
     Optional<Student> findStudentByRegNo(String regNo);
     List<Student> getAllStudents();
     List<Student> getTopStudents(int count);
+    List<Student> searchStudents(String text, int limit);
     boolean updateStudent(String regNo, String newFullName, String newEmail);
     void deactivateStudent(String regNo);
 }
\ No newline at end of file
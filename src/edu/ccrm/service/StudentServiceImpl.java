@@ -3,55 +3,95 @@ package edu.ccrm.service;
 import edu.ccrm.config.DataStore;
 import edu.ccrm.domain.Student;
 import edu.ccrm.io.FileService;
+import edu.ccrm.io.ParallelLoadReport;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class StudentServiceImpl implements StudentService {
 
     private final DataStore dataStore = DataStore.getInstance();
+    private final StudentPager pager = StudentPager.getInstance(); // Finds paged-out students too
+    private final WriteBehindPersister persister = WriteBehindPersister.getInstance();
     private final FileService<Student> fileService = new FileService<>("students.csv");
+    // Registration numbers changed since students.csv was last loaded or saved
+    private final Set<String> dirtyRegNos = ConcurrentHashMap.newKeySet();
+    // False until a load or save has made the file match memory (e.g. after a snapshot startup)
+    private volatile boolean fileInSync = false;
+    // Set when a loaded row had no id column (older files), so the next save writes the assigned ids
+    private volatile boolean idsAssigned = false;
 
     @Override
     public void addStudent(String fullName, String email, String regNo) {
-        if (dataStore.students.containsKey(regNo)) {
+        if (pager.exists(regNo)) {
             System.out.println("Error: Student with registration number " + regNo + " already exists.");
             return;
         }
         Student student = new Student(fullName, email, regNo);
-        dataStore.students.put(regNo, student);
+        dataStore.putStudent(student);
+        dirtyRegNos.add(regNo);
+        persister.studentChanged(regNo);
         System.out.println("Successfully added student: " + student.getFullName());
     }
 
     @Override
     public Optional<Student> findStudentByRegNo(String regNo) {
-        return Optional.ofNullable(dataStore.students.get(regNo));
+        return Optional.ofNullable(pager.find(regNo));
     }
 
     @Override
     public List<Student> getAllStudents() {
-        return new ArrayList<>(dataStore.students.values());
+        try {
+            // Paged-out students are listed as read-only copies
+            return pager.allStudents(students -> {
+                List<Student> all = new ArrayList<>(dataStore.students.size());
+                students.forEach(all::add);
+                return all;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown: the action does no I/O
+        }
     }
 
     @Override
     public boolean updateStudent(String regNo, String newFullName, String newEmail) {
-        Student student = dataStore.students.get(regNo);
-        if (student != null) {
-            student.setFullName(newFullName);
-            student.setEmail(newEmail);
-            return true;
+        Student student = pager.findLocked(regNo);
+        if (student == null) {
+            return false;
         }
-        return false;
+        try {
+            dataStore.studentSearch.update(student, () -> {
+                student.setFullName(newFullName);
+                student.setEmail(newEmail);
+            });
+        } finally {
+            StudentPager.STUDENT_LOCKS.lockFor(regNo).unlock();
+        }
+        dirtyRegNos.add(regNo);
+        persister.studentChanged(regNo); // Outside the lock: in sync mode this waits for the disk
+        return true;
     }
 
     @Override
     public void deactivateStudent(String regNo) {
-        Student student = dataStore.students.get(regNo);
+        Student student = pager.findLocked(regNo);
         if (student != null) {
-            student.setStatus(Student.Status.INACTIVE);
+            try {
+                student.setStatus(Student.Status.INACTIVE);
+            } finally {
+                StudentPager.STUDENT_LOCKS.lockFor(regNo).unlock();
+            }
+            dirtyRegNos.add(regNo);
+            persister.studentChanged(regNo);
             System.out.println("Student " + regNo + " has been deactivated.");
         } else {
             System.out.println("Student not found.");
@@ -60,28 +100,129 @@ public class StudentServiceImpl implements StudentService {
 
     @Override
     public void loadData() throws IOException {
-        List<Student> loadedStudents = fileService.readData(line -> {
-            String[] parts = line.split(",");
-            return new Student(parts[1], parts[2], parts[0]); // fullName, email, regNo
-        });
-        loadedStudents.forEach(s -> dataStore.students.put(s.getRegNo(), s));
+        boolean wasEmpty = dataStore.students.isEmpty() && !pager.hasArchived();
+        List<Student> loadedStudents = fileService.readData(this::parseStudent);
+        loadedStudents.forEach(this::merge);
+        markInSync(wasEmpty);
         System.out.println("Loaded " + loadedStudents.size() + " students.");
     }
 
+    @Override
+    public void loadDataParallel() throws IOException {
+        boolean wasEmpty = dataStore.students.isEmpty() && !pager.hasArchived();
+        if (wasEmpty) {
+            ParallelLoadReport report = fileService.readDataParallel(this::parseStudent, Student::getRegNo,
+                    dataStore.students);
+            // Rows went straight into the map, so the ranking and search index are rebuilt in one pass afterwards
+            dataStore.rebuildStudentIndexes();
+            markInSync(true);
+            System.out.println("Loaded " + report.getTotalRows() + " students.");
+            report.print();
+            return;
+        }
+        // Students already in memory keep their enrollments, so rows are parsed in parallel but merged one by one
+        ConcurrentMap<String, Student> loaded = new ConcurrentHashMap<>();
+        ParallelLoadReport report = fileService.readDataParallel(this::parseStudent, Student::getRegNo, loaded);
+        loaded.values().forEach(this::merge);
+        markInSync(false);
+        System.out.println("Loaded " + report.getTotalRows() + " students.");
+        report.print();
+    }
+
+    // Adds a loaded student, or brings the existing one up to date, keeping their id, status and enrollments
+    private void merge(Student loaded) {
+        String regNo = loaded.getRegNo();
+        if (!pager.exists(regNo)) {
+            dataStore.putStudent(loaded);
+            return;
+        }
+        // A paged-out student the row does not change is left in the archive
+        boolean unchanged = pager.findCold(regNo)
+                .map(stored -> sameContact(loaded, stored.getFullName(), stored.getEmail()))
+                .orElse(false);
+        if (unchanged) {
+            return;
+        }
+        Student existing = pager.findLocked(regNo);
+        if (existing == null) {
+            return;
+        }
+        try {
+            if (!sameContact(loaded, existing.getFullName(), existing.getEmail())) {
+                dataStore.studentSearch.update(existing, () -> {
+                    existing.setFullName(loaded.getFullName());
+                    existing.setEmail(loaded.getEmail());
+                });
+            }
+        } finally {
+            StudentPager.STUDENT_LOCKS.lockFor(regNo).unlock();
+        }
+    }
+
+    private static boolean sameContact(Student student, String fullName, String email) {
+        return student.getFullName().equals(fullName) && student.getEmail().equals(email);
+    }
+
+    private Student parseStudent(String line) {
+        String[] parts = line.split(",");
+        if (parts.length > 3) { // regNo, fullName, email, id
+            return new Student(Long.parseLong(parts[3].trim()), parts[1], parts[2], parts[0], Student.Status.ACTIVE,
+                    LocalDate.now());
+        }
+        idsAssigned = true;
+        return new Student(parts[1], parts[2], parts[0]); // fullName, email, regNo
+    }
+
     @Override
     public List<Student> getTopStudents(int count) {
-        return dataStore.students.values().stream()
-                .sorted((s1, s2) -> Double.compare(s2.calculateGpa(), s1.calculateGpa())) // Sort descending by GPA
-                .limit(count)
-                .collect(Collectors.toList());
+        return dataStore.gpaRanking.top(count); // Read from the incrementally maintained ranking
+    }
+
+    // Ranked prefix search over names and emails, e.g. "ann sm" finds Anna Smith; paged-out students included
+    @Override
+    public List<Student> searchStudents(String text, int limit) {
+        List<Student> found = dataStore.studentSearch.search(text, limit);
+        if (!pager.hasArchived()) {
+            return found;
+        }
+        Set<String> seen = new HashSet<>();
+        found.forEach(s -> seen.add(s.getRegNo()));
+        for (Student student : pager.searchArchived(text, limit)) {
+            if (seen.add(student.getRegNo())) { // A student paged in meanwhile may be found by both
+                found.add(student);
+            }
+        }
+        // Both indexes score alike, so the two tiers are merged by score, then by name as each index orders them
+        found.sort(Comparator.comparingInt((Student s) -> -dataStore.studentSearch.score(s, text))
+                .thenComparing(s -> String.valueOf(s.getFullName()), String.CASE_INSENSITIVE_ORDER));
+        return found.size() > limit ? new ArrayList<>(found.subList(0, limit)) : found;
     }
 
     @Override
     public void saveData() throws IOException {
-        List<String> lines = dataStore.students.values().stream()
-                .map(s -> String.join(",", s.getRegNo(), s.getFullName(), s.getEmail()))
-                .collect(Collectors.toList());
-        fileService.writeData(lines);
-        System.out.println("Saved " + lines.size() + " students.");
+        if (fileInSync && dirtyRegNos.isEmpty()) {
+            System.out.println("No student changes since last save; students.csv left untouched.");
+            return;
+        }
+        // Only clear the changes this save covers; later edits stay dirty for the next save
+        List<String> savedChanges = new ArrayList<>(dirtyRegNos);
+        // Paged-out students are streamed from the archive, so they stay in the file
+        long saved = pager.allStudents(students -> fileService.writeRecords(students, (s, line) -> line
+                .append(s.getRegNo()).append(',')
+                .append(s.getFullName()).append(',')
+                .append(s.getEmail()).append(',')
+                .append(s.getId())));
+        dirtyRegNos.removeAll(savedChanges);
+        fileInSync = true;
+        System.out.println("Saved " + saved + " students (" + savedChanges.size() + " changed).");
+    }
+
+    // A load only merges the file into memory: students it did not contain stay unsaved unless there were none
+    private void markInSync(boolean wasEmpty) {
+        if (wasEmpty) {
+            dirtyRegNos.clear();
+        }
+        fileInSync = wasEmpty && !idsAssigned;
+        idsAssigned = false;
     }
 }
\ No newline at end of file
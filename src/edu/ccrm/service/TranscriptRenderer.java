@@ -0,0 +1,104 @@
+package edu.ccrm.service;
+
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Grade;
+import edu.ccrm.domain.Student;
+import edu.ccrm.domain.StudentSnapshot;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Renders the fixed-width transcript layout straight into a StringBuilder.
+ * The constant lines are built once, columns are padded by hand instead of
+ * through String.format, and the GPA is summed in the same pass over the
+ * enrollments that prints the rows. The output is character-for-character
+ * the same as the original String.format version.
+ *
+ * Students are rendered from a {@link StudentSnapshot}, so the rows and the
+ * GPA always come from the same moment even while grades are being assigned.
+ */
+final class TranscriptRenderer {
+
+    private static final String RULE = "----------------------------------------\n";
+    private static final String HEADER = "========================================\n"
+            + "      ACADEMIC TRANSCRIPT\n"
+            + "========================================\n";
+    private static final String COLUMNS = RULE
+            + "Code       Course Title                   Credits  Grade\n"
+            + RULE;
+    private static final String FOOTER = "========================================\n";
+
+    // Column widths of the course rows, as in "%-10s %-30s %-8d %-5s"
+    private static final int CODE_WIDTH = 10;
+    private static final int TITLE_WIDTH = 30;
+    private static final int CREDITS_WIDTH = 8;
+    private static final int GRADE_WIDTH = 5;
+
+    private final Map<String, Course> courses;
+
+    TranscriptRenderer(Map<String, Course> courses) {
+        this.courses = courses;
+    }
+
+    // Appends the transcript of the student as they are now, with the current courses
+    int render(Student student, StringBuilder out) {
+        return render(student.snapshot(), courses::get, out);
+    }
+
+    /**
+     * Appends the transcript of one student to the builder.
+     *
+     * @param courses Looks up a course by code, e.g. in the same store snapshot as the student.
+     * @return The number of characters appended.
+     */
+    static int render(StudentSnapshot student, Function<String, Course> courses, StringBuilder out) {
+        int start = out.length();
+        out.append(HEADER);
+        out.append("Student Name: ").append(student.getFullName()).append('\n');
+        out.append("Reg. Number: ").append(student.getRegNo()).append('\n');
+        out.append(COLUMNS);
+
+        double totalGradePoints = 0.0;
+        int totalCredits = 0;
+        for (StudentSnapshot.EnrolledCourse enrollment : student.getEnrollments()) {
+            Course course = courses.apply(enrollment.getCourseCode());
+            if (course == null) {
+                continue;
+            }
+            padRight(out, course.getCode(), CODE_WIDTH).append(' ');
+            padRight(out, course.getTitle(), TITLE_WIDTH).append(' ');
+            padRight(out, String.valueOf(course.getCredits()), CREDITS_WIDTH).append(' ');
+            Grade grade = enrollment.getGrade();
+            padRight(out, grade.name(), GRADE_WIDTH).append('\n');
+            // Same rule as EnrollmentService.calculateGpa: only graded enrollments count
+            if (grade.getGradePoints() >= 0) {
+                totalGradePoints += grade.getGradePoints() * course.getCredits();
+                totalCredits += course.getCredits();
+            }
+        }
+
+        out.append(RULE);
+        out.append("Cumulative GPA: ").append(twoDecimals(totalCredits == 0 ? 0.0 : totalGradePoints / totalCredits))
+                .append('\n');
+        out.append(FOOTER);
+        return out.length() - start;
+    }
+
+    // Left-justifies like "%-Ns": never truncates, pads with spaces up to the width
+    private static StringBuilder padRight(StringBuilder out, String value, int width) {
+        String text = String.valueOf(value);
+        out.append(text);
+        for (int i = text.length(); i < width; i++) {
+            out.append(' ');
+        }
+        return out;
+    }
+
+    // Matches "%.2f", which rounds the shortest decimal form of the double half-up
+    private static String twoDecimals(double value) {
+        return new BigDecimal(Double.toString(value)).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+}
@@ -0,0 +1,595 @@
+package edu.ccrm.service;
+
+import edu.ccrm.config.DataStore;
+import edu.ccrm.domain.Course;
+import edu.ccrm.domain.Student;
+import edu.ccrm.domain.StudentSnapshot;
+import edu.ccrm.io.StudentArchive;
+import edu.ccrm.io.WriteAheadLog;
+import edu.ccrm.util.OperationMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Persists service-layer changes in the background, so nobody has to run
+ * "Export All Data" to keep their work. Services only note what changed: a
+ * student, a course, or one student's enrollment in one course. Changes to
+ * the same thing coalesce while they wait, and a flush writes the current
+ * state of each one to the write-ahead log, all with a single fsync. Log
+ * records hold whole states, so replaying one twice does no harm.
+ *
+ * How long a change may wait is set with -Dccrm.persist.mode:
+ * <pre>
+ * sync      sync-on-commit (default): a service call returns once its change is on disk;
+ *           concurrent callers share one flush
+ * periodic  flushed every -Dccrm.persist.interval.ms (default 1000), or as soon as
+ *           -Dccrm.persist.batch (default 1024) changes are waiting
+ * async     flushed as soon as possible, but callers never wait for it
+ * </pre>
+ * With periodic or async, a crash loses the changes not flushed yet. Flush
+ * latency is recorded in {@link OperationMetrics} as "persist.flush"; the
+ * queue depth and counters are in {@link #getStats()}.
+ *
+ * If a flush fails, its changes go back to the queue. In sync mode the
+ * service call that flushed gets the exception; otherwise the flusher thread
+ * retries, waiting twice as long after each failure (up to
+ * -Dccrm.persist.retry.max.ms, default 30000), and the failure shows in
+ * {@link #getStats()} until a flush or a checkpoint succeeds.
+ */
+public class WriteBehindPersister {
+
+    // Write-ahead log record types; EnrollmentService replays them
+    static final String STUDENT_RECORD = "S";
+    static final String COURSE_RECORD = "C";
+    static final String ENROLL_RECORD = "E";
+    static final String GRADE_RECORD = "G";
+
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong("ccrm.persist.interval.ms", 1000));
+    private static final int BATCH_SIZE = Integer.getInteger("ccrm.persist.batch", 1024);
+    private static final long FIRST_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(100, Long.getLong("ccrm.persist.retry.max.ms", 30_000)));
+    private static WriteBehindPersister instance;
+
+    public enum Durability {
+        ASYNC, PERIODIC, SYNC_ON_COMMIT;
+
+        static Durability configured() {
+            String mode = System.getProperty("ccrm.persist.mode", "sync").trim().toLowerCase(Locale.ROOT);
+            switch (mode) {
+                case "async":
+                    return ASYNC;
+                case "periodic":
+                    return PERIODIC;
+                case "sync":
+                case "sync-on-commit":
+                    return SYNC_ON_COMMIT;
+                default:
+                    throw new IllegalArgumentException("Unknown ccrm.persist.mode: " + mode
+                            + " (expected async, periodic or sync)");
+            }
+        }
+    }
+
+    private final Durability durability = Durability.configured();
+    private final DataStore dataStore = DataStore.getInstance();
+    private final WriteAheadLog wal = WriteAheadLog.getInstance();
+    private final OperationMetrics metrics = OperationMetrics.getInstance();
+    // Guards the queue and the counters; a ReentrantLock, like the log's, so waiting virtual threads do not pin
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasWork = lock.newCondition(); // The flusher thread waits on this
+    // Held for a whole flush, so flushes and checkpoints run one at a time; taken before lock, never after
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Set<Change> pending = new LinkedHashSet<>(); // Oldest first
+    private long pendingSince; // nanoTime of the oldest waiting change
+    private long recordedSeq = 0; // One per record call
+    private long flushedSeq = 0; // Every call up to this one is on disk
+    private long requestedSeq = 0; // A caller is waiting for everything up to this one
+    private long changesRecorded = 0;
+    private long changesCoalesced = 0;
+    private long flushes = 0;
+    private long recordsWritten = 0;
+    private long failedFlushes = 0;
+    private boolean closed = false;
+    private RuntimeException failure; // Of the last flush, if it failed
+    private long retryDelay = 0; // Doubles with every failed flush in a row
+    private long retryAt = 0; // nanoTime before which the flusher thread does not try again
+
+    private WriteBehindPersister() {
+        if (durability != Durability.SYNC_ON_COMMIT) {
+            Thread flusher = new Thread(this::flushLoop, "ccrm-write-behind");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    public static synchronized WriteBehindPersister getInstance() {
+        if (instance == null) {
+            instance = new WriteBehindPersister();
+        }
+        return instance;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    // A student was added or their name, email or status changed
+    public void studentChanged(String regNo) {
+        record(List.of(new Change(Change.STUDENT, regNo, null)));
+    }
+
+    public void courseChanged(String courseCode) {
+        record(List.of(new Change(Change.COURSE, courseCode, null)));
+    }
+
+    // A student was enrolled in the course or got a grade for it
+    public void enrollmentChanged(String regNo, String courseCode) {
+        record(List.of(new Change(Change.ENROLLMENT, regNo, courseCode)));
+    }
+
+    // Several enrollments as one commit: in sync mode the call waits for one flush covering all of them
+    public void enrollmentsChanged(Collection<EnrollmentRequest> enrollments) {
+        List<Change> changes = new ArrayList<>(enrollments.size());
+        for (EnrollmentRequest enrollment : enrollments) {
+            changes.add(new Change(Change.ENROLLMENT, enrollment.getRegNo(), enrollment.getCourseCode()));
+        }
+        record(changes);
+    }
+
+    /**
+     * Writes every waiting change now and returns once it is on disk.
+     *
+     * @throws UncheckedIOException If the log cannot be written.
+     */
+    public void flush() {
+        long seq;
+        lock.lock();
+        try {
+            seq = recordedSeq;
+        } finally {
+            lock.unlock();
+        }
+        awaitFlushed(seq);
+    }
+
+    /**
+     * Runs a checkpoint, e.g. saving a snapshot and truncating the log, with
+     * nothing flushed while it runs. Waiting changes are flushed first;
+     * changes made during the checkpoint stay queued and are written to the
+     * log after it, so truncating the log cannot drop them. If that flush
+     * fails, the checkpoint still runs and saves what the log is missing; once
+     * it succeeds, the failure is cleared and flushing resumes.
+     */
+    public void checkpoint(Checkpoint checkpoint) throws IOException {
+        flushLock.lock();
+        try {
+            try {
+                flushPending();
+            } catch (RuntimeException e) {
+                // The log failed; the checkpoint still saves the changes it could not
+            }
+            checkpoint.run();
+            lock.lock();
+            try {
+                failure = null;
+                retryDelay = 0;
+                retryAt = 0;
+                hasWork.signal(); // The flusher may be waiting to retry
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes every waiting change and stops the flusher thread; called on a
+     * graceful shutdown. Changes recorded afterwards are written by the
+     * service call itself.
+     *
+     * @return The number of changes that were still waiting.
+     */
+    public int drain() {
+        int waiting;
+        lock.lock();
+        try {
+            closed = true;
+            waiting = pending.size();
+            hasWork.signal();
+        } finally {
+            lock.unlock();
+        }
+        flush();
+        return waiting;
+    }
+
+    public Stats getStats() {
+        OperationMetrics.Stats flushStats = metrics.statsFor("persist.flush");
+        lock.lock();
+        try {
+            long oldestMillis = pending.isEmpty() ? 0 : (System.nanoTime() - pendingSince) / 1_000_000;
+            return new Stats(durability, pending.size(), oldestMillis, changesRecorded, changesCoalesced, flushes,
+                    recordsWritten, failedFlushes, flushStats.getLatency().getMeanNanos() / 1e6,
+                    flushStats.getLatency().getValueAtPercentile(99) / 1e6,
+                    failure == null ? null : failure.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(List<Change> changes) {
+        long seq;
+        lock.lock();
+        try {
+            boolean wasEmpty = pending.isEmpty();
+            if (wasEmpty) {
+                pendingSince = System.nanoTime();
+            }
+            for (Change change : changes) {
+                changesRecorded++;
+                if (!pending.add(change)) {
+                    changesCoalesced++;
+                }
+            }
+            seq = ++recordedSeq;
+            // The flusher sleeps until the first change arrives, then until the interval has passed
+            if (wasEmpty || durability == Durability.ASYNC || pending.size() >= BATCH_SIZE) {
+                hasWork.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Once drained there is no flusher thread, so every change is written before the call returns
+        if (durability == Durability.SYNC_ON_COMMIT || isClosed()) {
+            awaitFlushed(seq);
+        }
+    }
+
+    private boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Group commit: whoever gets the flush lock first writes the changes of everyone waiting
+    private void awaitFlushed(long seq) {
+        lock.lock();
+        try {
+            requestedSeq = Math.max(requestedSeq, seq);
+        } finally {
+            lock.unlock();
+        }
+        flushLock.lock();
+        try {
+            lock.lock();
+            try {
+                if (flushedSeq >= seq) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Must be called while holding flushLock
+    private void flushPending() {
+        Set<Change> batch;
+        long batchSeq;
+        lock.lock();
+        try {
+            batch = pending;
+            batchSeq = recordedSeq;
+            pending = new LinkedHashSet<>();
+        } finally {
+            lock.unlock();
+        }
+        if (batch.isEmpty()) {
+            markFlushed(batchSeq, 0);
+            return;
+        }
+        try {
+            List<String[]> records = metrics.time("persist.flush", () -> write(batch));
+            markFlushed(batchSeq, records.size());
+        } catch (RuntimeException e) {
+            lock.lock();
+            try {
+                failure = e;
+                failedFlushes++;
+                retryDelay = retryDelay == 0 ? FIRST_RETRY_NANOS : Math.min(retryDelay * 2, MAX_RETRY_NANOS);
+                retryAt = System.nanoTime() + retryDelay;
+                batch.addAll(pending);
+                pending = batch; // Still not on disk: the next flush, or a checkpoint, saves them
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private void markFlushed(long seq, int records) {
+        lock.lock();
+        try {
+            flushedSeq = Math.max(flushedSeq, seq);
+            if (records > 0) {
+                flushes++;
+                recordsWritten += records;
+                failure = null;
+                retryDelay = 0;
+                retryAt = 0;
+            }
+            if (!pending.isEmpty()) {
+                pendingSince = System.nanoTime(); // Queued while this flush ran
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes the current state of every changed item: courses first, then students, then their enrollments
+    private List<String[]> write(Set<Change> batch) {
+        List<Change> ordered = new ArrayList<>(batch);
+        ordered.sort(Comparator.comparingInt(change -> change.type));
+        Map<String, StudentSnapshot> students = new HashMap<>();
+        List<String[]> records = new ArrayList<>(ordered.size());
+        for (Change change : ordered) {
+            if (change.type == Change.COURSE) {
+                Course course = dataStore.courses.get(change.key);
+                if (course != null) {
+                    records.add(courseRecord(course));
+                }
+                continue;
+            }
+            StudentSnapshot student = students.computeIfAbsent(change.key, this::currentState);
+            if (student == null) {
+                continue;
+            }
+            if (change.type == Change.STUDENT) {
+                records.add(studentRecord(student));
+            } else {
+                for (StudentSnapshot.EnrolledCourse enrolled : student.getEnrollments()) {
+                    if (enrolled.getCourseCode().equals(change.courseCode)) {
+                        records.add(new String[] { ENROLL_RECORD, student.getRegNo(), enrolled.getCourseCode(),
+                                String.valueOf(enrolled.getEnrollmentDate().toEpochDay()) });
+                        // Even NOT_GRADED, which may replace a grade logged earlier
+                        records.add(new String[] { GRADE_RECORD, student.getRegNo(), enrolled.getCourseCode(),
+                                enrolled.getGrade().name() });
+                    }
+                }
+            }
+        }
+        wal.appendAll(records);
+        return records;
+    }
+
+    // A student paged out since the change is logged from their archived record
+    private StudentSnapshot currentState(String regNo) {
+        Student student = dataStore.students.get(regNo);
+        if (student != null) {
+            return student.snapshot();
+        }
+        return StudentArchive.getInstance().read(regNo).orElse(null);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                while (!isDue()) {
+                    if (closed && pending.isEmpty()) {
+                        return;
+                    }
+                    try {
+                        if (pending.isEmpty()) {
+                            hasWork.await();
+                        } else if (System.nanoTime() < retryAt) {
+                            hasWork.awaitNanos(retryAt - System.nanoTime());
+                        } else {
+                            hasWork.awaitNanos(pendingSince + INTERVAL_NANOS - System.nanoTime());
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            flushLock.lock();
+            try {
+                flushPending();
+            } catch (RuntimeException e) {
+                // Requeued and recorded in the stats; tried again once the retry delay has passed
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    // Must be called while holding lock
+    private boolean isDue() {
+        if (pending.isEmpty() || System.nanoTime() < retryAt) {
+            return false;
+        }
+        return durability == Durability.ASYNC || closed || pending.size() >= BATCH_SIZE
+                || requestedSeq > flushedSeq || System.nanoTime() - pendingSince >= INTERVAL_NANOS;
+    }
+
+    private String[] studentRecord(StudentSnapshot student) {
+        return new String[] { STUDENT_RECORD, student.getRegNo(), String.valueOf(student.getId()),
+                escape(student.getFullName()), escape(student.getEmail()), student.getStatus().name(),
+                String.valueOf(student.getRegistrationDate().toEpochDay()) };
+    }
+
+    private String[] courseRecord(Course course) {
+        return new String[] { COURSE_RECORD, course.getCode(), escape(course.getTitle()),
+                String.valueOf(course.getCredits()), escape(course.getDepartment()), course.getSemester().name(),
+                String.valueOf(course.getInstructor() == null ? -1 : course.getInstructor().getId()) };
+    }
+
+    // Log fields are separated by commas and records by newlines, so free text must not contain either
+    static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.replace("%", "%25").replace(",", "%2C").replace("\n", "%0A").replace("\r", "%0D");
+    }
+
+    static String unescape(String field) {
+        if (field.indexOf('%') < 0) {
+            return field;
+        }
+        return field.replace("%0D", "\r").replace("%0A", "\n").replace("%2C", ",").replace("%25", "%");
+    }
+
+    /**
+     * Work that must not overlap a flush, such as a checkpoint. After a failed
+     * flush the log may be missing changes, so a checkpoint that truncates it
+     * must first make everything it saves durable.
+     */
+    @FunctionalInterface
+    public interface Checkpoint {
+        void run() throws IOException;
+    }
+
+    // What changed: a student, a course, or one student's enrollment in one course
+    private static final class Change {
+        static final int COURSE = 0;
+        static final int STUDENT = 1;
+        static final int ENROLLMENT = 2;
+
+        final int type;
+        final String key; // A regNo, or a course code for COURSE
+        final String courseCode; // Only for ENROLLMENT
+
+        Change(int type, String key, String courseCode) {
+            this.type = type;
+            this.key = key;
+            this.courseCode = courseCode;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Change)) {
+                return false;
+            }
+            Change change = (Change) other;
+            return type == change.type && key.equals(change.key) && Objects.equals(courseCode, change.courseCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, key, courseCode);
+        }
+    }
+
+    /**
+     * The persister's queue and counters at one moment.
+     */
+    public static final class Stats {
+        private final Durability durability;
+        private final int queueDepth;
+        private final long oldestWaitingMillis;
+        private final long changesRecorded;
+        private final long changesCoalesced;
+        private final long flushes;
+        private final long recordsWritten;
+        private final long failedFlushes;
+        private final double meanFlushMillis;
+        private final double p99FlushMillis;
+        private final String failure;
+
+        Stats(Durability durability, int queueDepth, long oldestWaitingMillis, long changesRecorded,
+                long changesCoalesced, long flushes, long recordsWritten, long failedFlushes, double meanFlushMillis,
+                double p99FlushMillis, String failure) {
+            this.durability = durability;
+            this.queueDepth = queueDepth;
+            this.oldestWaitingMillis = oldestWaitingMillis;
+            this.changesRecorded = changesRecorded;
+            this.changesCoalesced = changesCoalesced;
+            this.flushes = flushes;
+            this.recordsWritten = recordsWritten;
+            this.failedFlushes = failedFlushes;
+            this.meanFlushMillis = meanFlushMillis;
+            this.p99FlushMillis = p99FlushMillis;
+            this.failure = failure;
+        }
+
+        // Distinct changes waiting to be flushed
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        // How long the oldest waiting change has waited; 0 when nothing waits
+        public long getOldestWaitingMillis() {
+            return oldestWaitingMillis;
+        }
+
+        public long getChangesRecorded() {
+            return changesRecorded;
+        }
+
+        // Changes that found the same change already waiting and cost nothing more to write
+        public long getChangesCoalesced() {
+            return changesCoalesced;
+        }
+
+        public long getFlushes() {
+            return flushes;
+        }
+
+        public long getRecordsWritten() {
+            return recordsWritten;
+        }
+
+        // Flushes that failed and were retried or left to a checkpoint
+        public long getFailedFlushes() {
+            return failedFlushes;
+        }
+
+        public double getMeanFlushMillis() {
+            return meanFlushMillis;
+        }
+
+        public double getP99FlushMillis() {
+            return p99FlushMillis;
+        }
+
+        // The message of the last flush if it failed, or null once a flush or checkpoint has succeeded since
+        public String getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Write-behind (%s): %d waiting (oldest %d ms) | %,d changes recorded, %,d coalesced"
+                    + "%n%,d flushes wrote %,d records, %,d failed | flush mean %.2f ms, p99 %.2f ms%s",
+                    durability.name().toLowerCase(Locale.ROOT).replace('_', '-'), queueDepth, oldestWaitingMillis,
+                    changesRecorded, changesCoalesced, flushes, recordsWritten, failedFlushes, meanFlushMillis,
+                    p99FlushMillis,
+                    failure == null ? "" : System.lineSeparator() + "Last flush failed: " + failure);
+        }
+    }
+}
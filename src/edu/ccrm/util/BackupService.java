@@ -1,75 +1,344 @@
 package edu.ccrm.util;
 
+import edu.ccrm.io.ShardStorage;
+
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Incremental, content-addressed backups of the data directory.
+ *
+ * Every data file under the data directory, including the shard files, is
+ * cut into blocks that are stored once, compressed, under
+ * &lt;data dir&gt;/backups/blocks/ and named by their SHA-256 hash. Each backup
+ * is just a small manifest under &lt;data dir&gt;/backups/manifests/ listing,
+ * per file, its size, modification time and block hashes. A file whose size and modification time match the previous manifest
+ * is not even read again, so the cost of a backup grows with the amount of
+ * changed data rather than with the dataset size. The write-ahead log,
+ * the metrics dump and leftover temporary files are not backed up: a
+ * restore must not replay a log written against other data, so callers save
+ * a snapshot first (which empties the log).
+ *
+ * Block boundaries are content-defined: a rolling hash over the bytes ends a
+ * block wherever its top bits are zero, so blocks average about 64 KB. Bytes
+ * inserted or removed early in a file (a longer string table at the start of
+ * datastore.snap, one more CSV row) then only change the blocks around the
+ * edit; the later blocks are cut at the same places and dedupe as before.
+ *
+ * A shard of the sharded store can also be backed up on its own; its backups
+ * are named like full backups followed by "_shard-&lt;name&gt;" and are
+ * incremental against that shard's previous backup.
+ */
 public class BackupService {
 
-    private final Path dataDirectory = Paths.get("data");
-    private final Path backupsDirectory = Paths.get("backups");
+    // Blocks are at least MIN_BLOCK_SIZE and at most MAX_BLOCK_SIZE long; in between, BOUNDARY_MASK picks the cuts
+    private static final int MIN_BLOCK_SIZE = 16 * 1024;
+    private static final int MAX_BLOCK_SIZE = 512 * 1024;
+    private static final long BOUNDARY_MASK = 0xFFFFL << 48; // 16 bits: a cut every 64 KB on average
+    private static final long[] GEAR = gearTable();
+    // Number of new blocks held in memory before they are compressed as one parallel batch
+    private static final int COMPRESS_BATCH = 64;
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String SHARD_SUFFIX = "_shard-";
+    // Never backed up: the log only makes sense against the files it was written for
+    private static final Set<String> EXCLUDED_FILES = Set.of("enrollments.wal", "metrics.json");
+
+    private final Path dataDirectory = Paths.get(System.getProperty("ccrm.data.dir", "data"));
+    private final Path backupsDirectory = dataDirectory.resolve("backups");
+    private final Path blocksDirectory = backupsDirectory.resolve("blocks");
+    private final Path manifestsDirectory = backupsDirectory.resolve("manifests");
 
     public void backupData() throws IOException {
-        // 1. Ensure the main backups directory exists
-        if (Files.notExists(backupsDirectory)) {
-            Files.createDirectories(backupsDirectory);
-        }
+        backup(dataDirectory, "");
+    }
 
-        // 2. Create a timestamped folder for this specific backup
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
-        Path backupPath = backupsDirectory.resolve(timestamp);
-        Files.createDirectories(backupPath);
+    // Backs up the files of one shard of the sharded store
+    public void backupShard(String shardName) throws IOException {
+        backup(dataDirectory.resolve(ShardStorage.SHARDS_DIRECTORY).resolve(shardName), SHARD_SUFFIX + shardName);
+    }
+
+    private void backup(Path directory, String nameSuffix) throws IOException {
+        // 1. Ensure the backup store directories exist
+        Files.createDirectories(blocksDirectory);
+        Files.createDirectories(manifestsDirectory);
 
-        // 3. Check if the data directory exists before trying to copy
-        if (Files.notExists(dataDirectory) || !Files.isDirectory(dataDirectory)) {
-            System.out.println("Data directory not found. Nothing to back up.");
+        // 2. Check if the data directory exists before trying to back it up
+        if (Files.notExists(directory) || !Files.isDirectory(directory)) {
+            System.out.println("Directory " + directory + " not found. Nothing to back up.");
             return;
         }
 
-        // 4. Copy files from 'data' to the new timestamped backup folder
-        try (Stream<Path> files = Files.list(dataDirectory)) {
-            files.forEach(sourceFile -> {
-                try {
-                    Path destinationFile = backupPath.resolve(sourceFile.getFileName());
-                    Files.copy(sourceFile, destinationFile, StandardCopyOption.REPLACE_EXISTING);
-                } catch (IOException e) {
-                    // Use a runtime exception to handle errors within the lambda
-                    throw new RuntimeException("Could not copy file: " + sourceFile, e);
-                }
-            });
+        // 3. Hash changed files block by block; unseen blocks are compressed in parallel
+        Map<String, ManifestEntry> previous = readLatestManifest(nameSuffix);
+        List<Path> files;
+        try (Stream<Path> listing = Files.walk(directory)) { // Walked, so data/shards/ is included
+            files = listing.filter(file -> !file.startsWith(backupsDirectory))
+                    .filter(Files::isRegularFile)
+                    .filter(BackupService::isDataFile)
+                    .sorted()
+                    .collect(Collectors.toList());
         }
 
-        System.out.println("Backup created successfully at: " + backupPath);
+        Set<String> storedThisRun = ConcurrentHashMap.newKeySet();
+        AtomicLong newBlocks = new AtomicLong();
+        AtomicLong bytesStored = new AtomicLong();
+        int unchangedFiles = 0;
+        List<ManifestEntry> entries = new ArrayList<>();
+        for (Path file : files) {
+            // Relative to the backed-up directory, with '/' on every platform
+            String name = directory.relativize(file).toString().replace(File.separatorChar, '/');
+            long size = Files.size(file);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            ManifestEntry last = previous.get(name);
+            if (last != null && last.size == size && last.modified == modified) {
+                entries.add(last);
+                unchangedFiles++;
+                continue;
+            }
+            entries.add(new ManifestEntry(name, size, modified,
+                    storeBlocks(file, storedThisRun, newBlocks, bytesStored)));
+        }
+
+        // 4. Write the manifest last, so a failed backup never references missing blocks
+        List<String> lines = entries.stream().map(ManifestEntry::toLine).collect(Collectors.toList());
+        Path manifestPath = writeManifest(LocalDateTime.now().format(DateTimeFormatter.ofPattern(
+                "yyyy-MM-dd_HH-mm-ss")), nameSuffix, lines);
 
-        // 5. Calculate and print the size of the new backup directory
-        long size = calculateDirectorySize(backupPath);
-        System.out.println("Total backup size: " + (size / 1024) + " KB");
+        System.out.println("Backup created successfully: " + manifestPath);
+        System.out.printf("%d file(s), %d unchanged, %d new block(s), %d KB added to the block store\n",
+                entries.size(), unchangedFiles, newBlocks.get(), bytesStored.get() / 1024);
     }
 
     /**
-     * Recursively calculates the total size of a directory.
-     * 
-     * @param path The path of the directory.
-     * @return The total size in bytes.
-     * @throws IOException If an I/O error occurs.
+     * Writes the manifest under the timestamp, or, if a backup of the same
+     * second already has it, under the timestamp followed by "_02", "_03" and
+     * so on, which still sort after it. Names are picked and written one
+     * backup at a time.
      */
-    private long calculateDirectorySize(Path path) throws IOException {
-        long size = 0;
-        try (Stream<Path> walk = Files.walk(path)) {
-            size = walk
-                    .filter(Files::isRegularFile)
-                    .mapToLong(p -> {
-                        try {
-                            return Files.size(p);
-                        } catch (IOException e) {
-                            System.err.println("Failed to get size of " + p + ": " + e.getMessage());
-                            return 0L;
-                        }
-                    })
-                    .sum();
-        }
-        return size;
-    }
-}
\ No newline at end of file
+    private Path writeManifest(String timestamp, String nameSuffix, List<String> lines) throws IOException {
+        synchronized (BackupService.class) {
+            String backupName = timestamp + nameSuffix;
+            for (int n = 2; Files.exists(manifestsDirectory.resolve(backupName + MANIFEST_SUFFIX)); n++) {
+                backupName = String.format("%s_%02d%s", timestamp, n, nameSuffix);
+            }
+            Path manifestPath = manifestsDirectory.resolve(backupName + MANIFEST_SUFFIX);
+            Path tempPath = manifestsDirectory.resolve(backupName + MANIFEST_SUFFIX + ".tmp");
+            Files.write(tempPath, lines);
+            Files.move(tempPath, manifestPath, StandardCopyOption.ATOMIC_MOVE);
+            return manifestPath;
+        }
+    }
+
+    // The write-ahead log, the metrics dump and half-written temporary files are left out
+    private static boolean isDataFile(Path file) {
+        String name = file.getFileName().toString();
+        return !EXCLUDED_FILES.contains(name) && !name.endsWith(".tmp");
+    }
+
+    // Lists the available backups, oldest first.
+    public List<String> listBackups() throws IOException {
+        if (Files.notExists(manifestsDirectory)) {
+            return List.of();
+        }
+        try (Stream<Path> manifests = Files.list(manifestsDirectory)) {
+            return manifests.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(MANIFEST_SUFFIX))
+                    .map(n -> n.substring(0, n.length() - MANIFEST_SUFFIX.length()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Rebuilds the data files of a backup into the given directory.
+     *
+     * @param backupName A name returned by {@link #listBackups()}.
+     * @param targetDirectory Where the files are written.
+     * @throws IOException If the manifest or one of its blocks cannot be read.
+     */
+    public void restoreBackup(String backupName, Path targetDirectory) throws IOException {
+        Path manifestPath = manifestsDirectory.resolve(backupName + MANIFEST_SUFFIX);
+        if (Files.notExists(manifestPath)) {
+            throw new NoSuchFileException(manifestPath.toString());
+        }
+        Files.createDirectories(targetDirectory);
+        for (String line : Files.readAllLines(manifestPath)) {
+            ManifestEntry entry = ManifestEntry.parse(line);
+            Path target = targetDirectory.resolve(entry.fileName);
+            Files.createDirectories(target.getParent());
+            try (OutputStream out = Files.newOutputStream(target)) {
+                for (String hash : entry.blocks) {
+                    try (InputStream in = new GZIPInputStream(Files.newInputStream(blockPath(hash)))) {
+                        in.transferTo(out);
+                    }
+                }
+            }
+        }
+        System.out.println("Backup " + backupName + " restored to: " + targetDirectory);
+    }
+
+    // Reads the file block by block and returns the hashes; blocks not yet in the store get compressed.
+    private List<String> storeBlocks(Path file, Set<String> storedThisRun, AtomicLong newBlocks,
+            AtomicLong bytesStored) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        Map<String, byte[]> pendingBlocks = new HashMap<>();
+        byte[] buffer = new byte[MAX_BLOCK_SIZE];
+        int buffered = 0;
+        boolean endOfFile = false;
+        try (InputStream in = Files.newInputStream(file)) {
+            while (true) {
+                if (!endOfFile) {
+                    int read = in.readNBytes(buffer, buffered, buffer.length - buffered);
+                    buffered += read;
+                    endOfFile = buffered < buffer.length;
+                }
+                if (buffered == 0) {
+                    break;
+                }
+                // A full buffer always holds a boundary, at MAX_BLOCK_SIZE at the latest
+                int length = nextBoundary(buffer, buffered);
+                byte[] block = Arrays.copyOf(buffer, length);
+                System.arraycopy(buffer, length, buffer, 0, buffered - length);
+                buffered -= length;
+
+                String hash = sha256(block);
+                hashes.add(hash);
+                if (!Files.exists(blockPath(hash)) && storedThisRun.add(hash)) {
+                    pendingBlocks.put(hash, block);
+                }
+                if (pendingBlocks.size() >= COMPRESS_BATCH) {
+                    compressBlocks(pendingBlocks, newBlocks, bytesStored);
+                }
+            }
+        }
+        compressBlocks(pendingBlocks, newBlocks, bytesStored);
+        return hashes;
+    }
+
+    // The length of the block starting at data[0]: up to the first cut of the gear hash, or all of the data
+    private static int nextBoundary(byte[] data, int length) {
+        if (length <= MIN_BLOCK_SIZE) {
+            return length;
+        }
+        long hash = 0;
+        // The hash depends on the last 64 bytes only, so cuts after MIN_BLOCK_SIZE are content-defined
+        for (int i = MIN_BLOCK_SIZE - 64; i < length; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if (i >= MIN_BLOCK_SIZE && (hash & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    // One fixed pseudo-random value per byte value; the seed must never change, or no block would dedupe
+    private static long[] gearTable() {
+        Random random = new Random(0x43435242L);
+        long[] table = new long[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = random.nextLong();
+        }
+        return table;
+    }
+
+    private void compressBlocks(Map<String, byte[]> pendingBlocks, AtomicLong newBlocks, AtomicLong bytesStored) {
+        pendingBlocks.entrySet().parallelStream().forEach(e -> {
+            try {
+                bytesStored.addAndGet(writeBlock(e.getKey(), e.getValue()));
+                newBlocks.incrementAndGet();
+            } catch (IOException ex) {
+                // Use a runtime exception to handle errors within the lambda
+                throw new UncheckedIOException("Could not store block " + e.getKey(), ex);
+            }
+        });
+        pendingBlocks.clear();
+    }
+
+    private long writeBlock(String hash, byte[] block) throws IOException {
+        Path target = blockPath(hash);
+        Files.createDirectories(target.getParent());
+        Path tempPath = target.resolveSibling(hash + ".tmp");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tempPath))) {
+            out.write(block);
+        }
+        Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(target);
+    }
+
+    // Blocks are spread over 256 sub-directories by the first byte of their hash
+    private Path blockPath(String hash) {
+        return blocksDirectory.resolve(hash.substring(0, 2)).resolve(hash + ".gz");
+    }
+
+    // The latest backup of the same kind: a full backup, or one of the same shard
+    private Map<String, ManifestEntry> readLatestManifest(String nameSuffix) throws IOException {
+        Map<String, ManifestEntry> entries = new HashMap<>();
+        List<String> backups = listBackups().stream()
+                .filter(b -> nameSuffix.isEmpty() ? !b.contains(SHARD_SUFFIX) : b.endsWith(nameSuffix))
+                .collect(Collectors.toList());
+        if (!backups.isEmpty()) {
+            Path latest = manifestsDirectory.resolve(backups.get(backups.size() - 1) + MANIFEST_SUFFIX);
+            for (String line : Files.readAllLines(latest)) {
+                ManifestEntry entry = ManifestEntry.parse(line);
+                entries.put(entry.fileName, entry);
+            }
+        }
+        return entries;
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // One manifest line: fileName,size,lastModifiedMillis,hash1;hash2;...
+    private static class ManifestEntry {
+        private final String fileName;
+        private final long size;
+        private final long modified;
+        private final List<String> blocks;
+
+        ManifestEntry(String fileName, long size, long modified, List<String> blocks) {
+            this.fileName = fileName;
+            this.size = size;
+            this.modified = modified;
+            this.blocks = blocks;
+        }
+
+        static ManifestEntry parse(String line) {
+            String[] parts = line.split(",", 4);
+            List<String> blocks = parts[3].isEmpty() ? List.of() : List.of(parts[3].split(";"));
+            return new ManifestEntry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), blocks);
+        }
+
+        String toLine() {
+            return String.join(",", fileName, String.valueOf(size), String.valueOf(modified),
+                    String.join(";", blocks));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package edu.ccrm.util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide call counts, error counts and latency histograms, keyed by
+ * operation name (for example "student.addStudent").
+ *
+ * Wrap a call with {@link #time(String, Operation)} or {@link #run(String, Action)};
+ * the call is timed with System.nanoTime() and counted as an error if it throws.
+ * Recording never takes a lock, so instrumented code paths stay as concurrent
+ * as they were.
+ */
+public class OperationMetrics {
+
+    private static final OperationMetrics INSTANCE = new OperationMetrics();
+
+    private final ConcurrentMap<String, Stats> operations = new ConcurrentHashMap<>();
+    private final long startedAt = System.nanoTime();
+    private ScheduledExecutorService dumpScheduler;
+
+    @FunctionalInterface
+    public interface Operation<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @FunctionalInterface
+    public interface Action<E extends Exception> {
+        void run() throws E;
+    }
+
+    public static OperationMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public <T, E extends Exception> T time(String name, Operation<T, E> operation) throws E {
+        Stats stats = statsFor(name);
+        long start = System.nanoTime();
+        try {
+            return operation.call();
+        } catch (Exception | Error e) {
+            stats.recordError();
+            throw e;
+        } finally {
+            stats.latency.record(System.nanoTime() - start);
+        }
+    }
+
+    public <E extends Exception> void run(String name, Action<E> action) throws E {
+        time(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public Stats statsFor(String name) {
+        return operations.computeIfAbsent(name, n -> new Stats());
+    }
+
+    public void reset() {
+        operations.values().forEach(Stats::reset);
+    }
+
+    // Prints one line per operation, sorted by name; latencies are in microseconds
+    public void printTable(PrintStream out) {
+        Map<String, Stats> sorted = new TreeMap<>(operations);
+        if (sorted.isEmpty()) {
+            out.println("No operations recorded yet.");
+            return;
+        }
+        out.printf("%-34s %9s %7s %10s %10s %10s %10s %10s\n", "Operation", "Calls", "Errors",
+                "Mean(us)", "p50(us)", "p90(us)", "p99(us)", "Max(us)");
+        sorted.forEach((name, s) -> out.printf("%-34s %9d %7d %10.1f %10.1f %10.1f %10.1f %10.1f\n", name,
+                s.getCount(), s.getErrors(), s.latency.getMeanNanos() / 1000.0, micros(s, 50), micros(s, 90),
+                micros(s, 99), s.latency.getMaxNanos() / 1000.0));
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder(256 + operations.size() * 160);
+        json.append("{\n  \"timestamp\": \"").append(Instant.now()).append("\",\n");
+        json.append("  \"uptimeSeconds\": ").append((System.nanoTime() - startedAt) / 1_000_000_000L).append(",\n");
+        json.append("  \"operations\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Stats> entry : new TreeMap<>(operations).entrySet()) {
+            Stats s = entry.getValue();
+            json.append(separator).append("    \"").append(entry.getKey()).append("\": {")
+                    .append("\"count\": ").append(s.getCount())
+                    .append(", \"errors\": ").append(s.getErrors())
+                    .append(", \"meanMicros\": ").append(decimal(s.latency.getMeanNanos() / 1000.0))
+                    .append(", \"p50Micros\": ").append(decimal(micros(s, 50)))
+                    .append(", \"p90Micros\": ").append(decimal(micros(s, 90)))
+                    .append(", \"p99Micros\": ").append(decimal(micros(s, 99)))
+                    .append(", \"maxMicros\": ").append(decimal(s.latency.getMaxNanos() / 1000.0))
+                    .append('}');
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * Writes the JSON form of all metrics to the file, replacing it atomically
+     * so a reader never sees a half-written dump.
+     */
+    public void writeJson(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Path tempPath = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tempPath, toJson());
+        try {
+            Files.move(tempPath, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Starts a daemon thread that rewrites the JSON dump every interval.
+     * Calling it again replaces the previous schedule.
+     */
+    public synchronized void startPeriodicDump(Path file, long intervalSeconds) {
+        stopPeriodicDump();
+        dumpScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ccrm-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpScheduler.scheduleAtFixedRate(() -> {
+            try {
+                writeJson(file);
+            } catch (IOException e) {
+                System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopPeriodicDump() {
+        if (dumpScheduler != null) {
+            dumpScheduler.shutdownNow();
+            dumpScheduler = null;
+        }
+    }
+
+    // Always uses '.' as the decimal separator, whatever the default locale
+    private static String decimal(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private static double micros(Stats stats, double percentile) {
+        return stats.latency.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    public static class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public void recordError() {
+            errors.increment();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        void reset() {
+            latency.reset();
+            errors.reset();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package edu.ccrm.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed pool of locks shared by key hash. Operations on the same key always
+ * use the same lock, while unrelated keys rarely contend, without keeping one
+ * lock object per key.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] stripes;
+
+    public StripedLocks(int stripeCount) {
+        // Round up to a power of two so the stripe can be picked with a mask
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock lockFor(Object key) {
+        return stripes[indexFor(key)];
+    }
+
+    /**
+     * Locks the stripes of all the given keys. Stripes are always taken in
+     * ascending index order, so two callers can never deadlock on each other.
+     *
+     * @return The locks taken, to be passed to {@link #unlockAll(List)}.
+     */
+    public List<ReentrantLock> lockAll(Collection<?> keys) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (Object key : keys) {
+            indexes.add(indexFor(key));
+        }
+        List<ReentrantLock> locked = new ArrayList<>(indexes.size());
+        try {
+            for (int index : indexes) {
+                stripes[index].lock();
+                locked.add(stripes[index]);
+            }
+        } catch (RuntimeException e) {
+            unlockAll(locked);
+            throw e;
+        }
+        return locked;
+    }
+
+    // Locks every stripe, in the same order as lockAll, e.g. to clear what the locks guard
+    public List<ReentrantLock> lockEvery() {
+        List<ReentrantLock> locked = new ArrayList<>(stripes.length);
+        try {
+            for (ReentrantLock stripe : stripes) {
+                stripe.lock();
+                locked.add(stripe);
+            }
+        } catch (RuntimeException e) {
+            unlockAll(locked);
+            throw e;
+        }
+        return locked;
+    }
+
+    public void unlockAll(List<ReentrantLock> locked) {
+        for (int i = locked.size() - 1; i >= 0; i--) {
+            locked.get(i).unlock();
+        }
+    }
+
+    private int indexFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16); // Spread the high bits, as HashMap does
+        return h & (stripes.length - 1);
+    }
+}
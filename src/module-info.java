@@ -5,4 +5,5 @@
  * 
  */
 module CampusCourseRecordsManager {
+    requires jdk.httpserver; // Embedded HTTP API
 }
\ No newline at end of file